@@ -176,4 +176,15 @@ public interface IIndicatorContext {
      * @param percent Percent of completed work
      */
     void updateCalculationProgress(int percent);
+
+    /**
+     * Creates a store of reusable work arrays for the calculations of the indicator. Indicators that need temporary
+     * arrays on every {@link IIndicator#calculate} call should create one arena in {@link IIndicator#onStart} and take
+     * the arrays from it.
+     *
+     * @return new arena for one indicator instance
+     */
+    default ScratchArena createScratchArena() {
+        return new ScratchArena();
+    }
 }
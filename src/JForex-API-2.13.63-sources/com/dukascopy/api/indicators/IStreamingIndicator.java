@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 Dukascopy® (Suisse) SA. All rights reserved.
+ * DUKASCOPY PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+package com.dukascopy.api.indicators;
+
+/**
+ * Optional extension of {@link IIndicator} for indicators that can be updated one bar at a time. Instead of calling
+ * {@link IIndicator#calculate} over the whole lookback window on every new bar, the caller pushes the input values of
+ * the new bar and reads the outputs of that bar, at a constant cost per bar.
+ * <P>
+ * A stream is started with {@link #resetStream()} using the optional input parameters set at that moment. Some
+ * parameter values, like moving average types without a one bar update, can't be streamed, callers check
+ * {@link #isStreamable()} and fall back to {@link IIndicator#calculate} for them. Values read
+ * from a stream are identical to the values returned by {@link IIndicator#calculate} called with <code>startIndex</code>
+ * 0 over the same inputs, including indicators with unstable period.
+ * </P>
+ * <P>
+ * Input values of a bar are passed in one array, in order of the input parameters. An input of type
+ * {@link InputParameterInfo.Type#DOUBLE} takes one element, an input of type {@link InputParameterInfo.Type#PRICE}
+ * takes five elements in the same order as the price arrays: open, close, high, low, volume.
+ * </P>
+ */
+public interface IStreamingIndicator {
+
+    /**
+     * Tells if the indicator can be streamed with the current optional input parameters
+     *
+     * @return true if {@link #resetStream()} can start a stream, false if only {@link IIndicator#calculate} is supported
+     */
+    boolean isStreamable();
+
+    /**
+     * Starts a new stream with the current optional input parameters, previously pushed values are forgotten
+     *
+     * @throws UnsupportedOperationException if {@link #isStreamable()} returns false
+     */
+    void resetStream();
+
+    /**
+     * Pushes input values of the next bar
+     *
+     * @param inputValues input values of the bar, the array is not kept by the indicator and can be reused
+     * @return true if outputs have a value for this bar, false while the stream is shorter than the lookback
+     */
+    boolean pushStream(double[] inputValues);
+
+    /**
+     * Returns output value of the last pushed bar
+     *
+     * @param outputIdx index of the output parameter
+     * @return value of the output or Double.NaN if there is no value for the last pushed bar
+     */
+    double getStreamOutput(int outputIdx);
+
+    /**
+     * Returns a copy of the stream state, pushing more values doesn't change the returned object
+     *
+     * @return state that can be passed to {@link #restoreStream(Object)}
+     */
+    Object snapshotStream();
+
+    /**
+     * Restores the stream to the state returned by {@link #snapshotStream()} of the same indicator instance, the
+     * snapshot itself stays unchanged and can be restored again
+     *
+     * @param snapshot state returned by {@link #snapshotStream()}
+     */
+    void restoreStream(Object snapshot);
+}
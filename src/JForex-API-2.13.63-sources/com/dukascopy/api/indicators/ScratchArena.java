@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 Dukascopy® (Suisse) SA. All rights reserved.
+ * DUKASCOPY PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+package com.dukascopy.api.indicators;
+
+import java.util.Arrays;
+
+/**
+ * Reusable work arrays for the calculations of one indicator instance. Instead of allocating new temporary arrays on
+ * every call of {@link IIndicator#calculate}, an indicator asks the arena for them by slot number. Arrays only grow,
+ * so once a chart is calculated, next calculations don't allocate memory.
+ * <P>
+ * Returned arrays can be longer than requested and contain values of the previous calculation, the indicator has to
+ * initialize and use only the requested length. An arena is not thread safe and should be used by one indicator
+ * instance only.
+ * </P>
+ *
+ * @see IIndicatorContext#createScratchArena()
+ */
+public class ScratchArena {
+
+    private double[][] doubleArrays = new double[0][];
+    private int[][] intArrays = new int[0][];
+
+    /**
+     * Returns work array of doubles of the slot
+     *
+     * @param slot number of the array, different arrays used at the same time need different slots
+     * @param length required length
+     * @return array at least <code>length</code> long, the same array as the last time if it was long enough
+     */
+    public double[] getDoubles(int slot, int length) {
+        if (slot >= doubleArrays.length) {
+            doubleArrays = Arrays.copyOf(doubleArrays, slot + 1);
+        }
+        double[] array = doubleArrays[slot];
+        if (array == null || array.length < length) {
+            array = new double[grow(length)];
+            doubleArrays[slot] = array;
+        }
+        return array;
+    }
+
+    /**
+     * Returns work array of ints of the slot
+     *
+     * @param slot number of the array, different arrays used at the same time need different slots
+     * @param length required length
+     * @return array at least <code>length</code> long, the same array as the last time if it was long enough
+     */
+    public int[] getInts(int slot, int length) {
+        if (slot >= intArrays.length) {
+            intArrays = Arrays.copyOf(intArrays, slot + 1);
+        }
+        int[] array = intArrays[slot];
+        if (array == null || array.length < length) {
+            array = new int[grow(length)];
+            intArrays[slot] = array;
+        }
+        return array;
+    }
+
+    /**
+     * Frees all arrays, next requests allocate them again
+     */
+    public void release() {
+        doubleArrays = new double[0][];
+        intArrays = new int[0][];
+    }
+
+    // charts usually grow by one bar, spare room avoids a new array for every bar
+    private static int grow(int length) {
+        int capacity = length + (length >> 3);
+        return capacity < 0 ? length : capacity;
+    }
+}
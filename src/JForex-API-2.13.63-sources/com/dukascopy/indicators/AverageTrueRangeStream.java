@@ -0,0 +1,79 @@
+package com.dukascopy.indicators;
+
+/**
+ * One bar at a time ATR with Wilder smoothing, seeded with the simple average of the first period true ranges like the
+ * batch ATR indicator, so the results are bit-identical to it. Period 1 gives the true range.
+ */
+final class AverageTrueRangeStream {
+
+    private final int period;
+    private int count;
+    private double prevClose;
+    private double prevATR;
+    private double value = Double.NaN;
+
+    AverageTrueRangeStream(int period) {
+        this.period = period;
+    }
+
+    private AverageTrueRangeStream(AverageTrueRangeStream source) {
+        period = source.period;
+        count = source.count;
+        prevClose = source.prevClose;
+        prevATR = source.prevATR;
+        value = source.value;
+    }
+
+    AverageTrueRangeStream copy() {
+        return new AverageTrueRangeStream(this);
+    }
+
+    int getLookback() {
+        return period <= 1 ? 1 : period;
+    }
+
+    boolean push(double high, double low, double close) {
+        count++;
+        double previousClose = prevClose;
+        prevClose = close;
+        if (count == 1) {
+            return false;
+        }
+
+        double trueRange = high - low;
+        double val2 = Math.abs(previousClose - high);
+        if (val2 > trueRange) {
+            trueRange = val2;
+        }
+        double val3 = Math.abs(previousClose - low);
+        if (val3 > trueRange) {
+            trueRange = val3;
+        }
+
+        if (period <= 1) {
+            value = trueRange;
+            return true;
+        }
+
+        // true ranges start with the second bar
+        int index = count - 1;
+        if (index < period) {
+            prevATR += trueRange;
+            return false;
+        }
+        if (index == period) {
+            prevATR += trueRange;
+            prevATR = prevATR / period;
+        } else {
+            prevATR *= period - 1;
+            prevATR += trueRange;
+            prevATR /= period;
+        }
+        value = prevATR;
+        return true;
+    }
+
+    double getValue() {
+        return value;
+    }
+}
@@ -5,6 +5,7 @@ import com.dukascopy.api.indicators.DoubleRangeDescription;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
 import com.dukascopy.api.indicators.IIndicatorsProvider;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -18,7 +19,7 @@ import com.dukascopy.api.indicators.OutputParameterInfo;
  * @author anatoly.pokusayev
  *
  */
-public class BollingerBands implements IIndicator {
+public class BollingerBands implements IIndicator, IStreamingIndicator {
 
     private IndicatorInfo indicatorInfo;
     private InputParameterInfo[] inputParameterInfos;
@@ -32,6 +33,13 @@ public class BollingerBands implements IIndicator {
     private IIndicator stdDevUp;
     private IIndicator stdDevDown;
 
+    // optional inputs kept for streaming, calculate reads them from the delegates
+    private int timePeriod = 20;
+    private double nbDevUp = 2;
+    private double nbDevDown = 2;
+    private int maType = IIndicators.MaType.EMA.ordinal();
+    private Stream stream;
+
     @Override
     public void onStart(IIndicatorContext context) {
         indicatorInfo = new IndicatorInfo("BBANDS", "Bollinger Bands", "Overlap Studies", true, false, true, 1, 4, 3);
@@ -141,21 +149,21 @@ public class BollingerBands implements IIndicator {
     public void setOptInputParameter(int index, Object value) {
         switch (index) {
         case 0:
-            int timePeriod = (Integer) value;
+            timePeriod = (Integer) value;
             movingAverage.setOptInputParameter(0, timePeriod);
             stdDevUp.setOptInputParameter(0, timePeriod);
             stdDevDown.setOptInputParameter(0, timePeriod);
             break;
         case 1:
-            double nbDevUp = (Double) value;
+            nbDevUp = (Double) value;
             stdDevUp.setOptInputParameter(1, nbDevUp);
             break;
         case 2:
-            double nbDevDown = (Double) value;
+            nbDevDown = (Double) value;
             stdDevDown.setOptInputParameter(1, nbDevDown);
             break;
         case 3:
-            int maType = (Integer) value;
+            maType = (Integer) value;
             movingAverage.setOptInputParameter(1, maType);
             indicatorInfo.setUnstablePeriod(movingAverage.getIndicatorInfo().isUnstablePeriod());
             break;
@@ -178,4 +186,74 @@ public class BollingerBands implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    @Override
+    public boolean isStreamable() {
+        return MovingAverageStream.isSupported(IIndicators.MaType.values()[maType], timePeriod);
+    }
+
+    @Override
+    public void resetStream() {
+        stream = new Stream(new MovingAverageStream(IIndicators.MaType.values()[maType], timePeriod), new VarianceStream(timePeriod),
+                nbDevUp, nbDevDown);
+    }
+
+    @Override
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        return stream.push(inputValues[0]);
+    }
+
+    @Override
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.outputs[outputIdx];
+    }
+
+    @Override
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    @Override
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((Stream) snapshot).copy();
+    }
+
+    private static final class Stream {
+        private final MovingAverageStream movingAverage;
+        // both deviations are calculated over the same variance
+        private final VarianceStream variance;
+        private final double nbDevUp;
+        private final double nbDevDown;
+        private final double[] outputs = new double[] {Double.NaN, Double.NaN, Double.NaN};
+
+        Stream(MovingAverageStream movingAverage, VarianceStream variance, double nbDevUp, double nbDevDown) {
+            this.movingAverage = movingAverage;
+            this.variance = variance;
+            this.nbDevUp = nbDevUp;
+            this.nbDevDown = nbDevDown;
+        }
+
+        Stream copy() {
+            Stream copy = new Stream(movingAverage.copy(), variance.copy(), nbDevUp, nbDevDown);
+            System.arraycopy(outputs, 0, copy.outputs, 0, outputs.length);
+            return copy;
+        }
+
+        boolean push(double value) {
+            boolean maReady = movingAverage.push(value);
+            boolean varianceReady = variance.push(value);
+            if (!maReady || !varianceReady) {
+                return false;
+            }
+
+            double ma = movingAverage.getValue();
+            outputs[1] = ma;
+            outputs[0] = ma + variance.getStdDev(nbDevUp);
+            outputs[2] = ma - variance.getStdDev(nbDevDown);
+            return true;
+        }
+    }
 }
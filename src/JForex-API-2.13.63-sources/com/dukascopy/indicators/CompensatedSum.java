@@ -0,0 +1,120 @@
+package com.dukascopy.indicators;
+
+/**
+ * Sum with Neumaier compensation. Values can be added and subtracted again while a window slides, the rounding errors
+ * of the values that left the window don't pile up in the sum, so long series keep the precision of a sum computed
+ * over the window alone. Non-finite values are only counted and the sum of the finite values is valid again once they
+ * are subtracted.
+ */
+final class CompensatedSum {
+
+    // 2^27 + 1, splits a double into two halves that multiply without rounding
+    private static final double SPLITTER = 134217729.0;
+
+    private double sum;
+    private double compensation;
+    private int nonFiniteCount;
+
+    void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            nonFiniteCount++;
+            return;
+        }
+        accumulate(value);
+    }
+
+    void subtract(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            nonFiniteCount--;
+            return;
+        }
+        accumulate(-value);
+    }
+
+    /**
+     * Adds the product of the values without rounding it. A product that is not finite, also one of two finite values
+     * that overflows, is only counted.
+     */
+    void addProduct(double a, double b) {
+        double product = a * b;
+        if (Double.isNaN(product) || Double.isInfinite(product)) {
+            nonFiniteCount++;
+            return;
+        }
+        accumulate(product);
+        accumulate(productError(a, b, product));
+    }
+
+    /**
+     * Subtracts the product added by {@link #addProduct(double, double)} with the same values, non-finite products are
+     * classified the same way so the count returns to zero once they all left the sum
+     */
+    void subtractProduct(double a, double b) {
+        double product = a * b;
+        if (Double.isNaN(product) || Double.isInfinite(product)) {
+            nonFiniteCount--;
+            return;
+        }
+        accumulate(-product);
+        accumulate(-productError(a, b, product));
+    }
+
+    /**
+     * @return true if there are no non-finite values in the sum
+     */
+    boolean isFinite() {
+        return nonFiniteCount == 0;
+    }
+
+    /**
+     * @return sum of the finite values
+     */
+    double getValue() {
+        return sum + compensation;
+    }
+
+    /**
+     * Returns factor times this sum minus the other factor times the other sum. The products are taken without rounding
+     * and the difference is rounded once, so sums that mostly cancel each other keep their precision.
+     *
+     * @return difference of the sums of the finite values
+     */
+    double getDifference(double factor, double otherFactor, CompensatedSum other) {
+        double minuend = factor * sum;
+        double subtrahend = otherFactor * other.sum;
+        double difference = minuend - subtrahend;
+        double error;
+        if (Math.abs(minuend) >= Math.abs(subtrahend)) {
+            error = (minuend - difference) - subtrahend;
+        } else {
+            error = (-subtrahend - difference) + minuend;
+        }
+        error += productError(factor, sum, minuend) + factor * compensation;
+        error -= productError(otherFactor, other.sum, subtrahend) + otherFactor * other.compensation;
+        return difference + error;
+    }
+
+    // Dekker's exact product: a * b = product + productError(a, b, product)
+    private static double productError(double a, double b, double product) {
+        double aHigh = split(a);
+        double aLow = a - aHigh;
+        double bHigh = split(b);
+        double bLow = b - bHigh;
+        return ((aHigh * bHigh - product) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+    }
+
+    private static double split(double value) {
+        double c = SPLITTER * value;
+        return c - (c - value);
+    }
+
+    private void accumulate(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+}
@@ -1,5 +1,7 @@
 package com.dukascopy.indicators;
 
+import java.util.Arrays;
+
 import com.dukascopy.api.*;
 import com.dukascopy.api.indicators.*;
 
@@ -16,6 +18,7 @@ public class CorrelTwoInstruments implements IIndicator, IChartInstrumentsListen
     private double[][] outputs = new double[1][];
 
     private IIndicator correl;
+    private ScratchArena scratchArena;
 
     @Override
     public void onStart(IIndicatorContext context) {
@@ -42,6 +45,7 @@ public class CorrelTwoInstruments implements IIndicator, IChartInstrumentsListen
         };
 
         correl = context.getIndicatorsProvider().getIndicator("CORREL");
+        scratchArena = context.createScratchArena();
 
         onInstrumentsChanged(context.getChartInstruments());
         context.addChartInstrumentsListener(this);
@@ -82,18 +86,23 @@ public class CorrelTwoInstruments implements IIndicator, IChartInstrumentsListen
             int maxLength = Math.max(inputs[0].length, inputs[1].length);
             int diffLength = Math.abs(inputs[0].length - inputs[1].length);
 
-            double[][] inputs_ = new double[2][maxLength];
-            double[][] outputs_ = new double[1][outputs[0].length - diffLength];
+            int outputLength = outputs[0].length - diffLength;
+            double[][] inputs_ = new double[][] {scratchArena.getDoubles(0, maxLength), scratchArena.getDoubles(1, maxLength)};
+            double[][] outputs_ = new double[][] {scratchArena.getDoubles(2, outputLength)};
 
-            System.arraycopy(inputs[0], 0, inputs_[0], maxLength - inputs[0].length, inputs[0].length);
-            System.arraycopy(inputs[1], 0, inputs_[1], maxLength - inputs[1].length, inputs[1].length);
+            // shorter input is aligned to the end, the beginning is zero as in a new array
+            for (int k = 0; k < 2; k++) {
+                Arrays.fill(inputs_[k], 0, maxLength - inputs[k].length, 0);
+                System.arraycopy(inputs[k], 0, inputs_[k], maxLength - inputs[k].length, inputs[k].length);
+            }
 
             correl.setInputParameter(0, inputs_[0]);
             correl.setInputParameter(1, inputs_[1]);
             correl.setOutputParameter(0, outputs_[0]);
-            correl.calculate(startIndex + diffLength, endIndex);
+            IndicatorResult correlResult = correl.calculate(startIndex + diffLength, endIndex);
+            Arrays.fill(outputs_[0], Math.min(correlResult.getNumberOfElements(), outputLength), outputLength, 0);
 
-            System.arraycopy(outputs_[0], 0, outputs[0], diffLength, outputs_[0].length);
+            System.arraycopy(outputs_[0], 0, outputs[0], diffLength, outputLength);
 
             for (int i = 0; i < diffLength; i++) {
                 outputs[0][i] = Double.NaN;
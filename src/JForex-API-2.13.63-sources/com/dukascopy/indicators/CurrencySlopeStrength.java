@@ -24,6 +24,7 @@ import com.dukascopy.api.indicators.IntegerRangeDescription;
 import com.dukascopy.api.indicators.LevelInfo;
 import com.dukascopy.api.indicators.OptInputParameterInfo;
 import com.dukascopy.api.indicators.OutputParameterInfo;
+import com.dukascopy.api.indicators.ScratchArena;
 
 public class CurrencySlopeStrength implements IIndicator {
 
@@ -61,9 +62,13 @@ public class CurrencySlopeStrength implements IIndicator {
     private IIndicator ma;
     private IIndicator atr;
 
+    private ScratchArena scratchArena;
+    private final double[][] atrInput = new double[5][];
+
     @Override
     public void onStart(IIndicatorContext context) {
         this.context = context;
+        scratchArena = context.createScratchArena();
 
         indicatorInfo = new IndicatorInfo("CSS", "Currency Slope Strength", "", false, false, true, 1, 7 + currencyNames.length, currencyNames.length);
         indicatorInfo.setRecalculateAll(true);
@@ -195,7 +200,9 @@ public class CurrencySlopeStrength implements IIndicator {
                     currencyOccurrences[secondaryCurrencyIdx]++;
                 }
 
-                double[][] atrInput = new double[5][bars.size()];
+                for (int k = 0; k < atrInput.length; k++) {
+                    atrInput[k] = scratchArena.getDoubles(k, bars.size());
+                }
                 for (int i = 0; i < bars.size(); i++) {
                     atrInput[OPEN][i] = bars.get(i).getOpen();
                     atrInput[CLOSE][i] = bars.get(i).getClose();
@@ -204,24 +211,24 @@ public class CurrencySlopeStrength implements IIndicator {
                     atrInput[VOLUME][i] = bars.get(i).getVolume();
                 }
 
-                double[] atrOutput = new double[endIndex - startIndex + 1];
+                double[] atrOutput = scratchArena.getDoubles(5, endIndex - startIndex + 1);
                 atr.setInputParameter(0, atrInput);
                 atr.setOutputParameter(0, atrOutput);
                 atr.calculate(startIndex - atrShift, endIndex - atrShift);
 
-                double[] tmaInput = new double[bars.size()];
+                double[] tmaInput = scratchArena.getDoubles(6, bars.size());
                 for (int i = 0; i < bars.size(); i++) {
                     tmaInput[i] = bars.get(i).getClose();
                 }
 
-                double[] tmaOutput = new double[endIndex - startIndex + 2];
+                double[] tmaOutput = scratchArena.getDoubles(7, endIndex - startIndex + 2);
                 if (ignoreFuture) {
                     ma.setInputParameter(0, tmaInput);
                     ma.setOutputParameter(0, tmaOutput);
                     ma.calculate(startIndex - 1, endIndex);
                 } else {
                     for (int i = startIndex - 1, j = 0; i <= endIndex; i++, j++) {
-                        tmaOutput[j] = calcTma(tmaInput, i);
+                        tmaOutput[j] = calcTma(tmaInput, bars.size(), i);
                     }
                 }
 
@@ -270,7 +277,7 @@ public class CurrencySlopeStrength implements IIndicator {
         return currencyIdx;
     }
 
-    private double calcTma(double[] tmaInput, int idx) {
+    private double calcTma(double[] tmaInput, int length, int idx) {
         int maLookback = ma.getLookback();
         double sum = tmaInput[idx] * (maLookback + 1);
         double sumw = maLookback + 1;
@@ -281,7 +288,7 @@ public class CurrencySlopeStrength implements IIndicator {
                 sumw += knx;
             }
 
-            if (idx + jnx < tmaInput.length) {
+            if (idx + jnx < length) {
                 sum += tmaInput[idx + jnx] * knx;
                 sumw += knx;
             }
@@ -58,12 +58,20 @@ public class DonchianChannel implements IIndicator {
         }
 
         int i, j;
+        // channel of the timePeriod bars before the current one
+        SlidingExtremum highs = new SlidingExtremum(inputs[0][2], timePeriod, true);
+        SlidingExtremum lows = new SlidingExtremum(inputs[0][3], timePeriod, false);
+        for (i = startIndex - timePeriod; i < startIndex - 1; i++) {
+            highs.push(i);
+            lows.push(i);
+        }
         for (i = startIndex, j = 0; i <= endIndex; i++, j++) {
+            highs.push(i - 1);
+            lows.push(i - 1);
+            // the previous bar wins ties and NaN, older bars only when strictly beyond it
             double highestHigh = inputs[0][2][i - 1], lowestLow = inputs[0][3][i - 1];
-            for (int k = timePeriod; k > 1; k--) {
-                highestHigh = inputs[0][2][i - k] > highestHigh ? inputs[0][2][i - k] : highestHigh;
-                lowestLow = inputs[0][3][i - k] < lowestLow ? inputs[0][3][i - k] : lowestLow;
-            }
+            highestHigh = highs.getValue() > highestHigh ? highs.getValue() : highestHigh;
+            lowestLow = lows.getValue() < lowestLow ? lows.getValue() : lowestLow;
             outputs[0][j] = highestHigh;
             outputs[1][j] = lowestLow;
             outputs[2][j] = (highestHigh + lowestLow) / 2;
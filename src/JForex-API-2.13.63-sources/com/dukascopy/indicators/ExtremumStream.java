@@ -0,0 +1,80 @@
+package com.dukascopy.indicators;
+
+/**
+ * Highest or lowest of the last period pushed values at an amortised constant cost per value, the streaming
+ * counterpart of {@link SlidingExtremum}. Values that can still become the extremum are kept in arrival order with
+ * monotonic values, equal values are all kept so the first one is the oldest. NaN values never become the extremum.
+ */
+final class ExtremumStream {
+
+    private final int period;
+    private final boolean highest;
+
+    // ring of candidates, oldest at head
+    private final long[] indices;
+    private final double[] values;
+    private int head;
+    private int size;
+
+    private long count;
+
+    /**
+     * @param period number of the last pushed values in the window, at least 1
+     * @param highest true for the highest value, false for the lowest one
+     */
+    ExtremumStream(int period, boolean highest) {
+        this.period = period;
+        this.highest = highest;
+        this.indices = new long[period];
+        this.values = new double[period];
+    }
+
+    private ExtremumStream(ExtremumStream source) {
+        period = source.period;
+        highest = source.highest;
+        indices = source.indices.clone();
+        values = source.values.clone();
+        head = source.head;
+        size = source.size;
+        count = source.count;
+    }
+
+    ExtremumStream copy() {
+        return new ExtremumStream(this);
+    }
+
+    void push(double value) {
+        long index = count++;
+        while (size > 0 && indices[head] <= index - period) {
+            head = head + 1 == period ? 0 : head + 1;
+            size--;
+        }
+
+        if (Double.isNaN(value)) {
+            return;
+        }
+        // values the new one beats can't become the extremum any more
+        while (size > 0) {
+            int tail = head + size - 1;
+            double candidate = values[tail >= period ? tail - period : tail];
+            if (highest ? candidate < value : candidate > value) {
+                size--;
+            } else {
+                break;
+            }
+        }
+        int tail = head + size;
+        tail = tail >= period ? tail - period : tail;
+        indices[tail] = index;
+        values[tail] = value;
+        size++;
+    }
+
+    /**
+     * @param empty value returned when there are only NaN values in the window
+     * @return extremum of the window
+     */
+    double getValue(double empty) {
+        return size == 0 ? empty : values[head];
+    }
+}
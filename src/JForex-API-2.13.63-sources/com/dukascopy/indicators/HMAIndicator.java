@@ -8,6 +8,7 @@ import com.dukascopy.api.indicators.InputParameterInfo;
 import com.dukascopy.api.indicators.IntegerRangeDescription;
 import com.dukascopy.api.indicators.OptInputParameterInfo;
 import com.dukascopy.api.indicators.OutputParameterInfo;
+import com.dukascopy.api.indicators.ScratchArena;
 
 /**
  * <b>NOTE: </b> The calculate logic of this indicator is implemented in JavaScript.
@@ -26,8 +27,10 @@ public class HMAIndicator implements IIndicator {
     private OptInputParameterInfo[] optInputParameterInfos;
     private double[][] inputs = new double[1][];
     private double[][] outputs = new double[1][];
+    private ScratchArena scratchArena;
 
     public void onStart(IIndicatorContext context) {
+    	scratchArena = context.createScratchArena();
     	fullPeriodWMA = context.getIndicatorsProvider().getIndicator("WMA");
     	halfPeriodWMA = context.getIndicatorsProvider().getIndicator("WMA");
     	actualWMA = context.getIndicatorsProvider().getIndicator("WMA");    	
@@ -54,17 +57,17 @@ public class HMAIndicator implements IIndicator {
           
         fullPeriodWMA.setInputParameter(0, inputs[0]);                        
         double[] outWMAFullPeriod = 
-        	new double[endIndex - startIndex + actualWMA.getLookback() + 1];       
+        	scratchArena.getDoubles(0, endIndex - startIndex + actualWMA.getLookback() + 1);       
         fullPeriodWMA.setOutputParameter(0, outWMAFullPeriod);
         IndicatorResult wmaFullPeriodRes = fullPeriodWMA.calculate(startIndex - actualWMA.getLookback(), endIndex); 
 
-        double[] outWMAHalfPeriod = new double[endIndex - startIndex + actualWMA.getLookback() + 1];
+        double[] outWMAHalfPeriod = scratchArena.getDoubles(1, endIndex - startIndex + actualWMA.getLookback() + 1);
         halfPeriodWMA.setInputParameter(0, inputs[0]);
         halfPeriodWMA.setOptInputParameter(0, (int)(timePeriod / 2) < 2 ? 2 : (int)(timePeriod / 2));        
         halfPeriodWMA.setOutputParameter(0, outWMAHalfPeriod); 
         halfPeriodWMA.calculate(startIndex - actualWMA.getLookback(), endIndex);        
                 
-        double[] wmaInput = new double[wmaFullPeriodRes.getNumberOfElements()];
+        double[] wmaInput = scratchArena.getDoubles(2, wmaFullPeriodRes.getNumberOfElements());
         for (int i = 0; i < wmaFullPeriodRes.getNumberOfElements(); i++) {
         	wmaInput[i] = 2 * outWMAHalfPeriod[i] - outWMAFullPeriod[i];
         }
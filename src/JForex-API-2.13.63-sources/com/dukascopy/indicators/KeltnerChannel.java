@@ -1,8 +1,10 @@
 package com.dukascopy.indicators;
 
 import com.dukascopy.api.DefaultColors;
+import com.dukascopy.api.IIndicators;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -15,7 +17,7 @@ import com.dukascopy.api.indicators.OutputParameterInfo;
  * Date: Feb 26, 2010
  * Time: 10:29:12 AM
  */
-public class KeltnerChannel implements IIndicator {
+public class KeltnerChannel implements IIndicator, IStreamingIndicator {
 
     private IIndicator ma;
 
@@ -29,6 +31,8 @@ public class KeltnerChannel implements IIndicator {
 
     private int period = 10;
 
+    private Stream stream;
+
     public void onStart(IIndicatorContext context) {
         ma = context.getIndicatorsProvider().getIndicator("SMA");
 
@@ -139,4 +143,83 @@ public class KeltnerChannel implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    public boolean isStreamable() {
+        return true;
+    }
+
+    public void resetStream() {
+        stream = new Stream(period);
+    }
+
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        return stream.push(inputValues[1], inputValues[2], inputValues[3]);
+    }
+
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.outputs[outputIdx];
+    }
+
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((Stream) snapshot).copy();
+    }
+
+    /**
+     * calculate starts the SMA one bar after the first one and averages the ranges of the period bars before the
+     * current one, summed oldest first, the stream does the same
+     */
+    private static final class Stream {
+        private final int period;
+        private final MovingAverageStream sma;
+        // ranges of the last period bars, the next one is written at position
+        private final double[] ranges;
+        private int position;
+        private int count;
+        private final double[] outputs = new double[] {Double.NaN, Double.NaN, Double.NaN};
+
+        Stream(int period) {
+            this(period, new MovingAverageStream(IIndicators.MaType.SMA, period));
+        }
+
+        private Stream(int period, MovingAverageStream sma) {
+            this.period = period;
+            this.sma = sma;
+            this.ranges = new double[period];
+        }
+
+        Stream copy() {
+            Stream copy = new Stream(period, sma.copy());
+            System.arraycopy(ranges, 0, copy.ranges, 0, ranges.length);
+            copy.position = position;
+            copy.count = count;
+            System.arraycopy(outputs, 0, copy.outputs, 0, outputs.length);
+            return copy;
+        }
+
+        boolean push(double close, double high, double low) {
+            boolean ready = ++count > 1 && sma.push(close) && count > period + 1;
+            if (ready) {
+                double sum = 0;
+                for (int x = 0, i = position; x < period; x++, i = i + 1 == period ? 0 : i + 1) {
+                    sum += ranges[i];
+                }
+                double avg = sum / period;
+                double middle = sma.getValue();
+                outputs[1] = middle;
+                outputs[0] = middle + avg;
+                outputs[2] = middle - avg;
+            }
+
+            ranges[position] = high - low;
+            position = position + 1 == period ? 0 : position + 1;
+            return ready;
+        }
+    }
 }
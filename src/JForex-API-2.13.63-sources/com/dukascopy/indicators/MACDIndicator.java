@@ -1,8 +1,10 @@
 package com.dukascopy.indicators;
 
+import com.dukascopy.api.IIndicators;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
 import com.dukascopy.api.indicators.IIndicatorsProvider;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -10,7 +12,7 @@ import com.dukascopy.api.indicators.IntegerRangeDescription;
 import com.dukascopy.api.indicators.OptInputParameterInfo;
 import com.dukascopy.api.indicators.OutputParameterInfo;
 
-public class MACDIndicator implements IIndicator {
+public class MACDIndicator implements IIndicator, IStreamingIndicator {
     private IIndicator fastEMA;
     private IIndicator slowEMA;
     private IIndicator signalEMA;
@@ -27,6 +29,8 @@ public class MACDIndicator implements IIndicator {
     private int slowPeriod = 26;
     private int signalPeriod = 9;
 
+    private Stream stream;
+
     public void onStart(IIndicatorContext context) {
         IIndicatorsProvider indicatorsProvider = context.getIndicatorsProvider();
         fastEMA = indicatorsProvider.getIndicator("EMA");
@@ -171,4 +175,82 @@ public class MACDIndicator implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    public boolean isStreamable() {
+        return true;
+    }
+
+    public void resetStream() {
+        stream = new Stream(Math.min(fastPeriod, slowPeriod), Math.max(fastPeriod, slowPeriod), signalPeriod);
+    }
+
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        return stream.push(inputValues[0]);
+    }
+
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.outputs[outputIdx];
+    }
+
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((Stream) snapshot).copy();
+    }
+
+    private static final class Stream {
+        // calculate starts the fast EMA where it ends its lookback together with the slow one
+        private final int fastSkip;
+        private final MovingAverageStream fastEMA;
+        private final MovingAverageStream slowEMA;
+        private final MovingAverageStream signalEMA;
+        private final double[] outputs = new double[] {Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        private int count;
+
+        Stream(int fastPeriod, int slowPeriod, int signalPeriod) {
+            fastSkip = slowPeriod - fastPeriod;
+            fastEMA = new MovingAverageStream(IIndicators.MaType.EMA, fastPeriod);
+            slowEMA = new MovingAverageStream(IIndicators.MaType.EMA, slowPeriod);
+            signalEMA = new MovingAverageStream(IIndicators.MaType.EMA, signalPeriod);
+        }
+
+        private Stream(Stream source) {
+            fastSkip = source.fastSkip;
+            fastEMA = source.fastEMA.copy();
+            slowEMA = source.slowEMA.copy();
+            signalEMA = source.signalEMA.copy();
+            System.arraycopy(source.outputs, 0, outputs, 0, outputs.length);
+            count = source.count;
+        }
+
+        Stream copy() {
+            return new Stream(this);
+        }
+
+        boolean push(double value) {
+            if (count++ >= fastSkip) {
+                fastEMA.push(value);
+            }
+            if (!slowEMA.push(value)) {
+                return false;
+            }
+
+            double macd = fastEMA.getValue() - slowEMA.getValue();
+            if (!signalEMA.push(macd)) {
+                return false;
+            }
+
+            outputs[0] = macd;
+            outputs[1] = signalEMA.getValue();
+            outputs[2] = outputs[0] - outputs[1];
+            outputs[3] = (outputs[2] > 0 ? outputs[2] : 0);
+            outputs[4] = (outputs[2] < 0 ? outputs[2] : 0);
+            return true;
+        }
+    }
 }
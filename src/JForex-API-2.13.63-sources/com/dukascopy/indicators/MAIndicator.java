@@ -4,6 +4,7 @@ import com.dukascopy.api.IIndicators;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
 import com.dukascopy.api.indicators.IIndicatorsProvider;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -19,7 +20,7 @@ import com.dukascopy.api.indicators.OutputParameterInfo;
  * @author anatoly.pokusayev
  *
  */
-public class MAIndicator implements IIndicator {
+public class MAIndicator implements IIndicator, IStreamingIndicator {
 
     private IndicatorInfo indicatorInfo;
     private InputParameterInfo[] inputParameterInfos;
@@ -35,6 +36,8 @@ public class MAIndicator implements IIndicator {
     private IIndicatorsProvider indicatorsProvider;
     private IIndicator ma;
 
+    private MovingAverageStream stream;
+
     @Override
     public void onStart(IIndicatorContext context) {
         indicatorInfo = new IndicatorInfo("MA", "Moving average", "Overlap Studies", true, false, false, 1, 2, 1);
@@ -168,4 +171,37 @@ public class MAIndicator implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    @Override
+    public boolean isStreamable() {
+        return MovingAverageStream.isSupported(IIndicators.MaType.values()[maType], timePeriod);
+    }
+
+    @Override
+    public void resetStream() {
+        stream = new MovingAverageStream(IIndicators.MaType.values()[maType], timePeriod);
+    }
+
+    @Override
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        return stream.push(inputValues[0]);
+    }
+
+    @Override
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.getValue();
+    }
+
+    @Override
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    @Override
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((MovingAverageStream) snapshot).copy();
+    }
 }
@@ -58,19 +58,17 @@ public class MAXIndicator implements IIndicator{
         trailingIdx = startIndex - nbInitialElementNeeded;
         highestIdx = -1;
         highest = 0.0;
+        SlidingExtremum window = new SlidingExtremum(inputs[0], timePeriod, true);
+        for (i = trailingIdx; i < today; i++) {
+           window.push(i);
+        }
         while(today <= endIndex){
            tmp = inputs[0][today];
+           window.push(today);
            if(highestIdx < trailingIdx){
-              highestIdx = trailingIdx;
+              // same index as scanning the window from trailingIdx for a greater value, NaN at trailingIdx stays
+              highestIdx = Double.isNaN(inputs[0][trailingIdx]) ? trailingIdx : window.getIndex();
               highest = inputs[0][highestIdx];
-              i = highestIdx;
-              while(++i <= today){
-                 tmp = inputs[0][i];
-                 if(tmp > highest){
-                    highestIdx = i;
-                    highest = tmp;
-                 }
-              }
            }
            else if(tmp >= highest){
               highestIdx = today;
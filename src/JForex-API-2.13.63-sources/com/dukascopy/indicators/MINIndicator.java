@@ -57,19 +57,17 @@ public class MINIndicator implements IIndicator{
         trailingIdx = startIndex - nbInitialElementNeeded;
         lowestIdx = -1;
         lowest = 0;
+        SlidingExtremum window = new SlidingExtremum(inputs[0], timePeriod, false);
+        for (i = trailingIdx; i < today; i++) {
+           window.push(i);
+        }
         while(today <= endIndex){
            tmp = inputs[0][today];
+           window.push(today);
            if(lowestIdx < trailingIdx){
-              lowestIdx = trailingIdx;
+              // same index as scanning the window from trailingIdx for a lower value, NaN at trailingIdx stays
+              lowestIdx = Double.isNaN(inputs[0][trailingIdx]) ? trailingIdx : window.getIndex();
               lowest = inputs[0][lowestIdx];
-              i = lowestIdx;
-              while( ++i <= today ){
-                 tmp = inputs[0][i];
-                 if( tmp < lowest ){
-                    lowestIdx = i;
-                    lowest = tmp;
-                 }
-              }
            }
            else if(tmp <= lowest){
               lowestIdx = today;
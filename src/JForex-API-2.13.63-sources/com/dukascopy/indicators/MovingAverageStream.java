@@ -0,0 +1,138 @@
+package com.dukascopy.indicators;
+
+import com.dukascopy.api.IIndicators;
+
+/**
+ * One bar at a time SMA, EMA and WMA. Every update performs the same floating point operations in the same order
+ * as the batch calculation started at the first value, so the results are bit-identical to it. Period 1 passes
+ * values through like {@link MAIndicator} does.
+ */
+final class MovingAverageStream {
+
+    private final IIndicators.MaType type;
+    private final int period;
+    private final int divider;
+    private final double k;
+
+    // last period values, the next one is written at position
+    private final double[] window;
+    private int position;
+    private int count;
+
+    // SMA period total, EMA previous value and WMA period sum
+    private double total;
+    private double periodSub;
+    private double trailingValue;
+    private double value = Double.NaN;
+
+    MovingAverageStream(IIndicators.MaType type, int period) {
+        if (!isSupported(type, period)) {
+            throw new UnsupportedOperationException(type + " can't be streamed");
+        }
+        this.type = type;
+        this.period = period;
+        this.divider = (period * (period + 1)) >> 1;
+        this.k = 2.0 / ((double) (period + 1));
+        this.window = new double[period];
+    }
+
+    private MovingAverageStream(MovingAverageStream source) {
+        type = source.type;
+        period = source.period;
+        divider = source.divider;
+        k = source.k;
+        window = source.window.clone();
+        position = source.position;
+        count = source.count;
+        total = source.total;
+        periodSub = source.periodSub;
+        trailingValue = source.trailingValue;
+        value = source.value;
+    }
+
+    static boolean isSupported(IIndicators.MaType type, int period) {
+        return period == 1 || type == IIndicators.MaType.SMA || type == IIndicators.MaType.EMA || type == IIndicators.MaType.WMA;
+    }
+
+    MovingAverageStream copy() {
+        return new MovingAverageStream(this);
+    }
+
+    int getLookback() {
+        return period - 1;
+    }
+
+    /**
+     * @return true if {@link #getValue()} has a value for the pushed one
+     */
+    boolean push(double input) {
+        count++;
+        if (period == 1) {
+            value = input;
+            return true;
+        }
+
+        switch (type) {
+        case SMA:
+            return pushSma(input);
+        case EMA:
+            return pushEma(input);
+        default:
+            return pushWma(input);
+        }
+    }
+
+    // keeps the last period values, returns the oldest of them
+    private double slide(double input) {
+        window[position] = input;
+        position = position + 1 == period ? 0 : position + 1;
+        return window[position];
+    }
+
+    private boolean pushSma(double input) {
+        double trailing = slide(input);
+        total += input;
+        if (count < period) {
+            return false;
+        }
+        double periodTotal = total;
+        total -= trailing;
+        value = periodTotal / period;
+        return true;
+    }
+
+    private boolean pushEma(double input) {
+        if (count < period) {
+            total += input;
+            return false;
+        }
+        if (count == period) {
+            total += input;
+            total = total / period;
+        } else {
+            total = ((input - total) * k) + total;
+        }
+        value = total;
+        return true;
+    }
+
+    private boolean pushWma(double input) {
+        double trailing = slide(input);
+        if (count < period) {
+            periodSub += input;
+            total += input * count;
+            return false;
+        }
+        periodSub += input;
+        periodSub -= trailingValue;
+        total += input * period;
+        trailingValue = trailing;
+        value = total / divider;
+        total -= periodSub;
+        return true;
+    }
+
+    double getValue() {
+        return value;
+    }
+}
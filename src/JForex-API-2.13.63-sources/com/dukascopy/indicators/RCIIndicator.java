@@ -34,65 +34,188 @@ public class RCIIndicator implements IIndicator {
     }			
 
     public IndicatorResult calculate(int startIndex, int endIndex) {
-    	if (startIndex - getLookback() < 0) {
-    		startIndex = getLookback();
+        if (startIndex - getLookback() < 0) {
+            startIndex = getLookback();
         }
         if (startIndex > endIndex) {
             return new IndicatorResult(0, 0);
         }
-        
-        int i, j, m, n;
-        int[] timeRanks = new int[timePeriod];
-        double[] valueRanks = new double[timePeriod];
-        double[] prices = new double[timePeriod];
-        double[] sortedPrices = new double[timePeriod];
-        int[] occurrences = new int[timePeriod];
-        
-        for (i = startIndex, j = 0; i <= endIndex; i++, j++) {	        	        
-        	System.arraycopy(inputs[0], i - timePeriod + 1, prices, 0, timePeriod);	                	
-	        System.arraycopy(prices, 0, sortedPrices, 0, prices.length);
-			Arrays.sort(sortedPrices);
-	        									
-			int counter;
-			for (m = 0; m < sortedPrices.length; m++) {
-				counter = 0;
-				for (n = 0; n < sortedPrices.length; n++){
-					if (sortedPrices[m] == sortedPrices[n]){
-						counter++;
-					}
-				}			
-				occurrences[m] = counter;
-			}							        	                
-	        for (n = 0; n < timePeriod; n++){
-				timeRanks[n] = timeRanks.length - n;
-				valueRanks[n] = identifyValueRank(prices[n], occurrences, sortedPrices);				
-			}		            
-	        double diffSum = 0;
-	        for (m = 0; m < timePeriod; m++){
-	        	diffSum += Math.pow(timeRanks[m] - valueRanks[m], 2);
-	        }	                	
-        	outputs[0][j] = (1 - 6 * diffSum / (timePeriod * (Math.pow(timePeriod, 2) - 1)) ) * 100;   	        		
-        }
-        
-        return new IndicatorResult(startIndex, j);        
+
+        int i, j;
+        int firstIndex = startIndex - getLookback();
+        RankWindow window = new RankWindow(timePeriod, inputs[0], firstIndex, endIndex);
+        double denominator = timePeriod * (Math.pow(timePeriod, 2) - 1);
+
+        for (i = firstIndex; i < startIndex; i++) {
+            window.push(i);
+        }
+        for (j = 0; i <= endIndex; i++, j++) {
+            window.push(i);
+            if (window.hasNaN()) {
+                outputs[0][j] = Double.NaN;
+                continue;
+            }
+            // sum of squared differences of half-integer ranks is exact, so it doesn't depend on summation order
+            double diffSum = window.getDoubledRankDifferences() / 4d;
+            outputs[0][j] = (1 - 6 * diffSum / denominator) * 100;
+        }
+
+        return new IndicatorResult(startIndex, j);
+    }
+
+    /**
+     * Sliding window of the last period values ranked by time (newest 1) and by value (highest 1, tied values get
+     * the average of their ranks). Values are ranked with Fenwick trees over the distinct values of the whole
+     * calculation range, so a bar costs O(log n) instead of sorting the window. Ranks are kept doubled, which makes
+     * the sum of squared rank differences an exact integer updated with every added and removed value.
+     */
+    private static final class RankWindow {
+        private final int period;
+        private final int firstIndex;
+        // distinct values in ascending order and the position of each input value among them, 0 for NaN
+        private final double[] keys;
+        private final int keyCount;
+        private final int[] keyPositions;
+        // Fenwick trees with counts and sums of indices of the values in the window
+        private final int[] counts;
+        private final long[] indexSums;
+
+        private int size;
+        private long indexTotal;
+        private int nanCount;
+        private int newestIndex;
+        // sum of (2 * time rank - 2 * value rank)^2 over the values in the window
+        private long doubledRankDifferences;
+
+        RankWindow(int period, double[] values, int firstIndex, int lastIndex) {
+            this.period = period;
+            this.firstIndex = firstIndex;
+
+            int n = 0;
+            double[] sorted = new double[lastIndex - firstIndex + 1];
+            for (int i = firstIndex; i <= lastIndex; i++) {
+                if (!Double.isNaN(values[i])) {
+                    // -0.0 and 0.0 are equal values
+                    sorted[n++] = values[i] + 0.0;
+                }
+            }
+            Arrays.sort(sorted, 0, n);
+            int distinct = 0;
+            for (int k = 0; k < n; k++) {
+                if (distinct == 0 || sorted[k] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[k];
+                }
+            }
+            keys = sorted;
+            keyCount = distinct;
+
+            keyPositions = new int[lastIndex - firstIndex + 1];
+            for (int i = firstIndex; i <= lastIndex; i++) {
+                if (!Double.isNaN(values[i])) {
+                    keyPositions[i - firstIndex] = Arrays.binarySearch(keys, 0, keyCount, values[i] + 0.0) + 1;
+                }
+            }
+            counts = new int[keyCount + 1];
+            indexSums = new long[keyCount + 1];
+        }
+
+        boolean hasNaN() {
+            return nanCount > 0;
+        }
+
+        long getDoubledRankDifferences() {
+            return doubledRankDifferences;
+        }
+
+        void push(int index) {
+            if (index - period >= firstIndex) {
+                remove(index - period);
+            }
+            // every value left in the window gets one bar older, doubled time rank + 2
+            if (size > 0) {
+                doubledRankDifferences += 4 * differenceSum(size, indexTotal, (long) size * (size + 1)) + 4L * size;
+            }
+            newestIndex = index;
+            add(index);
+        }
+
+        private void remove(int index) {
+            int position = keyPositions[index - firstIndex];
+            if (position == 0) {
+                nanCount--;
+                return;
+            }
+            long less = count(position - 1);
+            long lessIndexSum = indexSum(position - 1);
+            long equal = count(position) - less;
+            long equalIndexSum = indexSum(position) - lessIndexSum;
+            long valueRank = 2 * (size - less - equal) + equal + 1;
+
+            long difference = 2L * (newestIndex + 1 - index) - valueRank;
+            doubledRankDifferences -= difference * difference;
+            // lower values move one rank up, equal values half a rank up
+            doubledRankDifferences += 4 * differenceSum(less, lessIndexSum, lowestRankSum(less)) + 4 * less;
+            doubledRankDifferences += 2 * differenceSum(equal - 1, equalIndexSum - index, (equal - 1) * valueRank) + equal - 1;
+
+            update(position, -1, -index);
+        }
+
+        private void add(int index) {
+            int position = keyPositions[index - firstIndex];
+            if (position == 0) {
+                nanCount++;
+                return;
+            }
+            long less = count(position - 1);
+            long lessIndexSum = indexSum(position - 1);
+            long equal = count(position) - less;
+            long equalIndexSum = indexSum(position) - lessIndexSum;
+            long greater = size - less - equal;
+
+            // lower values move one rank down, equal values half a rank down
+            doubledRankDifferences += -4 * differenceSum(less, lessIndexSum, lowestRankSum(less)) + 4 * less;
+            doubledRankDifferences += -2 * differenceSum(equal, equalIndexSum, equal * (2 * greater + equal + 1)) + equal;
+            long difference = 2 - (2 * greater + equal + 2);
+            doubledRankDifferences += difference * difference;
+
+            update(position, 1, index);
+        }
+
+        // sum of doubled time rank minus doubled value rank over values with given count, index sum and value rank sum
+        private long differenceSum(long count, long indexSum, long valueRankSum) {
+            return 2 * (count * (newestIndex + 1) - indexSum) - valueRankSum;
+        }
+
+        // sum of doubled value ranks of the given number of lowest values, ties don't change it
+        private long lowestRankSum(long count) {
+            return 2 * count * size - count * (count - 1);
+        }
+
+        private long count(int position) {
+            long result = 0;
+            for (int k = position; k > 0; k -= k & -k) {
+                result += counts[k];
+            }
+            return result;
+        }
+
+        private long indexSum(int position) {
+            long result = 0;
+            for (int k = position; k > 0; k -= k & -k) {
+                result += indexSums[k];
+            }
+            return result;
+        }
+
+        private void update(int position, int count, int index) {
+            for (int k = position; k <= keyCount; k += k & -k) {
+                counts[k] += count;
+                indexSums[k] += index;
+            }
+            size += count;
+            indexTotal += index;
+        }
     }
-    
-    private double identifyValueRank(double value, int[] occurrences, double[] sortedPrices){    	
-    	int index = -1;
-		for (int j = 0; j < sortedPrices.length; j++){
-			if (sortedPrices[j] == value){
-				index = j;
-				break;
-			}				
-		} 
-		if (occurrences[index] == 1){
-			return sortedPrices.length - index;
-		}
-		else{				
-			int lastIndex = index + occurrences[index] - 1;
-			return (((sortedPrices.length - index) + (sortedPrices.length - lastIndex )) / 2d) * occurrences[index] / occurrences[index];
-		}
-    }    
 
     public IndicatorInfo getIndicatorInfo() {
         return indicatorInfo;
@@ -138,4 +261,4 @@ public class RCIIndicator implements IIndicator {
     public void setOutputParameter(int index, Object array) {
         outputs[index] = (double[]) array;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -7,6 +7,7 @@ package com.dukascopy.indicators;
 import com.dukascopy.api.DefaultColors;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -21,7 +22,7 @@ import com.dukascopy.api.indicators.OutputParameterInfo;
  * @author anatoly.pokusayev
  *
  */
-public class RSIIndicator implements IIndicator {
+public class RSIIndicator implements IIndicator, IStreamingIndicator {
     private IndicatorInfo indicatorInfo;
     private InputParameterInfo[] inputParameterInfos;
     private OptInputParameterInfo[] optInputParameterInfos;
@@ -31,6 +32,8 @@ public class RSIIndicator implements IIndicator {
     private final double[][] outputs = new double[1][];
 
     private int timePeriod = 14;
+
+    private Stream stream;
         
     public void onStart(IIndicatorContext context) {    
         indicatorInfo = new IndicatorInfo("RSI", "Relative Strength Index", "Momentum Indicators", false, false, true, 1, 1, 1);
@@ -143,4 +146,92 @@ public class RSIIndicator implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    public boolean isStreamable() {
+        return true;
+    }
+
+    public void resetStream() {
+        stream = new Stream(timePeriod);
+    }
+
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        return stream.push(inputValues[0]);
+    }
+
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.output;
+    }
+
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((Stream) snapshot).copy();
+    }
+
+    // the same operations as calculate, one value at a time
+    private static final class Stream {
+        private final int timePeriod;
+        private int count;
+        private double prevValue;
+        private double prevGain;
+        private double prevLoss;
+        private double output = Double.NaN;
+
+        Stream(int timePeriod) {
+            this.timePeriod = timePeriod;
+        }
+
+        Stream copy() {
+            Stream copy = new Stream(timePeriod);
+            copy.count = count;
+            copy.prevValue = prevValue;
+            copy.prevGain = prevGain;
+            copy.prevLoss = prevLoss;
+            copy.output = output;
+            return copy;
+        }
+
+        boolean push(double value) {
+            count++;
+            if (count == 1) {
+                prevValue = value;
+                return false;
+            }
+
+            double tempValue1;
+            double tempValue2 = value - prevValue;
+            prevValue = value;
+
+            if (count <= timePeriod + 1) {
+                if (tempValue2 < 0) prevLoss -= tempValue2;
+                else prevGain += tempValue2;
+                if (count <= timePeriod) {
+                    return false;
+                }
+                prevGain /= timePeriod;
+                prevLoss /= timePeriod;
+                tempValue1 = prevGain + prevLoss;
+                output = tempValue1 == 0 ? 0 : 100 * (prevGain / tempValue1);
+                return true;
+            }
+
+            prevLoss *= (timePeriod - 1);
+            prevGain *= (timePeriod - 1);
+
+            if (tempValue2 < 0) prevLoss -= tempValue2;
+            else prevGain += tempValue2;
+
+            prevLoss /= timePeriod;
+            prevGain /= timePeriod;
+            tempValue1 = prevLoss + prevGain;
+            output = tempValue1 == 0 ? 0 : 100 * (prevGain / tempValue1);
+            return true;
+        }
+    }
 }
@@ -21,8 +21,6 @@ public class RSquaredIndicator implements IIndicator {
 
     private int n = 14;
 
-    private IIndicator sum;
-
     public void onStart(IIndicatorContext context) {
         indicatorInfo = new IndicatorInfo("R2", "R-Squared", "", false, false, false, 1, 1, 2);
 
@@ -41,8 +39,6 @@ public class RSquaredIndicator implements IIndicator {
 
         outputParameterInfos[0].setColor(DefaultColors.GRAY);
         outputParameterInfos[1].setColor(DefaultColors.RED);
-
-        sum = context.getIndicatorsProvider().getIndicator("SUM");
     }
 
     public IndicatorResult calculate(int startIndex, int endIndex) {
@@ -53,31 +49,43 @@ public class RSquaredIndicator implements IIndicator {
             return new IndicatorResult(0, 0);
         }
 
-        double[][] sumInputs = new double[5][endIndex - startIndex + 1 + getLookback()];
-        double[][] sumOutputs = new double[5][endIndex - startIndex + 1];
-
-        for (int i = startIndex - getLookback(), j = 0; i <= endIndex; i++, j++) {
-            sumInputs[0][j] = j + 1;
-            sumInputs[1][j] = Math.pow(sumInputs[0][j], 2);
-            sumInputs[2][j] = inputs[0][i];
-            sumInputs[3][j] = Math.pow(sumInputs[2][j], 2);
-            sumInputs[4][j] = sumInputs[0][j] * sumInputs[2][j];
-        }
-
-        for (int i = 0; i < 5; i++) {
-            sum.setInputParameter(0, sumInputs[i]);
-            sum.setOutputParameter(0, sumOutputs[i]);
-            sum.calculate(getLookback(), sumInputs[i].length - 1);
+        // x runs from 1 for the oldest to n for the current bar of every window, so its sums are constant
+        double sumX = n * (n + 1) / 2;
+        double sumX2 = (double) n * (n + 1) * (2 * n + 1) / 6;
+        double a = n * sumX2 - Math.pow(sumX, 2);
+
+        // values are weighted by w counting from the first value, x of the window ending at startIndex + i is w - i, so
+        // sum(x * y) = sum(w * y) - i * sum(y) and every value leaves sum(w * y) with the product it entered with
+        CompensatedSum sumY = new CompensatedSum();
+        CompensatedSum sumY2 = new CompensatedSum();
+        CompensatedSum sumWY = new CompensatedSum();
+        for (int i = startIndex - getLookback(), w = 1; i < startIndex; i++, w++) {
+            sumY.add(inputs[0][i]);
+            sumY2.add(inputs[0][i] * inputs[0][i]);
+            sumWY.addProduct(w, inputs[0][i]);
         }
 
         for (int i = 0; i < endIndex - startIndex + 1; i++) {
-            double a = n * sumOutputs[1][i] - Math.pow(sumOutputs[0][i], 2);
-            double b = n * sumOutputs[3][i] - Math.pow(sumOutputs[2][i], 2);
-            double r = (n * sumOutputs[4][i] - sumOutputs[0][i] * sumOutputs[2][i]) / (Math.sqrt(a) * Math.sqrt(b));
-
-            outputs[0][i] = Math.pow(r, 2) * 100;
+            double y = inputs[0][startIndex + i];
+            sumY.add(y);
+            sumY2.add(y * y);
+            sumWY.addProduct(i + n, y);
+
+            if (sumY.isFinite() && sumY2.isFinite() && sumWY.isFinite()) {
+                double b = n * sumY2.getValue() - Math.pow(sumY.getValue(), 2);
+                // n * sum(x * y) - sumX * sum(y)
+                double r = sumWY.getDifference(n, (double) n * i + sumX, sumY) / (Math.sqrt(a) * Math.sqrt(b));
+                outputs[0][i] = Math.pow(r, 2) * 100;
+            } else {
+                outputs[0][i] = Double.NaN;
+            }
             outputs[1][i] = (n == 5 ? 77 : n == 10 ? 40 : n == 14 ? 27 : n == 20 ? 20 : n == 25 ? 16 :
                     n == 30 ? 13 : n == 50 ? 8 : n == 60 ? 120 : n == 120 ? 3 : Double.NaN);
+
+            double trailing = inputs[0][startIndex + i - getLookback()];
+            sumY.subtract(trailing);
+            sumY2.subtract(trailing * trailing);
+            sumWY.subtractProduct(i + 1, trailing);
         }
 
         return new IndicatorResult(startIndex, endIndex - startIndex + 1);
@@ -114,7 +122,6 @@ public class RSquaredIndicator implements IIndicator {
 
     public void setOptInputParameter(int index, Object value) {
         n = (Integer) value;
-        sum.setOptInputParameter(0, n);
     }
 
     public void setOutputParameter(int index, Object array) {
@@ -122,7 +129,7 @@ public class RSquaredIndicator implements IIndicator {
     }
 
     public int getLookback() {
-        return sum.getLookback();
+        return n - 1;
     }
 
     public int getLookforward() {
@@ -64,14 +64,30 @@ public class RegressionChannel implements IIndicator {
             Arrays.fill(outputs[i], Double.NaN);
         }
 
-        double[] sx = new double[2 * degree + 1];
-        sx[0] = bars + 1;
-        for (int mi = 1; mi <= 2 * degree; mi++) {
-            double sum = 0;
-            for (int n = 0; n <= bars; n++) {
-                sum += Math.pow(n, mi);
+        // sums of powers of n and of the values multiplied by them, in one pass
+        CompensatedSum[] powerSums = new CompensatedSum[2 * degree + 1];
+        CompensatedSum[] valueSums = new CompensatedSum[degree + 1];
+        for (int mi = 0; mi <= 2 * degree; mi++) {
+            powerSums[mi] = new CompensatedSum();
+        }
+        for (int mi = 0; mi <= degree; mi++) {
+            valueSums[mi] = new CompensatedSum();
+        }
+        for (int n = 0; n <= bars; n++) {
+            double value = inputs[0][endIndex - bars + n];
+            double power = 1;
+            for (int mi = 0; mi <= 2 * degree; mi++) {
+                powerSums[mi].add(power);
+                if (mi <= degree) {
+                    valueSums[mi].add(value * power);
+                }
+                power *= n;
             }
-            sx[mi] = sum;
+        }
+
+        double[] sx = new double[2 * degree + 1];
+        for (int mi = 0; mi <= 2 * degree; mi++) {
+            sx[mi] = powerSums[mi].getValue();
         }
 
         double[][] ai = new double[degree + 1][degree + 1];
@@ -83,15 +99,7 @@ public class RegressionChannel implements IIndicator {
 
         double[] b = new double[degree + 1];
         for (int mi = 0; mi <= degree; mi++) {
-            double sum = 0;
-            for (int n = 0; n <= bars; n++) {
-                if (mi == 0) {
-                    sum += inputs[0][endIndex - bars + n];
-                } else {
-                    sum += inputs[0][endIndex - bars + n] * Math.pow(n, mi);
-                }
-            }
-            b[mi] = sum;
+            b[mi] = valueSums[mi].isFinite() ? valueSums[mi].getValue() : Double.NaN;
         }
 
         for (int k = 0; k <= degree - 1; k++) {
@@ -143,16 +151,19 @@ public class RegressionChannel implements IIndicator {
         double[] fx = new double[bars + 1];
         for (int n = 0; n <= bars; n++) {
             double sum = x[0];
+            double power = n;
             for (int k = 1; k <= degree; k++) {
-                sum += x[k] * Math.pow(n, k);
+                sum += x[k] * power;
+                power *= n;
             }
             fx[n] = sum;
         }
 
-        double sq = 0;
+        CompensatedSum squares = new CompensatedSum();
         for (int n = 0; n <= bars; n++) {
-            sq += Math.pow(inputs[0][endIndex - bars + n] - fx[n], 2);
+            squares.add(Math.pow(inputs[0][endIndex - bars + n] - fx[n], 2));
         }
+        double sq = squares.isFinite() ? squares.getValue() : Double.NaN;
         sq = Math.sqrt(sq / (bars + 1)) * kstd;
 
         for (int n = 0; n <= bars; n++) {
@@ -36,16 +36,26 @@ public class SUMIndicator implements IIndicator{
             return new IndicatorResult(0, 0);
         }
         
-        double periodTotal = 0;
-        int i = startIndex, outIdx = 0;
+        CompensatedSum periodTotal = new CompensatedSum();
+        int i, outIdx = 0;
+        for (i = startIndex - getLookback(); i < startIndex; i++) {
+            periodTotal.add(inputs[0][i]);
+        }
         
         do {
-        	periodTotal = 0;
-        	for (int k = 0; k < timePeriod; k++){
-        		periodTotal += inputs[0][i - k];
-        	}
-        	outputs[0][outIdx++] = periodTotal;
-        	i++;
+            periodTotal.add(inputs[0][i]);
+            if (periodTotal.isFinite()) {
+                outputs[0][outIdx++] = periodTotal.getValue();
+            } else {
+                // NaN and infinite values are summed directly, as they always were
+                double total = 0;
+                for (int k = 0; k < timePeriod; k++){
+                    total += inputs[0][i - k];
+                }
+                outputs[0][outIdx++] = total;
+            }
+            periodTotal.subtract(inputs[0][i - getLookback()]);
+            i++;
         } while(i <= endIndex);
         
         
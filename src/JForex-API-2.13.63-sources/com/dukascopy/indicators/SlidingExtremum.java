@@ -0,0 +1,81 @@
+package com.dukascopy.indicators;
+
+/**
+ * Highest or lowest of the last period values at an amortised constant cost per value. Indices of the values that can
+ * still become the extremum are kept in arrival order with monotonic values, so the first of them is the extremum of
+ * the window. Equal values are all kept, the first one is the oldest. NaN values never become the extremum.
+ */
+final class SlidingExtremum {
+
+    private final double[] values;
+    private final int period;
+    private final boolean highest;
+
+    // ring of candidate indices, oldest at head
+    private final int[] candidates;
+    private int head;
+    private int size;
+
+    private int lastIndex = Integer.MIN_VALUE;
+    private int lastNaNIndex = Integer.MIN_VALUE;
+
+    /**
+     * @param values values referenced by pushed indices
+     * @param period number of the last pushed indices in the window, at least 1
+     * @param highest true for the highest value, false for the lowest one
+     */
+    SlidingExtremum(double[] values, int period, boolean highest) {
+        this.values = values;
+        this.period = period;
+        this.highest = highest;
+        this.candidates = new int[period];
+    }
+
+    /**
+     * Adds the value at the index to the window, indices have to be pushed in ascending order without gaps
+     */
+    void push(int index) {
+        lastIndex = index;
+        while (size > 0 && candidates[head] <= index - period) {
+            head = head + 1 == period ? 0 : head + 1;
+            size--;
+        }
+
+        double value = values[index];
+        if (Double.isNaN(value)) {
+            lastNaNIndex = index;
+            return;
+        }
+        // values the new one beats can't become the extremum any more
+        while (size > 0) {
+            int tail = head + size - 1;
+            double candidate = values[candidates[tail >= period ? tail - period : tail]];
+            if (highest ? candidate < value : candidate > value) {
+                size--;
+            } else {
+                break;
+            }
+        }
+        int tail = head + size;
+        candidates[tail >= period ? tail - period : tail] = index;
+        size++;
+    }
+
+    /**
+     * @return index of the oldest extremum in the window, -1 if there are only NaN values
+     */
+    int getIndex() {
+        return size == 0 ? -1 : candidates[head];
+    }
+
+    /**
+     * @return extremum of the window, Double.NaN if there are only NaN values
+     */
+    double getValue() {
+        return size == 0 ? Double.NaN : values[candidates[head]];
+    }
+
+    boolean hasNaN() {
+        return lastNaNIndex > lastIndex - period;
+    }
+}
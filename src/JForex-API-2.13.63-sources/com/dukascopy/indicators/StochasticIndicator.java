@@ -5,6 +5,7 @@ import com.dukascopy.api.IIndicators;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
 import com.dukascopy.api.indicators.IIndicatorsProvider;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -20,7 +21,7 @@ import com.dukascopy.api.indicators.OutputParameterInfo;
  * 
  * @author anatoly.pokusayev
  */
-public class StochasticIndicator implements IIndicator {
+public class StochasticIndicator implements IIndicator, IStreamingIndicator {
 
     private static final int OPEN = 0;
     private static final int CLOSE = 1;
@@ -47,6 +48,10 @@ public class StochasticIndicator implements IIndicator {
     private IIndicator slowKMa;
     private IIndicator slowDMa;
 
+    private int slowKMaType = IIndicators.MaType.SMA.ordinal();
+    private int slowDMaType = IIndicators.MaType.SMA.ordinal();
+    private Stream stream;
+
     @Override
     public void onStart(IIndicatorContext context) {
         indicatorInfo = new IndicatorInfo("STOCH", "Stochastic", "Momentum Indicators", false, false, false, 1, 6, 2);
@@ -189,7 +194,7 @@ public class StochasticIndicator implements IIndicator {
             slowKMa.setOptInputParameter(0, slowKPeriod);
             break;
         case 2:
-            int slowKMaType = (Integer) value;
+            slowKMaType = (Integer) value;
             slowKMa.setOptInputParameter(1, slowKMaType);
             indicatorInfo.setUnstablePeriod(
                     slowKMa.getIndicatorInfo().isUnstablePeriod() ||
@@ -200,7 +205,7 @@ public class StochasticIndicator implements IIndicator {
              slowDMa.setOptInputParameter(0, slowDPeriod);
              break;
         case 4:
-            int slowDMaType = (Integer) value;
+            slowDMaType = (Integer) value;
             slowDMa.setOptInputParameter(1, slowDMaType);
             indicatorInfo.setUnstablePeriod(
                     slowKMa.getIndicatorInfo().isUnstablePeriod() ||
@@ -228,4 +233,99 @@ public class StochasticIndicator implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    @Override
+    public boolean isStreamable() {
+        return MovingAverageStream.isSupported(IIndicators.MaType.values()[slowKMaType], slowKPeriod)
+                && MovingAverageStream.isSupported(IIndicators.MaType.values()[slowDMaType], slowDPeriod);
+    }
+
+    @Override
+    public void resetStream() {
+        stream = new Stream(fastKPeriod, priceType, new MovingAverageStream(IIndicators.MaType.values()[slowKMaType], slowKPeriod),
+                new MovingAverageStream(IIndicators.MaType.values()[slowDMaType], slowDPeriod));
+    }
+
+    @Override
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        return stream.push(inputValues[CLOSE], inputValues[HIGH], inputValues[LOW]);
+    }
+
+    @Override
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.outputs[outputIdx];
+    }
+
+    @Override
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    @Override
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((Stream) snapshot).copy();
+    }
+
+    private static final class Stream {
+        private final int fastKPeriod;
+        private final int priceType;
+        // highest high and lowest low of the last fastKPeriod prices
+        private final ExtremumStream highs;
+        private final ExtremumStream lows;
+        private int count;
+        private final MovingAverageStream slowKMa;
+        private final MovingAverageStream slowDMa;
+        private final double[] outputs = new double[] {Double.NaN, Double.NaN};
+
+        Stream(int fastKPeriod, int priceType, MovingAverageStream slowKMa, MovingAverageStream slowDMa) {
+            this(fastKPeriod, priceType, new ExtremumStream(fastKPeriod, true), new ExtremumStream(fastKPeriod, false), slowKMa,
+                    slowDMa);
+        }
+
+        private Stream(int fastKPeriod, int priceType, ExtremumStream highs, ExtremumStream lows, MovingAverageStream slowKMa,
+                MovingAverageStream slowDMa) {
+            this.fastKPeriod = fastKPeriod;
+            this.priceType = priceType;
+            this.highs = highs;
+            this.lows = lows;
+            this.slowKMa = slowKMa;
+            this.slowDMa = slowDMa;
+        }
+
+        Stream copy() {
+            Stream copy = new Stream(fastKPeriod, priceType, highs.copy(), lows.copy(), slowKMa.copy(), slowDMa.copy());
+            copy.count = count;
+            System.arraycopy(outputs, 0, copy.outputs, 0, outputs.length);
+            return copy;
+        }
+
+        boolean push(double close, double high, double low) {
+            highs.push(priceType == PRICE_TYPE_LOWHIGH ? high : close);
+            lows.push(priceType == PRICE_TYPE_LOWHIGH ? low : close);
+            if (++count < fastKPeriod) {
+                return false;
+            }
+
+            // same extremes as the scan of calculate, which starts from infinities and skips NaN
+            double highestPrice = highs.getValue(Double.NEGATIVE_INFINITY);
+            double lowestPrice = lows.getValue(Double.POSITIVE_INFINITY);
+
+            double fastK;
+            if (highestPrice - lowestPrice == 0) {
+                fastK = 0;
+            } else {
+                fastK = 100 * ((close - lowestPrice) / (highestPrice - lowestPrice));
+            }
+
+            if (!slowKMa.push(fastK) || !slowDMa.push(slowKMa.getValue())) {
+                return false;
+            }
+            outputs[0] = slowKMa.getValue();
+            outputs[1] = slowDMa.getValue();
+            return true;
+        }
+    }
 }
@@ -13,6 +13,7 @@ import com.dukascopy.api.indicators.IntegerListDescription;
 import com.dukascopy.api.indicators.IntegerRangeDescription;
 import com.dukascopy.api.indicators.OptInputParameterInfo;
 import com.dukascopy.api.indicators.OutputParameterInfo;
+import com.dukascopy.api.indicators.ScratchArena;
 
 public class StollerAverageRangeChannels implements IIndicator {
 
@@ -28,6 +29,7 @@ public class StollerAverageRangeChannels implements IIndicator {
 
     private IIndicator ma;
     private IIndicator atr;
+    private ScratchArena scratchArena;
 
     @Override
     public void onStart(IIndicatorContext context) {
@@ -69,6 +71,7 @@ public class StollerAverageRangeChannels implements IIndicator {
         ma = indicatorsProvider.getIndicator("MA");
         ma.setOptInputParameter(1, IIndicators.MaType.SMA.ordinal());
         atr = indicatorsProvider.getIndicator("ATR");
+        scratchArena = context.createScratchArena();
     }
 
     @Override
@@ -80,12 +83,12 @@ public class StollerAverageRangeChannels implements IIndicator {
             return new IndicatorResult(0, 0);
         }
 
-        double[] maOutput = new double[endIndex - startIndex + 1];
+        double[] maOutput = scratchArena.getDoubles(0, endIndex - startIndex + 1);
         ma.setInputParameter(0, inputs[0]);
         ma.setOutputParameter(0, maOutput);
         ma.calculate(startIndex, endIndex);
 
-        double[] atrOutput = new double[endIndex - startIndex + 1];
+        double[] atrOutput = scratchArena.getDoubles(1, endIndex - startIndex + 1);
         atr.setInputParameter(0, inputs[1]);
         atr.setOutputParameter(0, atrOutput);
         atr.calculate(startIndex, endIndex);
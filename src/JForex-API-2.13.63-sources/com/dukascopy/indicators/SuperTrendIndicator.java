@@ -7,6 +7,7 @@ import com.dukascopy.api.IIndicators;
 import com.dukascopy.api.indicators.DoubleRangeDescription;
 import com.dukascopy.api.indicators.IIndicator;
 import com.dukascopy.api.indicators.IIndicatorContext;
+import com.dukascopy.api.indicators.IStreamingIndicator;
 import com.dukascopy.api.indicators.IndicatorInfo;
 import com.dukascopy.api.indicators.IndicatorResult;
 import com.dukascopy.api.indicators.InputParameterInfo;
@@ -14,7 +15,7 @@ import com.dukascopy.api.indicators.IntegerRangeDescription;
 import com.dukascopy.api.indicators.OptInputParameterInfo;
 import com.dukascopy.api.indicators.OutputParameterInfo;
 
-public class SuperTrendIndicator implements IIndicator {
+public class SuperTrendIndicator implements IIndicator, IStreamingIndicator {
     private IndicatorInfo indicatorInfo;
     private InputParameterInfo[] inputParameterInfos;
     private OptInputParameterInfo[] optInputParameterInfos;
@@ -23,9 +24,11 @@ public class SuperTrendIndicator implements IIndicator {
     private final Object[] inputs = new Object[2];
     private final double[][] outputs = new double[2][];
 
+    private int atrPeriod = 10;
     private double multiplier = 1.7;
 
     private IIndicator atr;
+    private Stream stream;
 
     private static final int OPEN = 0;
     private static final int CLOSE = 1;
@@ -161,7 +164,7 @@ public class SuperTrendIndicator implements IIndicator {
     public void setOptInputParameter(int index, Object value) {
         switch (index) {
         case 0:
-            int atrPeriod = (Integer) value;
+            atrPeriod = (Integer) value;
             atr.setOptInputParameter(0, atrPeriod);
             break;
         case 1:
@@ -186,4 +189,108 @@ public class SuperTrendIndicator implements IIndicator {
     public int getLookforward() {
         return 0;
     }
+
+    @Override
+    public boolean isStreamable() {
+        return true;
+    }
+
+    @Override
+    public void resetStream() {
+        stream = new Stream(new AverageTrueRangeStream(atrPeriod), multiplier);
+    }
+
+    @Override
+    public boolean pushStream(double[] inputValues) {
+        if (stream == null) {
+            resetStream();
+        }
+        // price followed by open, close, high, low, volume
+        return stream.push(inputValues[0], inputValues[1 + CLOSE], inputValues[1 + HIGH], inputValues[1 + LOW]);
+    }
+
+    @Override
+    public double getStreamOutput(int outputIdx) {
+        return stream == null ? Double.NaN : stream.outputs[outputIdx];
+    }
+
+    @Override
+    public Object snapshotStream() {
+        return stream == null ? null : stream.copy();
+    }
+
+    @Override
+    public void restoreStream(Object snapshot) {
+        stream = snapshot == null ? null : ((Stream) snapshot).copy();
+    }
+
+    private static final class Stream {
+        private final AverageTrueRangeStream atr;
+        private final double multiplier;
+        private boolean first = true;
+        private double prevClose = Double.NaN;
+        private double prevSuperTrend;
+        private final double[] outputs = new double[] {Double.NaN, Double.NaN};
+
+        Stream(AverageTrueRangeStream atr, double multiplier) {
+            this.atr = atr;
+            this.multiplier = multiplier;
+        }
+
+        Stream copy() {
+            Stream copy = new Stream(atr.copy(), multiplier);
+            copy.first = first;
+            copy.prevClose = prevClose;
+            copy.prevSuperTrend = prevSuperTrend;
+            System.arraycopy(outputs, 0, copy.outputs, 0, outputs.length);
+            return copy;
+        }
+
+        boolean push(double price, double closePrice, double high, double low) {
+            if (!atr.push(high, low, closePrice)) {
+                return false;
+            }
+            double upperLevel = price + atr.getValue() * multiplier;
+            double lowerLevel = price - atr.getValue() * multiplier;
+
+            double superTrend;
+            if (first) {
+                superTrend = upperLevel;
+            } else if (closePrice > prevSuperTrend && prevClose <= prevSuperTrend) {
+                superTrend = lowerLevel;
+            } else if (closePrice < prevSuperTrend && prevClose >= prevSuperTrend) {
+                superTrend = upperLevel;
+            } else if (prevSuperTrend < lowerLevel) {
+                superTrend = lowerLevel;
+            } else if (prevSuperTrend > upperLevel) {
+                superTrend = upperLevel;
+            } else {
+                superTrend = prevSuperTrend;
+            }
+
+            double trendUp = Double.NaN;
+            double trendDown = Double.NaN;
+            if (closePrice > superTrend || closePrice == superTrend && (first || prevClose > prevSuperTrend)) {
+                trendUp = superTrend;
+                if (!first && Double.isNaN(outputs[0])) {
+                    trendDown = trendUp;
+                }
+            } else if (closePrice < superTrend || closePrice == superTrend && (first || prevClose < prevSuperTrend)) {
+                trendDown = superTrend;
+                if (!first && Double.isNaN(outputs[1])) {
+                    trendUp = trendDown;
+                }
+            } else if (!first) {
+                trendUp = outputs[0];
+                trendDown = outputs[1];
+            }
+            outputs[0] = trendUp;
+            outputs[1] = trendDown;
+
+            first = false;
+            prevClose = closePrice;
+            prevSuperTrend = superTrend;
+            return true;
+        }
+    }
 }
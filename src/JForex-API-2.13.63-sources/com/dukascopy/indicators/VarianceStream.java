@@ -0,0 +1,71 @@
+package com.dukascopy.indicators;
+
+/**
+ * One bar at a time population variance and standard deviation with the operation order of the batch STDDEV
+ * indicator, so the results are bit-identical to it.
+ */
+final class VarianceStream {
+
+    private final int period;
+    private final double[] window;
+    private int position;
+    private int count;
+
+    private double periodTotal1;
+    private double periodTotal2;
+    private double variance = Double.NaN;
+
+    VarianceStream(int period) {
+        this.period = period;
+        this.window = new double[period];
+    }
+
+    private VarianceStream(VarianceStream source) {
+        period = source.period;
+        window = source.window.clone();
+        position = source.position;
+        count = source.count;
+        periodTotal1 = source.periodTotal1;
+        periodTotal2 = source.periodTotal2;
+        variance = source.variance;
+    }
+
+    VarianceStream copy() {
+        return new VarianceStream(this);
+    }
+
+    boolean push(double input) {
+        count++;
+        window[position] = input;
+        position = position + 1 == period ? 0 : position + 1;
+
+        periodTotal1 += input;
+        periodTotal2 += input * input;
+        if (count < period) {
+            return false;
+        }
+
+        double meanValue1 = periodTotal1 / period;
+        double meanValue2 = periodTotal2 / period;
+        // oldest of the last period values
+        double trailing = window[position];
+        periodTotal1 -= trailing;
+        periodTotal2 -= trailing * trailing;
+        variance = meanValue2 - meanValue1 * meanValue1;
+        return true;
+    }
+
+    double getVariance() {
+        return variance;
+    }
+
+    /**
+     * @return standard deviation multiplied by nbDev, 0 for variances below 1e-14
+     */
+    double getStdDev(double nbDev) {
+        if (variance < 0.00000000000001) {
+            return 0.0;
+        }
+        return nbDev != 1.0 ? Math.sqrt(variance) * nbDev : Math.sqrt(variance);
+    }
+}
@@ -35,6 +35,7 @@ import com.dukascopy.api.indicators.InputParameterInfo;
 import com.dukascopy.api.indicators.IntegerRangeDescription;
 import com.dukascopy.api.indicators.OptInputParameterInfo;
 import com.dukascopy.api.indicators.OutputParameterInfo;
+import com.dukascopy.api.indicators.ScratchArena;
 
 /**
  * <b>NOTE: </b> The calculate logic of this indicator is implemented in JavaScript.
@@ -46,6 +47,7 @@ import com.dukascopy.api.indicators.OutputParameterInfo;
  */
 public class ZigZagIndicator implements IIndicator, IDrawingIndicator {
     private IIndicatorContext indicatorContext;
+    private ScratchArena scratchArena;
 
     private IndicatorInfo indicatorInfo;
     private InputParameterInfo[] inputParameterInfos;
@@ -65,6 +67,7 @@ public class ZigZagIndicator implements IIndicator, IDrawingIndicator {
 
     public void onStart(IIndicatorContext context) {
         indicatorContext = context;
+        scratchArena = context.createScratchArena();
 
         indicatorInfo = new IndicatorInfo("ZigZag", "ZigZag", "", true, false, false, 1, 3, 2);
         indicatorInfo.setRecalculateAll(true);
@@ -101,24 +104,31 @@ public class ZigZagIndicator implements IIndicator, IDrawingIndicator {
             instrPips = indicatorContext.getFeedDescriptor().getInstrument().getPipValue();
         }
 
-        double[] lowMapBuffer = new double[endIndex + 1];
-        double[] highMapBuffer = new double[endIndex + 1];
-        double[] zigzagBuffer = new double[endIndex + 1];
+        double[] lowMapBuffer = scratchArena.getDoubles(0, endIndex + 1);
+        double[] highMapBuffer = scratchArena.getDoubles(1, endIndex + 1);
+        double[] zigzagBuffer = scratchArena.getDoubles(2, endIndex + 1);
 
         int whatlookfor = 0;
         int shift, back, lasthighpos = 0, lastlowpos = 0;
         double val, res;
         double curlow = 0, curhigh = 0, lasthigh = 0, lastlow = 0;
 
-        Arrays.fill(lowMapBuffer, 0);
-        Arrays.fill(highMapBuffer, 0);
-        Arrays.fill(zigzagBuffer, 0);
+        Arrays.fill(lowMapBuffer, 0, endIndex + 1, 0);
+        Arrays.fill(highMapBuffer, 0, endIndex + 1, 0);
+        Arrays.fill(zigzagBuffer, 0, endIndex + 1, 0);
+
+        // lowest low and highest high of the last extDepth bars
+        SlidingExtremum lows = new SlidingExtremum(inputs[0][3], Math.max(extDepth, 1), false);
+        SlidingExtremum highs = new SlidingExtremum(inputs[0][2], Math.max(extDepth, 1), true);
+        for (shift = startIndex - extDepth + 1; shift < startIndex; shift++) {
+            lows.push(shift);
+            highs.push(shift);
+        }
 
         for (shift = startIndex; shift <= endIndex; shift++) {
-            val = inputs[0][3][shift];
-            for (int j = shift - 1; j > (shift - extDepth); j--) {
-                val = Math.min(val, inputs[0][3][j]);
-            }
+            lows.push(shift);
+            highs.push(shift);
+            val = lows.hasNaN() ? Double.NaN : lows.getValue();
             if (val == lastlow) val = 0.0;
             else {
                 lastlow = val;
@@ -139,10 +149,7 @@ public class ZigZagIndicator implements IIndicator, IDrawingIndicator {
                 lowMapBuffer[shift] = 0.0;
             }
             //--- high
-            val = inputs[0][2][shift];
-            for (int j = shift - 1; j > (shift - extDepth); j--) {
-                val = Math.max(val, inputs[0][2][j]);
-            }
+            val = highs.hasNaN() ? Double.NaN : highs.getValue();
             if (val == lasthigh) {
                 val = 0.0;
             } else {
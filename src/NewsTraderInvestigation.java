@@ -1,7 +1,8 @@
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.nio.channels.FileChannel;
@@ -11,14 +12,22 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -26,8 +35,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -37,6 +53,7 @@ import org.jsoup.select.Elements;
 import com.dukascopy.api.Configurable;
 import com.dukascopy.api.IAccount;
 import com.dukascopy.api.IBar;
+import com.dukascopy.api.ICalendarMessage;
 import com.dukascopy.api.IChart;
 import com.dukascopy.api.IConsole;
 import com.dukascopy.api.IContext;
@@ -51,6 +68,8 @@ import com.dukascopy.api.IUserInterface;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Library;
+import com.dukascopy.api.LoadingDataListener;
+import com.dukascopy.api.LoadingProgressListener;
 import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
 import com.dukascopy.api.drawings.IChartObjectFactory;
@@ -59,7 +78,12 @@ import com.dukascopy.api.drawings.IVerticalLineChartObject;
 public class NewsTraderInvestigation implements IStrategy {
 
     public static final double MEANINGFUL = 30;
-    private CopyOnWriteArrayList<TradeEventAction> tradeEventActions = new CopyOnWriteArrayList<>();
+    // unit codes of news values
+    private static final String[] NEWS_UNITS = { null, "%", "K", "M", "B" };
+    // period suffixes removed from news titles, " (Jan)" etc.
+    private static final String[] PERIOD_SUFFIXES = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec",
+            "Q1", "Q2", "Q3", "Q4", "QoQ", "YoY", "MoM" };
+    private TradeEventRegistry tradeEventRegistry = new TradeEventRegistry();
     private static final String DATE_FORMAT_NOW = "yyyyMMdd_HHmmss";
     private IEngine engine;
     private IConsole console;
@@ -83,6 +107,10 @@ public class NewsTraderInvestigation implements IStrategy {
     public String filename = "/Users/vlad/Downloads/1970-01-01-2020-01-31.txt";// "/Users/vlad/Downloads/2008_2018_tillJune05_Investing.com.html";
     @Configurable("CSV filename:")
     public String destFileName = "/Users/vlad/Downloads/2005-01-01-2020-01-31/";
+    @Configurable("Streaming news parser")
+    public boolean streamingNewsParser = true;
+    @Configurable("Compiled news calendar cache")
+    public boolean compiledNewsCache = true;
     @Configurable("showNewsOnChart")
     public boolean showNewsOnChart = false;
     @Configurable("Trade (true) or Investigate (false)")
@@ -99,6 +127,12 @@ public class NewsTraderInvestigation implements IStrategy {
     public boolean usePendingOrders = false;
     @Configurable("Bid/Offer Orders")
     public boolean useBidOfferOrders = true;
+    @Configurable("Pipelined order submission")
+    public boolean pipelinedOrders = true;
+    @Configurable("Order action timeout, ms")
+    public long orderActionTimeoutMillis = 2000;
+    @Configurable("Max queued order actions per instrument")
+    public int maxQueuedOrderActions = 64;
     @Configurable("Number of stop orders")
     public int numberOfOrders = 23;
     @Configurable("Number of Candles")
@@ -123,6 +157,44 @@ public class NewsTraderInvestigation implements IStrategy {
     public boolean CloseOpposite = true;
     @Configurable("Close on New Event:")
     public boolean closeOnNewEvent = true;
+    @Configurable("Batched investigation")
+    public boolean batchedInvestigation = true;
+    @Configurable("Streaming investigation CSV")
+    public boolean streamingInvestigationCsv = true;
+    @Configurable("Release statistics by title")
+    public boolean releaseStatistics = false;
+    @Configurable("Release statistics period")
+    public Period statisticsPeriod = Period.ONE_MIN;
+    @Configurable("Tick ladder replay")
+    public boolean tickLadderReplay = false;
+    @Configurable("Tick ladder replay, minutes to hold")
+    public int replayHoldMinutes = 15;
+    @Configurable("Ladder optimiser")
+    public boolean ladderOptimiser = false;
+    @Configurable("Ladder optimiser, tick buffer MB")
+    public int optimiserMemoryMb = 512;
+    @Configurable("Optimise Initial Gap, Points")
+    public String optimiseGAP = "60,90,120";
+    @Configurable("Optimise Step between orders, Points")
+    public String optimiseSTEP = "20,30,40";
+    @Configurable("Optimise Take Profit, Points")
+    public String optimiseTP = "100,150,200";
+    @Configurable("Optimise Stop Loss, Points")
+    public String optimiseSL = "20,30";
+    @Configurable("Optimise Number of stop orders")
+    public String optimiseNumberOfOrders = "5,10,23";
+    @Configurable("Optimise Move to breakeven level")
+    public String optimiseLockLevel = "60,90";
+    @Configurable("Optimise Points to lock")
+    public String optimiseLockPoints = "30,60";
+    @Configurable("Optimise Seconds before news to enter")
+    public String optimiseSecondsBeforeNews = "10,20";
+    @Configurable("Live calendar releases")
+    public boolean liveCalendar = true;
+    @Configurable("Record calendar messages to:")
+    public String calendarRecordFile = "";
+    @Configurable("Replay calendar messages from:")
+    public String calendarReplayFile = "";
     @Configurable("debug:")
     public boolean debug = false;
 
@@ -137,21 +209,34 @@ public class NewsTraderInvestigation implements IStrategy {
     private double UseofLeverage;
     private IMessage LastTradeEvent = null;
     private boolean GlobalAccount;
-    private Candle LastAskCandle = null;
-    private HashMap<String, Candle> LastAskCandleMap = new HashMap<>();
-    private Candle LastBidCandle = null;
-    private HashMap<String, Candle> LastBidCandleMap = new HashMap<>();
-    private Tick LastTick = null;
-    private HashMap<String, Tick> LastTickMap = new HashMap<>();
+    private MarketState marketState = new MarketState();
+    private LiveCalendar calendarFeed = null;
+
+    // used by the thread loading the news calendar
+    private final NewsSymbols newsSymbols = new NewsSymbols();
+    // immutable, so it can be shared by all threads
+    private final java.time.format.DateTimeFormatter newsLineFormat = java.time.format.DateTimeFormatter
+            .ofPattern("yyyy/MM/dd HH:mm").withZone(ZoneId.systemDefault());
+    // news sources are read in the default time zone
+    private final ZoneOffsetTable newsSourceZone = new ZoneOffsetTable(TimeZone.getDefault().toZoneId());
+    private final ZoneOffsetTable eetZone = new ZoneOffsetTable(ZoneId.of("EET"));
 
     private int MarginCutLevel;
-    private List<IOrder> AllPositions = null;
+    private OrderBook orderBook = new OrderBook();
+    private LadderSubmitter ladderSubmitter = new LadderSubmitter();
+    private OrderScheduler orderScheduler = new OrderScheduler();
+    private OrderCanceller orderCanceller = new OrderCanceller();
+    private TimingWheel timingWheel = new TimingWheel();
+    private PriceMath priceMath = new PriceMath();
+    private PositionSizer positionSizer = new PositionSizer();
 
     private IChart chart;
     private HashMap<String, IChart> IChartMap = new HashMap<>();
 
     private AllInOne main;
     private long ONE_HOUR = 1000 * 60 * 60;// milliseconds in 1 hour
+    private static final long ONE_DAY = 24 * 60 * 60 * 1000L;
+    private static final long SESSION_CLOSE_MILLIS = (23 * 60 + 57) * 60 * 1000L;
 
     @Override
     public void onStart(IContext context) throws JFException {
@@ -163,21 +248,22 @@ public class NewsTraderInvestigation implements IStrategy {
         this.indicators = context.getIndicators();
         this.userInterface = context.getUserInterface();
 
+        positionSizer.setAccountCurrency(context.getAccount().getCurrency().getCurrencyCode());
+        orderBook.load(engine.getOrders());
+        PendingPositions = orderBook.getPending();
+        ActiveOrders = orderBook.getFilled();
+
         for (String sInstrument : instruments) {
             Instrument instrument = Instrument.fromString(sInstrument);
             subscriptionInstrumentCheck(instrument);
+            positionSizer.addInstrument(instrument);
 
             ITick lastITick = context.getHistory().getLastTick(instrument);
-
-            LastTick = new Tick(lastITick, instrument);
-            LastTickMap.put(sInstrument, LastTick);
+            marketState.onTick(instrument, lastITick);
 
             IBar bidBar = context.getHistory().getBar(instrument, defaultPeriod, OfferSide.BID, 1);
             IBar askBar = context.getHistory().getBar(instrument, defaultPeriod, OfferSide.ASK, 1);
-            LastAskCandle = new Candle(askBar, defaultPeriod, instrument, OfferSide.ASK);
-            LastAskCandleMap.put(sInstrument, LastAskCandle);
-            LastBidCandle = new Candle(bidBar, defaultPeriod, instrument, OfferSide.BID);
-            LastBidCandleMap.put(sInstrument, LastBidCandle);
+            marketState.onBar(instrument, askBar, bidBar);
 
             chart = context.getChart(instrument);
 
@@ -198,6 +284,27 @@ public class NewsTraderInvestigation implements IStrategy {
         } catch (Throwable e) {
             throw new JFException(e.getMessage(), e);
         }
+
+        timingWheel.start(context.getTime());
+        scheduleSessionClose(context.getTime());
+
+        if (liveCalendar) {
+            calendarFeed = main.createLiveCalendar();
+
+            if (calendarReplayFile != null && calendarReplayFile.length() > 0)
+                new CalendarReplay(main.createReplayCalendar()).replay(calendarReplayFile);
+        }
+    }
+
+    // open orders are closed every day at 23:57 GMT
+    private void scheduleSessionClose(long time) {
+        long sessionClose = time - time % ONE_DAY + SESSION_CLOSE_MILLIS;
+        if (sessionClose <= time)
+            sessionClose += ONE_DAY;
+        timingWheel.schedule(sessionClose, closeTime -> {
+            closeOpenOrders();
+            scheduleSessionClose(closeTime);
+        });
     }
 
     @Override
@@ -205,6 +312,9 @@ public class NewsTraderInvestigation implements IStrategy {
         if (!TradeOrInvestigate) {
             main.writeInvestigationsToCSV();
         }
+        if (calendarFeed != null)
+            calendarFeed.close();
+        orderScheduler.report();
         /*
          * for(IChart chart: IChartMap.values()){ context.closeChart(chart); }
          */
@@ -213,6 +323,7 @@ public class NewsTraderInvestigation implements IStrategy {
     @Override
     public void onAccount(IAccount account) throws JFException {
         AccountCurrency = account.getCurrency().toString();
+        positionSizer.setAccountCurrency(account.getCurrency().getCurrencyCode());
         Leverage = account.getLeverage();
         AccountId = account.getAccountId();
         Equity = account.getEquity();
@@ -222,84 +333,37 @@ public class NewsTraderInvestigation implements IStrategy {
         GlobalAccount = account.isGlobal();
     }
 
-    private void updateVariables(Instrument instrument) {
-        try {
-            AllPositions = engine.getOrders();
-            List<IOrder> listPending = new ArrayList<>();
-            List<IOrder> listActive = new ArrayList<>();
-            for (IOrder order : AllPositions) {
-                if (order.getState().equals(IOrder.State.OPENED)) {
-                    listPending.add(order);
-                } else if (order.getState().equals(IOrder.State.FILLED)) {
-                    listActive.add(order);
-                }
-
-            }
-
-            PendingPositions = listPending;
-            ActiveOrders = listActive;
-
-        } catch (JFException e) {
-            e.printStackTrace();
-        }
-    }
-
     public void closeOppositePendingOrders(IMessage message, IOrder order) throws JFException {
-        if (message.getType() == IMessage.Type.ORDER_FILL_OK) {
-
-            boolean closeLong = !order.isLong();
-
-            for (IOrder pendingOrder : PendingPositions) {
-
-                if (order.isLong() && !pendingOrder.isLong()) {
-                    pendingOrder.close();
-                } else if (!order.isLong() && pendingOrder.isLong()) {
-                    pendingOrder.close();
-                }
-            }
-        }
+        if (message.getType() == IMessage.Type.ORDER_FILL_OK)
+            orderCanceller.cancelOpposite(order);
     }
 
     private void closeOpenOrders() throws JFException {
-
-        for (int i = 0; i < ActiveOrders.size(); i++) {
-            IOrder ord = ActiveOrders.get(i);
-            ord.close();
-        }
-        ActiveOrders.clear();
+        orderCanceller.closeFilled(ActiveOrders);
     }
 
-    private IOrder mergeOrders(IOrder... orders) throws JFException {
-        IOrder mergedOrder = engine.mergeOrders("mergedOrder", orders);
-        IMessage message = mergedOrder.waitForUpdate(2, java.util.concurrent.TimeUnit.SECONDS);
-        // we have received either MESSAGE_MERGE_OK or MESSAGE_MERGE_REJECTED
-        console.getOut().println("Message after merge: " + message.getType() + " - " + message);
-        // order is FILLED/CLOSED on successful merge with amount > 0
-
-        return mergedOrder;
+    private Future<IOrder> mergeOrders(IOrder... orders) {
+        return orderScheduler.merge(orders);
     }
 
-    private void removeTakeProfitStopLoss(IOrder... orders) throws JFException {
-
-        // remove sl and tp attached orders if any
-        for (IOrder o : orders) {
-            if (Double.compare(o.getStopLossPrice(), 0) != 0) {
-                o.setStopLossPrice(0);
-                console.getOut().println(o.getLabel() + " remove stop loss.");
-                o.waitForUpdate(1000);
-            }
-            if (Double.compare(o.getTakeProfitPrice(), 0) != 0) {
-                o.setTakeProfitPrice(0);
-                console.getOut().print(o.getLabel() + " remove take profit.");
-                o.waitForUpdate(1000);
-            }
-        }
+    // remove sl and tp attached orders if any
+    private Future<IOrder> removeTakeProfitStopLoss(IOrder... orders) {
+        return orderScheduler.removeTakeProfitStopLoss(orders);
     }
 
     @Override
     public void onMessage(IMessage message) throws JFException {
+        if (message instanceof ICalendarMessage) {
+            if (calendarFeed != null)
+                calendarFeed.onMessage((ICalendarMessage) message);
+            return;
+        }
+
         if (message.getOrder() != null) {
-            updateVariables(message.getOrder().getInstrument());
+            orderBook.onMessage(message);
+            orderCanceller.onMessage(message);
+            ladderSubmitter.onMessage(message);
+            orderScheduler.onMessage(message);
 
             IOrder order = message.getOrder();
             // if(debug)
@@ -315,27 +379,7 @@ public class NewsTraderInvestigation implements IStrategy {
                 closeOppositePendingOrders(message, order);
 
             LastTradeEvent = message;
-            for (TradeEventAction event : tradeEventActions) {
-                if (order != null && event != null && message.getType().equals(event.getMessageType())
-                        && order.getLabel().equals(event.getPositionLabel())) {
-                    Method method;
-                    try {
-                        method = this.getClass().getDeclaredMethod(event.getNextBlockId(), Integer.class);
-                        method.invoke(this, new Integer[] { event.getFlowId() });
-                    } catch (SecurityException e) {
-                        e.printStackTrace();
-                    } catch (NoSuchMethodException e) {
-                        e.printStackTrace();
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
-                        e.printStackTrace();
-                    }
-                    tradeEventActions.remove(event);
-                }
-            }
+            tradeEventRegistry.dispatch(message);
         }
     }
 
@@ -345,11 +389,11 @@ public class NewsTraderInvestigation implements IStrategy {
         if (order.getTakeProfitPrice() == 0) {
 
             if (order.isLong()) {
-                sl = round(order.getOpenPrice() - order.getInstrument().getPipValue() * SL / 10, order.getInstrument());
-                tp = round(order.getOpenPrice() + order.getInstrument().getPipValue() * TP / 10, order.getInstrument());
+                sl = round(order.getOpenPrice() - priceMath.pointsToPrice(SL, order.getInstrument()), order.getInstrument());
+                tp = round(order.getOpenPrice() + priceMath.pointsToPrice(TP, order.getInstrument()), order.getInstrument());
             } else {
-                sl = round(order.getOpenPrice() + order.getInstrument().getPipValue() * SL / 10, order.getInstrument());
-                tp = round(order.getOpenPrice() - order.getInstrument().getPipValue() * TP / 10, order.getInstrument());
+                sl = round(order.getOpenPrice() + priceMath.pointsToPrice(SL, order.getInstrument()), order.getInstrument());
+                tp = round(order.getOpenPrice() - priceMath.pointsToPrice(TP, order.getInstrument()), order.getInstrument());
             }
 
             order.setTakeProfitPrice(tp);
@@ -360,9 +404,9 @@ public class NewsTraderInvestigation implements IStrategy {
 
         if (order.getStopLossPrice() == 0) {
             if (order.isLong()) {
-                sl = round(order.getOpenPrice() - order.getInstrument().getPipValue() * SL / 10, order.getInstrument());
+                sl = round(order.getOpenPrice() - priceMath.pointsToPrice(SL, order.getInstrument()), order.getInstrument());
             } else {
-                sl = round(order.getOpenPrice() + order.getInstrument().getPipValue() * SL / 10, order.getInstrument());
+                sl = round(order.getOpenPrice() + priceMath.pointsToPrice(SL, order.getInstrument()), order.getInstrument());
             }
 
             order.setStopLossPrice(sl);// order.setStopLossPrice(price, side,
@@ -377,11 +421,9 @@ public class NewsTraderInvestigation implements IStrategy {
 
     @Override
     public void onTick(Instrument instrument, ITick tick) throws JFException {
-        LastTick = new Tick(tick, instrument);
-
-        LastTickMap.put(instrument.getName(), LastTick);
-
-        updateVariables(instrument);
+        marketState.onTick(instrument, tick);
+        orderScheduler.expire(tick.getTime());
+        timingWheel.advance(context.getTime());
 
         // here it is - On Tick start point
         if (!TradeOrInvestigate) {
@@ -398,21 +440,9 @@ public class NewsTraderInvestigation implements IStrategy {
         if (!period.equals(defaultPeriod)) {
             return;
         }
-        LastAskCandle = new Candle(askBar, period, instrument, OfferSide.ASK);
-        LastBidCandle = new Candle(bidBar, period, instrument, OfferSide.BID);
-
-        LastAskCandleMap.put(instrument.getName(), LastAskCandle);
-        LastBidCandleMap.put(instrument.getName(), LastBidCandle);
-
-        updateVariables(instrument);
-
-        long lastTickTime = history.getLastTick(instrument).getTime();
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeZone(TimeZone.getTimeZone("GMT"));
-        calendar.setTimeInMillis(lastTickTime);
-
-        if (calendar.get(Calendar.HOUR_OF_DAY) == 23 && calendar.get(Calendar.MINUTE) == 57)
-            closeOpenOrders();
+        marketState.onBar(instrument, askBar, bidBar);
+        // quiet pairs get their timers fired by bars of the other ones
+        timingWheel.advance(context.getTime());
 
         if (marketOrders)
             checkAndLockProfit(askBar, bidBar);
@@ -427,7 +457,6 @@ public class NewsTraderInvestigation implements IStrategy {
         for (IOrder ord : ActiveOrders) {
 
             Instrument instrument = ord.getInstrument();
-            Tick lastTick = this.LastTickMap.get(instrument.getName());
 
             if (ord.getProfitLossInPips() > 0) {
 
@@ -460,9 +489,7 @@ public class NewsTraderInvestigation implements IStrategy {
     }
 
     public double round(double price, Instrument instrument) {
-        BigDecimal big = new BigDecimal("" + price);
-        big = big.setScale(instrument.getPipScale() + 1, BigDecimal.ROUND_HALF_UP);
-        return big.doubleValue();
+        return priceMath.round(price, instrument);
     }
 
     public ITick getLastTick(Instrument instrument) {
@@ -510,8 +537,8 @@ public class NewsTraderInvestigation implements IStrategy {
 
         String sr = ", ";
         String line = sdf.format(mainEvent.dateTime) + sr;
-        line += mainEvent.currency + sr;
-        line += mainEvent.importance.substring(0, 1) + sr;
+        line += mainEvent.getCurrency() + sr;
+        line += mainEvent.getImportance().substring(0, 1) + sr;
 
         line = eventLine(df, line, mainEvent);
 
@@ -531,1157 +558,5294 @@ public class NewsTraderInvestigation implements IStrategy {
     }
 
     private static String eventLine(java.text.DecimalFormat df, String line, NewsEvent event) {
-        line += "(" + event.getCurrency() + " " + event.title + " "
+        line += "(" + event.getCurrency() + " " + event.getTitle() + " "
                 + (event.changePercentage != null ? df.format(event.changePercentage) + "%" : "-") + ")";
         return line;
     }
 
-    public IOrder OpenOrder(IEngine.OrderCommand command, Instrument instrument, double lot, double dPrice, double dStopLoss,
+    // the order is submitted by the scheduler, the future completes on the broker reply
+    public Future<IOrder> OpenOrder(IEngine.OrderCommand command, Instrument instrument, double lot, double dPrice, double dStopLoss,
             double dTakeProfit, long goodTillTime, String comment) {
-        // ITick tick = getLastTick(instrument);
-
-        double stopLoss = round(dStopLoss, instrument);
-        double takeProfit = round(dTakeProfit, instrument);
-        double price = round(dPrice, instrument);
-        String label = getLabel();
-        int retries = 0;
-        IOrder order = null;
-
-        try {
-            // console.getOut().println("Trying to open order...");
-            order = context.getEngine().submitOrder(label, instrument, command, lot, price, defaultSlippage, stopLoss, takeProfit,
-                    goodTillTime, comment);
-            // wait max 100 milliseconds for OPENED
-            IMessage message = order.waitForUpdate(200, TimeUnit.MILLISECONDS);
-            // console.getOut().println("message.getType=" + message.getType());
-
-            // resubmit order on rejection
-            while (message.getType() == IMessage.Type.ORDER_SUBMIT_REJECTED && retries < RETRIES) {
-                retries++;
-                // console.getOut().println("Trying to open order... retry " +
-                // retries);
-                order = context.getEngine().submitOrder(label, instrument, command, lot, price, defaultSlippage, stopLoss, takeProfit,
-                        goodTillTime, comment);
-                // wait max 100 milliseconds for OPENED
-                message = order.waitForUpdate(200, TimeUnit.MILLISECONDS);
-                // console.getOut().println("Submit Order message.getType()=" +
-                // message.getType());
-            }
+        return orderScheduler.submit(command, instrument, lot, dPrice, dStopLoss, dTakeProfit, goodTillTime, comment);
+    }
 
-            if (debug) {
-                if (message.getType() == IMessage.Type.ORDER_SUBMIT_OK) {
-                    console.getOut().println("Submit Order message.getType()=" + command.toString());
-                } else {
-                    console.getOut().println("Order Rejected " + command.toString() + " price:" + price + " ");
-                }
+    /**
+     * Pending (OPENED) and filled orders of the strategy by label and instrument.
+     * The book is loaded once on start and then updated from order messages only,
+     * lists returned by the getters are live read-only views.
+     */
+    class OrderBook {
+
+        private final HashMap<String, IOrder> byLabel = new HashMap<>();
+        private final List<IOrder> pending = new ArrayList<>();
+        private final List<IOrder> filled = new ArrayList<>();
+        private final List<IOrder> pendingView = Collections.unmodifiableList(pending);
+        private final List<IOrder> filledView = Collections.unmodifiableList(filled);
+        private final HashMap<Instrument, List<IOrder>> pendingByInstrument = new HashMap<>();
+        private final HashMap<Instrument, List<IOrder>> filledByInstrument = new HashMap<>();
+        private final HashMap<Instrument, List<IOrder>> pendingViews = new HashMap<>();
+        private final HashMap<Instrument, List<IOrder>> filledViews = new HashMap<>();
+
+        public void load(List<IOrder> orders) {
+            for (IOrder order : orders) {
+                update(order);
             }
-
-        } catch (JFException e) {
-            console.getErr().println(e.getMessage());
         }
 
-        return order;
-    }
-
-    class Candle {
+        public void onMessage(IMessage message) {
+            IOrder order = message.getOrder();
+            if (order != null)
+                update(order);
+        }
 
-        IBar bar;
-        Period period;
-        Instrument instrument;
-        OfferSide offerSide;
+        private void update(IOrder order) {
+            String label = order.getLabel();
+            IOrder known = byLabel.get(label);
+            IOrder.State state = order.getState();
+
+            if (known != null) {
+                pending.remove(known);
+                filled.remove(known);
+                orders(pendingByInstrument, pendingViews, known.getInstrument()).remove(known);
+                orders(filledByInstrument, filledViews, known.getInstrument()).remove(known);
+                byLabel.remove(label);
+            }
 
-        public Candle(IBar bar, Period period, Instrument instrument, OfferSide offerSide) {
-            this.bar = bar;
-            this.period = period;
-            this.instrument = instrument;
-            this.offerSide = offerSide;
+            if (state == IOrder.State.OPENED) {
+                pending.add(order);
+                orders(pendingByInstrument, pendingViews, order.getInstrument()).add(order);
+                byLabel.put(label, order);
+            } else if (state == IOrder.State.FILLED) {
+                filled.add(order);
+                orders(filledByInstrument, filledViews, order.getInstrument()).add(order);
+                byLabel.put(label, order);
+            } else if (state == IOrder.State.CREATED) {
+                byLabel.put(label, order);
+            }
+            // CLOSED and CANCELED orders are forgotten
         }
 
-        public Period getPeriod() {
-            return period;
+        private List<IOrder> orders(HashMap<Instrument, List<IOrder>> map, HashMap<Instrument, List<IOrder>> views,
+                Instrument instrument) {
+            List<IOrder> list = map.get(instrument);
+            if (list == null) {
+                list = new ArrayList<>();
+                map.put(instrument, list);
+                views.put(instrument, Collections.unmodifiableList(list));
+            }
+            return list;
         }
 
-        public void setPeriod(Period period) {
-            this.period = period;
+        public IOrder getOrder(String label) {
+            return byLabel.get(label);
         }
 
-        public Instrument getInstrument() {
-            return instrument;
+        public List<IOrder> getPending() {
+            return pendingView;
         }
 
-        public void setInstrument(Instrument instrument) {
-            this.instrument = instrument;
+        public List<IOrder> getFilled() {
+            return filledView;
         }
 
-        public OfferSide getOfferSide() {
-            return offerSide;
+        public List<IOrder> getPending(Instrument instrument) {
+            orders(pendingByInstrument, pendingViews, instrument);
+            return pendingViews.get(instrument);
         }
 
-        public void setOfferSide(OfferSide offerSide) {
-            this.offerSide = offerSide;
+        public List<IOrder> getFilled(Instrument instrument) {
+            orders(filledByInstrument, filledViews, instrument);
+            return filledViews.get(instrument);
         }
+    }
 
-        public IBar getBar() {
-            return bar;
+    /**
+     * Batched cancellation. A fill cancels the opposite side pending orders of
+     * its own instrument only, and orders whose close was already requested are
+     * skipped until the broker answers, so the fills following the first one of a
+     * ladder send nothing. Filled orders are closed with a single
+     * IEngine.closeOrders request; the engine accepts only FILLED orders there
+     * and has no mass close on global accounts, so pending orders and global
+     * accounts still get one close per order.
+     */
+    class OrderCanceller {
+
+        // labels of orders with a close request in flight
+        private final HashSet<String> closing = new HashSet<>();
+        private final List<IOrder> batch = new ArrayList<>();
+
+        private long closeRequests;
+        private long skipped;
+
+        public void onMessage(IMessage message) {
+            IMessage.Type type = message.getType();
+            if (type == IMessage.Type.ORDER_CLOSE_OK || type == IMessage.Type.ORDER_CLOSE_REJECTED)
+                closing.remove(message.getOrder().getLabel());
         }
 
-        public void setBar(IBar bar) {
-            this.bar = bar;
+        public void cancelOpposite(IOrder filledOrder) throws JFException {
+            boolean closeLong = !filledOrder.isLong();
+            batch.clear();
+            for (IOrder pendingOrder : orderBook.getPending(filledOrder.getInstrument())) {
+                if (pendingOrder.isLong() == closeLong)
+                    collect(pendingOrder, IOrder.State.OPENED);
+            }
+            int sent = 0;
+            try {
+                for (; sent < batch.size(); sent++) {
+                    batch.get(sent).close();
+                    closeRequests++;
+                }
+                if (debug && !batch.isEmpty())
+                    console.getOut().println(filledOrder.getInstrument() + " " + filledOrder.getLabel() + " filled, " + batch.size()
+                            + " opposite orders cancelled, " + skipped + " skipped so far");
+            } finally {
+                release(sent);
+            }
         }
 
-        public long getTime() {
-            return bar.getTime();
-        }
+        public void closeFilled(List<IOrder> orders) throws JFException {
+            batch.clear();
+            for (int i = 0; i < orders.size(); i++) {
+                collect(orders.get(i), IOrder.State.FILLED);
+            }
+            if (batch.isEmpty())
+                return;
 
-        public double getOpen() {
-            return bar.getOpen();
+            int sent = 0;
+            try {
+                if (GlobalAccount || batch.size() == 1) {
+                    for (; sent < batch.size(); sent++) {
+                        batch.get(sent).close();
+                        closeRequests++;
+                    }
+                } else {
+                    engine.closeOrders(new ArrayList<>(batch));
+                    closeRequests++;
+                    sent = batch.size();
+                }
+            } finally {
+                release(sent);
+            }
         }
 
-        public double getClose() {
-            return bar.getClose();
+        private void collect(IOrder order, IOrder.State state) {
+            if (order.getState() != state || !closing.add(order.getLabel())) {
+                skipped++;
+                return;
+            }
+            batch.add(order);
         }
 
-        public double getLow() {
-            return bar.getLow();
+        // forgets the labels of the orders whose close request did not go out, so
+        // a failed call does not keep them skipped forever
+        private void release(int sent) {
+            for (int i = sent; i < batch.size(); i++) {
+                closing.remove(batch.get(i).getLabel());
+            }
+            batch.clear();
         }
 
-        public double getHigh() {
-            return bar.getHigh();
+        public long getCloseRequests() {
+            return closeRequests;
         }
 
-        public double getVolume() {
-            return bar.getVolume();
+        public long getSkipped() {
+            return skipped;
         }
     }
 
-    class Tick {
-
-        private ITick tick;
-        private Instrument instrument;
+    /**
+     * Pipelined submission of order ladders. Every level is submitted without
+     * waiting for the previous one, acknowledgements and rejections arrive through
+     * onMessage and only rejected levels are resubmitted (up to RETRIES times).
+     * Submit-to-ack latency is measured per level and the ladder completion time
+     * is reported once every level is accepted or given up.
+     */
+    class LadderSubmitter {
+
+        private final HashMap<String, Level> levels = new HashMap<>();
+
+        class Ladder {
+            final Instrument instrument;
+            final long startNanos = System.nanoTime();
+            int submitted;
+            int accepted;
+            int failed;
+            int resubmitted;
+            long ackNanosTotal;
+            long ackNanosMax;
+
+            Ladder(Instrument instrument) {
+                this.instrument = instrument;
+            }
 
-        public Tick(ITick tick, Instrument instrument) {
-            this.instrument = instrument;
-            this.tick = tick;
+            boolean isComplete() {
+                return accepted + failed == submitted;
+            }
         }
 
-        public Instrument getInstrument() {
-            return instrument;
+        class Level {
+            final Ladder ladder;
+            final String label;
+            final IEngine.OrderCommand command;
+            final Instrument instrument;
+            final double amount;
+            final double price;
+            final double stopLoss;
+            final double takeProfit;
+            final long goodTillTime;
+            final String comment;
+            int retries;
+            long submitNanos;
+
+            Level(Ladder ladder, String label, IEngine.OrderCommand command, Instrument instrument, double amount, double price,
+                    double stopLoss, double takeProfit, long goodTillTime, String comment) {
+                this.ladder = ladder;
+                this.label = label;
+                this.command = command;
+                this.instrument = instrument;
+                this.amount = amount;
+                this.price = price;
+                this.stopLoss = stopLoss;
+                this.takeProfit = takeProfit;
+                this.goodTillTime = goodTillTime;
+                this.comment = comment;
+            }
         }
 
-        public double getAsk() {
-            return tick.getAsk();
+        public Ladder newLadder(Instrument instrument) {
+            return new Ladder(instrument);
         }
 
-        public double getBid() {
-            return tick.getBid();
+        public void submit(Ladder ladder, IEngine.OrderCommand command, Instrument instrument, double lot, double price, double stopLoss,
+                double takeProfit, long goodTillTime, String comment) {
+            Level level = new Level(ladder, getLabel(), command, instrument, lot, round(price, instrument), round(stopLoss, instrument),
+                    round(takeProfit, instrument), goodTillTime, comment);
+            ladder.submitted++;
+            levels.put(level.label, level);
+            send(level);
         }
 
-        public double getAskVolume() {
-            return tick.getAskVolume();
+        private void send(Level level) {
+            level.submitNanos = System.nanoTime();
+            try {
+                engine.submitOrder(level.label, level.instrument, level.command, level.amount, level.price, defaultSlippage, level.stopLoss,
+                        level.takeProfit, level.goodTillTime, level.comment);
+            } catch (JFException e) {
+                console.getErr().println(e.getMessage());
+                finish(level, false);
+            }
         }
 
-        public double getBidVolume() {
-            return tick.getBidVolume();
-        }
+        public void onMessage(IMessage message) {
+            IOrder order = message.getOrder();
+            Level level = order == null ? null : levels.get(order.getLabel());
 
-        public long getTime() {
-            return tick.getTime();
-        }
+            if (level == null)
+                return;
 
-        public ITick getTick() {
-            return tick;
+            if (message.getType() == IMessage.Type.ORDER_SUBMIT_OK || message.getType() == IMessage.Type.ORDER_FILL_OK) {
+                long ackNanos = System.nanoTime() - level.submitNanos;
+                level.ladder.ackNanosTotal += ackNanos;
+                level.ladder.ackNanosMax = Math.max(level.ladder.ackNanosMax, ackNanos);
+                if (debug)
+                    console.getOut().println("Submit Order " + level.command + " " + level.comment + " acknowledged in " + ackNanos / 1000
+                            + " us, retries: " + level.retries);
+                finish(level, true);
+
+            } else if (message.getType() == IMessage.Type.ORDER_SUBMIT_REJECTED) {
+                if (level.retries < RETRIES) {
+                    // resubmit rejected level only
+                    level.retries++;
+                    level.ladder.resubmitted++;
+                    send(level);
+                } else {
+                    if (debug)
+                        console.getOut().println("Order Rejected " + level.command + " price:" + level.price + " ");
+                    finish(level, false);
+                }
+            }
         }
-    }
-
-    protected String getLabel() {
-        String label;
-        label = "IVF" + getCurrentTime(LastTick.getTime()) + generateRandom(10000) + generateRandom(10000);
-        return label;
-    }
 
-    private String getCurrentTime(long time) {
-        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT_NOW);
-        return sdf.format(time);
-    }
+        private void finish(Level level, boolean accepted) {
+            if (levels.remove(level.label) == null)
+                return;
 
-    private static String generateRandom(int n) {
-        int randomNumber = (int) (Math.random() * n);
-        String answer = "" + randomNumber;
-        if (answer.length() > 3) {
-            answer = answer.substring(0, 4);
-        }
-        return answer;
-    }
+            Ladder ladder = level.ladder;
+            if (accepted)
+                ladder.accepted++;
+            else
+                ladder.failed++;
 
-    class TradeEventAction {
-        private IMessage.Type messageType;
-        private String nextBlockId = "";
-        private String positionLabel = "";
-        private int flowId = 0;
+            if (ladder.isComplete()) {
+                long completionMillis = (System.nanoTime() - ladder.startNanos) / 1000000;
+                long ackAverageMicros = ladder.accepted > 0 ? ladder.ackNanosTotal / ladder.accepted / 1000 : 0;
 
-        public IMessage.Type getMessageType() {
-            return messageType;
+                console.getOut().println("Ladder " + ladder.instrument + ": " + ladder.accepted + "/" + ladder.submitted + " levels accepted, "
+                        + ladder.failed + " failed, " + ladder.resubmitted + " resubmitted, completed in " + completionMillis
+                        + " ms, submit-to-ack avg " + ackAverageMicros + " us max " + ladder.ackNanosMax / 1000 + " us");
+            }
         }
 
-        public void setMessageType(IMessage.Type messageType) {
-            this.messageType = messageType;
+        public int getLevelsInFlight() {
+            return levels.size();
         }
+    }
 
-        public String getNextBlockId() {
-            return nextBlockId;
-        }
+    /**
+     * Order actions which used to wait for the broker inside strategy callbacks
+     * (submit with resubmission, merge, removal of SL/TP) are enqueued here as
+     * intents and the caller gets a completion future back immediately. Actions
+     * of one instrument run strictly one after another, actions of different
+     * instruments overlap. The head action of an instrument is started through
+     * IContext.executeTask, its broker reply arrives through onMessage and
+     * completes it, so no strategy callback ever blocks on waitForUpdate.
+     * Actions without a reply are failed after orderActionTimeoutMillis, and
+     * intents beyond maxQueuedOrderActions per instrument are rejected.
+     */
+    class OrderScheduler {
+
+        // per instrument queues indexed by Instrument.ordinal()
+        private final ArrayList<ArrayDeque<Action>> queues = new ArrayList<>();
+        // action waiting for a broker reply by order label
+        private final HashMap<String, Action> awaiting = new HashMap<>();
+
+        private int queued;
+        private int maxQueued;
+        private long completed;
+        private long failed;
+        private long timedOut;
+        private long rejected;
+        private long latencyNanosTotal;
+        private long latencyNanosMax;
+
+        abstract class Action {
+            final Instrument instrument;
+            final CompletableFuture<IOrder> future = new CompletableFuture<>();
+            final long enqueueNanos = System.nanoTime();
+            // strategy time, so timeouts follow the tester timeline
+            long deadlineTime;
+            String label;
+
+            Action(Instrument instrument) {
+                this.instrument = instrument;
+            }
 
-        public void setNextBlockId(String nextBlockId) {
-            this.nextBlockId = nextBlockId;
-        }
+            // sends the next broker request, returns false when nothing is left to wait for
+            abstract boolean step() throws JFException;
 
-        public String getPositionLabel() {
-            return positionLabel;
-        }
+            // broker reply for the awaited label, returns false when the action is done
+            abstract boolean onReply(IMessage message) throws JFException;
 
-        public void setPositionLabel(String positionLabel) {
-            this.positionLabel = positionLabel;
-        }
+            abstract IOrder result();
 
-        public int getFlowId() {
-            return flowId;
+            boolean isSuccess() {
+                return true;
+            }
         }
 
-        public void setFlowId(int flowId) {
-            this.flowId = flowId;
-        }
-    }
+        class SubmitAction extends Action {
+            final IEngine.OrderCommand command;
+            final double amount;
+            final double price;
+            final double stopLoss;
+            final double takeProfit;
+            final long goodTillTime;
+            final String comment;
+            IOrder order;
+            IMessage.Type reply;
+            int retries;
+
+            SubmitAction(IEngine.OrderCommand command, Instrument instrument, double amount, double price, double stopLoss,
+                    double takeProfit, long goodTillTime, String comment) {
+                super(instrument);
+                this.command = command;
+                this.amount = amount;
+                this.price = price;
+                this.stopLoss = stopLoss;
+                this.takeProfit = takeProfit;
+                this.goodTillTime = goodTillTime;
+                this.comment = comment;
+                this.label = getLabel();
+            }
 
-    class AllInOne {
-        private String[] symbols = { "USD", "EUR", "GBP", "CAD", "CHF", "NZD", "JPY", "AUD" };
-        private String[] pairs = { "USD/CAD", "EUR/USD", "GBP/USD", "USD/CAD", "USD/CHF", "NZD/USD", "USD/JPY", "AUD/USD" };
-        private HashMap<String, String> pairsMap = new HashMap<>();
+            @Override
+            boolean step() throws JFException {
+                order = engine.submitOrder(label, instrument, command, amount, price, defaultSlippage, stopLoss, takeProfit, goodTillTime,
+                        comment);
+                return true;
+            }
 
-        private List<NewsEvent> newsEvents;
-        private Map<String, List<NewsEvent>> byTitleMap = new LinkedHashMap<>();
-        private Map<String, List<NewsEvent>> byPairMap = new LinkedHashMap<>();
-        private Map<Long, List<NewsEvent>> byTimeMap = new LinkedHashMap<>();
+            @Override
+            boolean onReply(IMessage message) throws JFException {
+                reply = message.getType();
+                if (reply == IMessage.Type.ORDER_SUBMIT_REJECTED && retries < RETRIES) {
+                    // resubmit order on rejection
+                    retries++;
+                    return step();
+                }
+                if (debug) {
+                    if (reply == IMessage.Type.ORDER_SUBMIT_REJECTED)
+                        console.getOut().println("Order Rejected " + command + " price:" + price + " ");
+                    else
+                        console.getOut().println("Submit Order message.getType()=" + command);
+                }
+                return reply != IMessage.Type.ORDER_SUBMIT_OK && reply != IMessage.Type.ORDER_FILL_OK
+                        && reply != IMessage.Type.ORDER_SUBMIT_REJECTED;
+            }
 
-        private List<NewsEvent> newsSortedByTime = null;
-        private final long ONE_MINUTE_IN_MILLIS = 60000;
-        private List<NewsEvent> workingEvents = new LinkedList<>();
+            @Override
+            IOrder result() {
+                return order;
+            }
 
-        private void initPairsMap() {
-            for (int i = 0; i < symbols.length; i++) {
-                pairsMap.put(symbols[i], pairs[i]);
+            @Override
+            boolean isSuccess() {
+                return reply != IMessage.Type.ORDER_SUBMIT_REJECTED;
             }
         }
 
-        private boolean isSummerDST(Date newsTime) {
-            boolean isSummer = false;
+        class MergeAction extends Action {
+            final IOrder[] orders;
+            IOrder mergedOrder;
+            IMessage.Type reply;
 
-            int month = newsTime.getMonth() + 1;
-            int day = newsTime.getDate();
-            int dayOfWeek = newsTime.getDay();
-
-            if (dayOfWeek == 0)
-                dayOfWeek = 7;
-
-            if (month > 3 && month < 10)
-                isSummer = true;
-            else if (month > 10 || month < 3)
-                isSummer = false;
-            else if (month == 3 && 31 - day + dayOfWeek >= 7) {
-                if (31 - day + dayOfWeek >= 7)
-                    isSummer = false;
-                else
-                    isSummer = true;
-            } else if (month == 10) {
-                if (31 - day + dayOfWeek < 7)
-                    isSummer = false;
-                else
-                    isSummer = true;
+            MergeAction(Instrument instrument, IOrder[] orders) {
+                super(instrument);
+                this.orders = orders;
+                this.label = getLabel();
             }
 
-            return isSummer;
-        }
+            @Override
+            boolean step() throws JFException {
+                mergedOrder = engine.mergeOrders(label, orders);
+                return true;
+            }
 
-        private void correctDaylightSaving(NewsEvent event) {
+            @Override
+            boolean onReply(IMessage message) {
+                if (message.getType() != IMessage.Type.ORDERS_MERGE_OK && message.getType() != IMessage.Type.ORDERS_MERGE_REJECTED)
+                    return true;
+                reply = message.getType();
+                // order is FILLED/CLOSED on successful merge with amount > 0
+                console.getOut().println("Message after merge: " + reply + " - " + message);
+                return false;
+            }
 
-            long newsTime = event.getDateTime().getTime();
+            @Override
+            IOrder result() {
+                return mergedOrder;
+            }
 
-            if (isSummerDST(event.getDateTime())) {
-                // adding daylight saving +1 summer hour
-                newsTime += 3 * ONE_HOUR;
-                event.setDateTime(new Date(newsTime));
-            } else {
-                newsTime += 2 * ONE_HOUR; // UTC+2 EET
-                event.setDateTime(new Date(newsTime));
+            @Override
+            boolean isSuccess() {
+                return reply == IMessage.Type.ORDERS_MERGE_OK;
             }
         }
 
-        public void readnPlotNews() throws java.text.ParseException, JFException {
-
-            initPairsMap();
+        // stop loss and take profit are removed one change at a time
+        class RemoveTakeProfitStopLossAction extends Action {
+            final IOrder[] orders;
+            int next;
 
-            if (debug)
-                console.getOut().println("Initialization of Pairs Map - OK");
+            RemoveTakeProfitStopLossAction(Instrument instrument, IOrder[] orders) {
+                super(instrument);
+                this.orders = orders;
+            }
 
-            ParseInvestingHTML newsParser = new ParseInvestingHTML();
+            @Override
+            boolean step() throws JFException {
+                while (next < orders.length * 2) {
+                    IOrder o = orders[next / 2];
+                    boolean stopLoss = next++ % 2 == 0;
+                    if (stopLoss && Double.compare(o.getStopLossPrice(), 0) != 0) {
+                        o.setStopLossPrice(0);
+                        console.getOut().println(o.getLabel() + " remove stop loss.");
+                    } else if (!stopLoss && Double.compare(o.getTakeProfitPrice(), 0) != 0) {
+                        o.setTakeProfitPrice(0);
+                        console.getOut().println(o.getLabel() + " remove take profit.");
+                    } else {
+                        continue;
+                    }
+                    label = o.getLabel();
+                    return true;
+                }
+                return false;
+            }
 
-            List<NewsEvent> list = newsParser.parse(filename);
+            @Override
+            boolean onReply(IMessage message) throws JFException {
+                if (message.getType() != IMessage.Type.ORDER_CHANGED_OK && message.getType() != IMessage.Type.ORDER_CHANGED_REJECTED)
+                    return true;
+                return step();
+            }
 
-            console.getOut().println(" Total NewsEvents: " + list.size());
-            ArrayList<NewsEvent> allNewsEvents = new ArrayList<>();
+            @Override
+            IOrder result() {
+                return orders.length > 0 ? orders[0] : null;
+            }
+        }
 
-            for (NewsEvent event : list) {
+        private ArrayDeque<Action> queue(Instrument instrument) {
+            int i = instrument.ordinal();
+            while (i >= queues.size())
+                queues.add(null);
+            ArrayDeque<Action> queue = queues.get(i);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.set(i, queue);
+            }
+            return queue;
+        }
 
-                String pair = pairsMap.get(event.getCurrency());
+        public Future<IOrder> submit(IEngine.OrderCommand command, Instrument instrument, double lot, double price, double stopLoss,
+                double takeProfit, long goodTillTime, String comment) {
+            return enqueue(new SubmitAction(command, instrument, lot, round(price, instrument), round(stopLoss, instrument),
+                    round(takeProfit, instrument), goodTillTime, comment));
+        }
 
-                if (pair == null)
-                    continue;// it might be more currencies than expected
+        public Future<IOrder> merge(IOrder... orders) {
+            return enqueue(new MergeAction(orders[0].getInstrument(), orders));
+        }
 
-                event.setPair(pair);
-                // use only news for the pair from strategy instruments
-                // Filtering by instrument
-                boolean shouldAdd = false;
-                for (String sInstrument : instruments) {
+        public Future<IOrder> removeTakeProfitStopLoss(IOrder... orders) {
+            return enqueue(new RemoveTakeProfitStopLossAction(orders[0].getInstrument(), orders));
+        }
 
-                    if (pair.equals(sInstrument)) {
-                        // if (debug)
-                        // console.getOut().println("Event added for " + pair +
-                        // " Event:" + event.toString());
+        private Future<IOrder> enqueue(Action action) {
+            ArrayDeque<Action> queue = queue(action.instrument);
+            if (queue.size() >= maxQueuedOrderActions) {
+                rejected++;
+                JFException e = new JFException("Order action queue of " + action.instrument + " is full (" + queue.size() + ")");
+                // callers do not inspect the future, so the rejection is reported here
+                if (action instanceof SubmitAction) {
+                    SubmitAction submit = (SubmitAction) action;
+                    console.getErr().println(e.getMessage() + ", rejected " + submit.label + " " + submit.command + " " + submit.amount
+                            + " @ " + submit.price);
+                } else {
+                    console.getErr().println(e.getMessage() + ", rejected " + action.getClass().getSimpleName());
+                }
+                action.future.completeExceptionally(e);
+                return action.future;
+            }
+            queue.addLast(action);
+            queued++;
+            maxQueued = Math.max(maxQueued, queued);
+            if (queue.size() == 1)
+                schedule(action);
+            return action.future;
+        }
 
-                        shouldAdd = true;
-                        break;
-                    }
+        private void schedule(final Action action) {
+            context.executeTask(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    start(action);
+                    return null;
                 }
+            });
+        }
 
-                if (!shouldAdd)
-                    continue;
+        private void start(Action action) {
+            try {
+                action.deadlineTime = context.getTime() + orderActionTimeoutMillis;
+                if (action.step())
+                    awaiting.put(action.label, action);
+                else
+                    finish(action, null);
+            } catch (JFException e) {
+                console.getErr().println(e.getMessage());
+                finish(action, e);
+            }
+        }
 
-                // filtering by time - avoid old news
-                correctDaylightSaving(event);
+        public void onMessage(IMessage message) {
+            IOrder order = message.getOrder();
+            Action action = order == null || awaiting.isEmpty() ? null : awaiting.get(order.getLabel());
+            if (action == null)
+                return;
 
-                if (TradeOrInvestigate) {// while trading avoid old news
-                    if (!(LastTick.getTime() < event.getDateTime().getTime()))
-                        continue;
+            try {
+                awaiting.remove(action.label);
+                if (action.onReply(message)) {
+                    awaiting.put(action.label, action);
+                    return;
                 }
+                finish(action, action.isSuccess() ? null : new JFException(action.label + " " + message.getType()));
+            } catch (JFException e) {
+                console.getErr().println(e.getMessage());
+                finish(action, e);
+            }
+        }
 
-                String key = event.getCurrency() + " " + event.getTitle();
-                List<NewsEvent> byTitleList = byTitleMap.get(key);
-
-                if (byTitleList == null) {
-                    byTitleList = new ArrayList<>();
+        // fails actions whose broker reply did not arrive in time
+        public void expire(long time) {
+            if (awaiting.isEmpty())
+                return;
+            ArrayList<Action> expired = null;
+            for (Action action : awaiting.values()) {
+                if (time > action.deadlineTime) {
+                    if (expired == null)
+                        expired = new ArrayList<>();
+                    expired.add(action);
                 }
+            }
+            if (expired == null)
+                return;
+            // finishing starts the next action of the instrument, which may register a new label
+            for (Action action : expired) {
+                timedOut++;
+                console.getErr().println("Order action " + action.label + " timed out after " + orderActionTimeoutMillis + " ms");
+                finish(action, new JFException(action.label + " timed out"));
+            }
+        }
 
-                byTitleList.add(event);
-                byTitleMap.put(key, byTitleList);
-
-                long timeKey = event.getDateTime().getTime();
+        private void finish(Action action, JFException error) {
+            ArrayDeque<Action> queue = queue(action.instrument);
+            if (queue.peekFirst() != action)
+                return;
+            queue.removeFirst();
+            awaiting.remove(action.label);
+            queued--;
+
+            long latencyNanos = System.nanoTime() - action.enqueueNanos;
+            latencyNanosTotal += latencyNanos;
+            latencyNanosMax = Math.max(latencyNanosMax, latencyNanos);
+            if (error == null) {
+                completed++;
+                action.future.complete(action.result());
+            } else {
+                failed++;
+                action.future.completeExceptionally(error);
+            }
 
-                List<NewsEvent> byTimeList = byTimeMap.get(timeKey);
-                if (byTimeList == null) {
-                    byTimeList = new ArrayList<>();
-                }
-                byTimeList.add(event);
-                byTimeMap.put(timeKey, byTimeList);
+            if (!queue.isEmpty())
+                schedule(queue.peekFirst());
+        }
 
-                List<NewsEvent> byPairList = byPairMap.get(pair);
-                if (byPairList == null) {
-                    byPairList = new ArrayList<>();
-                }
+        public int getQueueDepth() {
+            return queued;
+        }
 
-                byPairList.add(event);
-                allNewsEvents.add(event);
+        public int getMaxQueueDepth() {
+            return maxQueued;
+        }
 
-                // put news event to the charts
-                if (showNewsOnChart) {
-                    IChart chart = IChartMap.get(pair);
+        public long getAverageLatencyMicros() {
+            long actions = completed + failed;
+            return actions > 0 ? latencyNanosTotal / actions / 1000 : 0;
+        }
 
-                    if (chart != null) {
-                        Date dateTime = event.getDateTime();
-                        IChartObjectFactory factory = chart.getChartObjectFactory();
-                        IVerticalLineChartObject newsLine = factory.createVerticalLine(event.toString(), dateTime.getTime());
-                        newsLine.setColor(java.awt.Color.RED);
-                        newsLine.setMenuEnabled(false);
-                        newsLine.setShowLabel(true);
-                        newsLine.setText(event.toString());
-                        chart.add(newsLine);
-                    }
-                }
-            }
+        public long getMaxLatencyMicros() {
+            return latencyNanosMax / 1000;
+        }
 
-            if (!TradeOrInvestigate)
-                console.getOut().println(
-                        "News events was successfully processed and separated by currency+title for investigations: " + list.size());
+        public void report() {
+            if (completed + failed + rejected == 0)
+                return;
+            console.getOut().println("Order actions: " + completed + " completed, " + failed + " failed (" + timedOut + " timed out), "
+                    + rejected + " rejected, queue depth " + queued + " max " + maxQueued + ", enqueue-to-completion avg "
+                    + getAverageLatencyMicros() + " us max " + getMaxLatencyMicros() + " us");
+        }
+    }
 
-            String instrumentsNamesStr = "";
-            for (String instrumentName : instruments) {
-                instrumentsNamesStr += instrumentName + " ";
+    /**
+     * Hierarchical timing wheel driven by IContext.getTime(), so timers fire at
+     * the same strategy time in the tester and in live trading. Five levels of 64
+     * slots with a 10 ms resolution cover about 124 days; timers further away are
+     * parked in the last slot and re-placed when their slot cascades. Timers
+     * are nodes of doubly linked slot lists, schedule and cancel are O(1), and
+     * advancing over a quiet stretch jumps a whole rotation of the first level at
+     * a time. Not thread safe, used from the strategy thread only.
+     */
+    class TimingWheel {
+
+        private static final int RESOLUTION_MILLIS = 10;
+        private static final int SLOT_BITS = 6;
+        private static final int SLOTS = 1 << SLOT_BITS;
+        private static final int SLOT_MASK = SLOTS - 1;
+        private static final int LEVELS = 5;
+        private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+        class Timer {
+            private final TimerCallback callback;
+            private long deadlineTick;
+            private int slot = -1;
+            private Timer prev;
+            private Timer next;
+
+            Timer(long deadline, TimerCallback callback) {
+                // never fires before the deadline
+                this.deadlineTick = (deadline + RESOLUTION_MILLIS - 1) / RESOLUTION_MILLIS;
+                this.callback = callback;
             }
+        }
 
-            console.getOut().println("Added " + allNewsEvents.size() + " (events for " + instrumentsNamesStr + " after "
-                    + new Date(LastTick.getTime()) + ")");
-            this.newsEvents = allNewsEvents;
-            System.out.println();
+        private final Timer[] slots = new Timer[LEVELS * SLOTS];
+        private final int[] counts = new int[LEVELS];
+        private int size;
+        // last processed tick
+        private long current;
+        private long time;
 
+        public void start(long time) {
+            this.time = time;
+            this.current = time / RESOLUTION_MILLIS;
         }
 
-        private void sortNewsByTime() {
-            if (newsSortedByTime == null) {
-                newsSortedByTime = new LinkedList<>();
-                newsSortedByTime.addAll(newsEvents);
-                Collections.sort(newsSortedByTime);
-                if (debug)
-                    console.getOut().println("sortNewsByTime() - OK ");
-            }
+        public long getTime() {
+            return time;
         }
 
-        LinkedHashMap<String, List<NewsEvent>> workingNewsMap = null;
+        /**
+         * Timers at or before the current time fire on the next advance.
+         */
+        public Timer schedule(long deadline, TimerCallback callback) {
+            Timer timer = new Timer(deadline, callback);
+            place(timer, current + 1);
+            return timer;
+        }
 
-        private boolean collectWorkingEventsForTrading() throws JFException {
-            if (workingEvents.size() == 0) {
-                // looking for working news events ( or several events on the
-                // same time)
-                for (NewsEvent event : newsSortedByTime) {
-                    Tick lastTick = LastTickMap.get(event.getPair());
-
-                    if (event.getDateTime().getTime() > lastTick.getTime()
-                            && event.getDateTime().getTime() - lastTick.getTime() <= secondsBeforeNews * 1000
-                    /*
-                     * event.getDateTime().getTime() < lastTick.getTime() &&
-                     * lastTick.getTime() - event.getDateTime().getTime() <=
-                     * secondsBeforeNews * 1000
-                     */) {
-                        // collecting upcoming news events secondsBeforeNews
-                        // seconds before news release
-                        workingEvents.add(event);
-                        if (debug)
-                            if (debug)
-                                console.getOut().println("Trading news release: " + event.toString());
-                    } else if (lastTick.getTime() > event.getDateTime().getTime()) {
-                        // stop iterating when next news event in the past
-                        // already
-                        // to speed up processing
-                        break;
-                    }
-                }
+        public void cancel(Timer timer) {
+            if (timer != null && timer.slot >= 0)
+                unlink(timer);
+        }
+
+        private void place(Timer timer, long earliestTick) {
+            long tick = Math.max(timer.deadlineTick, earliestTick);
+            if (tick - current > MAX_DELTA)
+                tick = current + MAX_DELTA;
+            long delta = tick - current;
+
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+                level++;
             }
+            int slot = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+            Timer head = slots[slot];
+            timer.prev = null;
+            timer.next = head;
+            if (head != null)
+                head.prev = timer;
+            slots[slot] = timer;
+            timer.slot = slot;
+            counts[level]++;
+            size++;
+        }
 
-            workingNewsMap = new LinkedHashMap<>();
+        private void unlink(Timer timer) {
+            if (timer.prev != null)
+                timer.prev.next = timer.next;
+            else
+                slots[timer.slot] = timer.next;
+            if (timer.next != null)
+                timer.next.prev = timer.prev;
+            counts[timer.slot / SLOTS]--;
+            size--;
+            timer.slot = -1;
+            timer.prev = null;
+            timer.next = null;
+        }
 
-            for (NewsEvent event : workingEvents) {
-                List<NewsEvent> newsByPair = workingNewsMap.get(event.getPair());
-                if (newsByPair == null) {
-                    newsByPair = new ArrayList<>();
+        public void advance(long now) throws JFException {
+            if (now < time)
+                return;
+            time = now;
+            long target = now / RESOLUTION_MILLIS;
+
+            while (current < target) {
+                if (size == 0) {
+                    current = target;
+                } else if (counts[0] == 0 && (current | SLOT_MASK) < target) {
+                    // nothing on the first level before its next rotation
+                    current |= SLOT_MASK;
+                    process(current + 1);
+                } else {
+                    process(current + 1);
                 }
-                newsByPair.add(event);
-                workingNewsMap.put(event.getPair(), newsByPair);
             }
+        }
 
-            if (closeOnNewEvent && workingNewsMap.size() > 0) {
-                closeOpenOrders();
+        private void process(long tick) throws JFException {
+            current = tick;
+            for (int level = 1; level < LEVELS; level++) {
+                if (((tick >>> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0)
+                    break;
+                cascade(level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
             }
 
-            return workingEvents.size() > 0;
+            int slot = (int) (tick & SLOT_MASK);
+            Timer timer;
+            while ((timer = slots[slot]) != null) {
+                unlink(timer);
+                if (timer.deadlineTick > tick)
+                    place(timer, tick);
+                else
+                    timer.callback.onTimer(time);
+            }
         }
 
-        public void trading() throws JFException {
-            // TODO
-            // 1. Sort by news release time (several news could be on the same
-            // time, but for different instruments or even the same instrument)
-            // 2. Wait onTick data beforeSeconds before news release for
-            // upcoming news event/events
-            // 3. On news release time minus beforeSeconds open stop orders
-            // 4. On session end or another news event close open orders
+        private void cascade(int slot) {
+            Timer timer = slots[slot];
+            while (timer != null) {
+                Timer next = timer.next;
+                unlink(timer);
+                place(timer, current);
+                timer = next;
+            }
+        }
+    }
 
-            sortNewsByTime();
-            // when market orders - waiting for breakout to open opders and
-            // clear working news/working news map
+    /**
+     * Price arithmetic on primitives only. Scale factors of every instrument are
+     * computed once and kept by instrument ordinal. Rounding is half up to the
+     * tick scale (pip scale + 1) and returns exactly the same double as rounding
+     * the decimal string of the price with <code>BigDecimal</code>; the rare
+     * prices which are too close to a half tick to decide in binary arithmetic
+     * are still rounded with <code>BigDecimal</code>.
+     */
+    class PriceMath {
+
+        // distance from a half tick (in ticks) below which binary rounding can
+        // differ from the decimal one
+        private static final double TIE_TOLERANCE = 1e-6;
+        private static final double MAX_SCALED_PRICE = 1e9;
+
+        private static final int ROUNDING_FACTOR = 0;
+        private static final int PIP_VALUE = 1;
+        private static final int PIPS_MULTIPLIER = 2;
+        private static final int COLUMNS = 3;
+
+        // ROUNDING_FACTOR, PIP_VALUE, PIPS_MULTIPLIER by instrument ordinal,
+        // replaced as a whole when new instruments appear
+        private volatile double[] scales = new double[0];
+
+        private double scale(Instrument instrument, int column) {
+            int offset = instrument.ordinal() * COLUMNS;
+            double[] current = scales;
+
+            if (offset >= current.length || current[offset + ROUNDING_FACTOR] == 0)
+                current = addScales(instrument);
+
+            return current[offset + column];
+        }
 
-            if (collectWorkingEventsForTrading()) {
+        private synchronized double[] addScales(Instrument instrument) {
+            int offset = instrument.ordinal() * COLUMNS;
+            double[] updated = java.util.Arrays.copyOf(scales, Math.max(scales.length, Math.max(offset + COLUMNS, Instrument.size() * COLUMNS)));
 
-                if (debug)
-                    console.getOut().println("Working events found: " + workingEvents.size() + "  - news release time: "
-                            + workingEvents.get(0).getDateTime());
+            updated[offset + ROUNDING_FACTOR] = Math.pow(10, instrument.getPipScale() + 1);
+            updated[offset + PIP_VALUE] = instrument.getPipValue();
+            updated[offset + PIPS_MULTIPLIER] = Math.pow(10, instrument.getPipScale());
+            scales = updated;
 
-                for (Iterator<Map.Entry<String, List<NewsEvent>>> it = workingNewsMap.entrySet().iterator(); it.hasNext();) {
-                    Map.Entry<String, List<NewsEvent>> entry = it.next();
-                    String pair = entry.getKey();
-                    Tick lastTick = LastTickMap.get(pair);
+            return updated;
+        }
 
-                    long prevBarTime = history.getPreviousBarStart(Period.ONE_MIN, lastTick.getTime());
+        /**
+         * Half up rounding of the price to the instrument tick scale.
+         */
+        public double round(double price, Instrument instrument) {
+            double factor = scale(instrument, ROUNDING_FACTOR);
+            double scaled = price * factor;
+
+            if (price > 0 && scaled < MAX_SCALED_PRICE) {
+                double ticks = Math.floor(scaled);
+                double fraction = scaled - ticks;
+
+                if (Math.abs(fraction - 0.5) > TIE_TOLERANCE) {
+                    if (fraction > 0.5)
+                        ticks += 1;
+                    // ticks and factor are exact, so is the quotient rounding
+                    return ticks / factor;
+                }
+            }
 
-                    Instrument instrument = Instrument.fromString(pair);
-                    int INVESTIGATE_BARS = numberOfCandles;
-                    // getting 1 min bars from history
-                    List<IBar> barsBid = history.getBars(instrument, Period.ONE_MIN, OfferSide.BID,
-                            history.getTimeForNBarsBack(Period.ONE_MIN, prevBarTime, INVESTIGATE_BARS), prevBarTime);
-                    List<IBar> barsAsk = history.getBars(instrument, Period.ONE_MIN, OfferSide.BID,
-                            history.getTimeForNBarsBack(Period.ONE_MIN, prevBarTime, INVESTIGATE_BARS), prevBarTime);
+            BigDecimal big = new BigDecimal("" + price);
+            big = big.setScale(instrument.getPipScale() + 1, BigDecimal.ROUND_HALF_UP);
+            return big.doubleValue();
+        }
 
-                    double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
+        /**
+         * @return price distance of the points (1 point = 1/10 pip)
+         */
+        public double pointsToPrice(int points, Instrument instrument) {
+            return scale(instrument, PIP_VALUE) * points / 10;
+        }
 
-                    if (barsAsk.size() > 0) {
-                        // looking min/max price 5 min after news release time
+        /**
+         * @return price distance of the points truncated to whole pips, the way
+         *         ladder distances are configured
+         */
+        public double wholePipsToPrice(int points, Instrument instrument) {
+            return points / 10 * scale(instrument, PIP_VALUE);
+        }
 
-                        for (IBar bar : barsAsk) {
-                            if (bar.getHigh() > priceMax)
-                                priceMax = bar.getHigh();
-                        }
-                    }
+        public double toPips(double priceDistance, Instrument instrument) {
+            return priceDistance * getPipsMultiplier(instrument);
+        }
 
-                    if (barsBid.size() > 0) {
-                        // looking min/max price 5 min after news release time
-                        for (IBar bar : barsBid) {
-                            if (bar.getLow() < priceMin)
-                                priceMin = bar.getLow();
-                        }
-                    }
+        public double getPipsMultiplier(Instrument instrument) {
+            return scale(instrument, PIPS_MULTIPLIER);
+        }
 
-                    if (debug)
-                        console.getOut().println("Preparing orders for news event on: " + pair);
+        /**
+         * @return price of the ladder level, levels go up from the initial price
+         *         for buy orders and down for sell orders
+         */
+        public double ladderLevel(double initialPrice, double step, int level, boolean up) {
+            return up ? initialPrice + (level * step) : initialPrice - (level * step);
+        }
+    }
 
-                    if (marketOrders) {
+    /**
+     * Last tick and last default period ask/bid bars of every instrument, in
+     * primitive arrays indexed by instrument ordinal. Updated from onTick/onBar
+     * and read by the strategy thread only (order tasks run through
+     * IContext.executeTask on the same thread), so the arrays are swapped on
+     * growth without synchronization. Nothing is allocated on update.
+     */
+    class MarketState {
+
+        private static final int TICK_ASK = 0;
+        private static final int TICK_BID = 1;
+        private static final int TICK_ASK_VOLUME = 2;
+        private static final int TICK_BID_VOLUME = 3;
+        private static final int TICK_COLUMNS = 4;
+
+        private static final int BAR_OPEN = 0;
+        private static final int BAR_HIGH = 1;
+        private static final int BAR_LOW = 2;
+        private static final int BAR_CLOSE = 3;
+        private static final int BAR_VOLUME = 4;
+        private static final int BAR_COLUMNS = 5;
+
+        private long[] tickTimes = new long[0];
+        private double[] ticks = new double[0];
+        private long[] askBarTimes = new long[0];
+        private double[] askBars = new double[0];
+        private long[] bidBarTimes = new long[0];
+        private double[] bidBars = new double[0];
+
+        private long lastTickTime;
+        // instrument of the latest update, -1 until the first one
+        private int lastInstrument = -1;
+
+        private int ensureCapacity(Instrument instrument) {
+            int i = instrument.ordinal();
+            if (i >= tickTimes.length) {
+                int capacity = Math.max(i + 1, Instrument.size());
+                ticks = java.util.Arrays.copyOf(ticks, capacity * TICK_COLUMNS);
+                askBarTimes = java.util.Arrays.copyOf(askBarTimes, capacity);
+                askBars = java.util.Arrays.copyOf(askBars, capacity * BAR_COLUMNS);
+                bidBarTimes = java.util.Arrays.copyOf(bidBarTimes, capacity);
+                bidBars = java.util.Arrays.copyOf(bidBars, capacity * BAR_COLUMNS);
+                tickTimes = java.util.Arrays.copyOf(tickTimes, capacity);
+            }
+            return i;
+        }
 
-                        // in case of market orders break-out might be absent -
-                        // so remove working news on secondsAfterNews time
-                        List<NewsEvent> events = entry.getValue();
-                        NewsEvent event = events.get(0);
-                        long cancelBleakoutWaitingTime = event.getDateTime().getTime() + 1000 * cancellAfterSeconds;
+        public void onTick(Instrument instrument, ITick tick) {
+            int i = store(instrument, tick);
+            lastTickTime = tick.getTime();
+            lastInstrument = i;
+        }
 
-                        if (lastTick.getTime() < cancelBleakoutWaitingTime) {
+        /**
+         * Stores the tick of the instrument without making it the last
+         * received tick.
+         */
+        public void put(Instrument instrument, ITick tick) {
+            lastInstrument = store(instrument, tick);
+        }
 
-                            // open market orders on break-out
-                            if (isSpreadOK(instrument, lastTick)) {
-                                boolean breakoutHappened = checkBreakoutAndOpenOrders(instrument, priceMin, priceMax);
+        private int store(Instrument instrument, ITick tick) {
+            int i = ensureCapacity(instrument);
+            int offset = i * TICK_COLUMNS;
+            ticks[offset + TICK_ASK] = tick.getAsk();
+            ticks[offset + TICK_BID] = tick.getBid();
+            ticks[offset + TICK_ASK_VOLUME] = tick.getAskVolume();
+            ticks[offset + TICK_BID_VOLUME] = tick.getBidVolume();
+            tickTimes[i] = tick.getTime();
+            return i;
+        }
 
-                                if (breakoutHappened) {
-                                    newsSortedByTime.removeAll(events);
-                                    workingEvents.removeAll(events);
-                                    it.remove();
-                                }
-                            }
+        public void onBar(Instrument instrument, IBar askBar, IBar bidBar) {
+            int i = ensureCapacity(instrument);
+            if (askBar != null)
+                askBarTimes[i] = store(askBars, i, askBar);
+            if (bidBar != null)
+                bidBarTimes[i] = store(bidBars, i, bidBar);
+            lastInstrument = i;
+        }
 
-                        }
-                    } else {
+        private long store(double[] bars, int i, IBar bar) {
+            int offset = i * BAR_COLUMNS;
+            bars[offset + BAR_OPEN] = bar.getOpen();
+            bars[offset + BAR_HIGH] = bar.getHigh();
+            bars[offset + BAR_LOW] = bar.getLow();
+            bars[offset + BAR_CLOSE] = bar.getClose();
+            bars[offset + BAR_VOLUME] = bar.getVolume();
+            return bar.getTime();
+        }
 
-                        if (useBidOfferOrders) {
-                            placeBidOfferOrders(instrument, priceMin, priceMax);
-                        } else if (usePendingOrders) {
-                            openPendingOrders(instrument, priceMin, priceMax);
-                        }
+        private int index(Instrument instrument) {
+            if (lastInstrument < 0)
+                return -1;
+            int i = instrument.ordinal();
+            return i < tickTimes.length ? i : -1;
+        }
 
-                        List<NewsEvent> events = workingNewsMap.get(pair);
-                        newsSortedByTime.removeAll(events);
-                        workingEvents.removeAll(events);
-                    }
-                }
+        public boolean hasTick(Instrument instrument) {
+            int i = index(instrument);
+            return i >= 0 && tickTimes[i] != 0;
+        }
 
-                // removing processed news events from workingEvents list &
-                // newsSortedByTime to speed up processing
-                if (!marketOrders) {
-                    workingNewsMap.clear();
-                    workingEvents.clear();
-                }
-            }
+        /**
+         * @return time of the last tick received by onTick
+         */
+        public long getLastTickTime() {
+            return lastInstrument < 0 ? 0 : lastTickTime;
         }
 
-        public boolean isSpreadOK(Instrument instrument, Tick lastTick) {
-            double spreadPip = (lastTick.getAsk() - lastTick.getBid()) / instrument.getPipValue();
-            boolean result = spreadPip <= SPREAD;
+        public long getTime(Instrument instrument) {
+            int i = index(instrument);
+            return i < 0 ? 0 : tickTimes[i];
+        }
 
-            if (!result && debug)
-                console.getOut().println("Spread is too high");
+        private double tick(Instrument instrument, int column) {
+            int i = index(instrument);
+            return i < 0 ? 0 : ticks[i * TICK_COLUMNS + column];
+        }
 
-            return result;
+        public double getAsk(Instrument instrument) {
+            return tick(instrument, TICK_ASK);
         }
 
-        public void breakEven() throws JFException {
-            if (moveToBreakeven)
-                if (ActiveOrders.size() > 0) {
+        public double getBid(Instrument instrument) {
+            return tick(instrument, TICK_BID);
+        }
 
-                    for (IOrder order : ActiveOrders) {
-                        double lockLevelPips = lockLevel / 10;
+        public double getAskVolume(Instrument instrument) {
+            return tick(instrument, TICK_ASK_VOLUME);
+        }
 
-                        if (order.getProfitLossInPips() >= lockLevelPips) {
+        public double getBidVolume(Instrument instrument) {
+            return tick(instrument, TICK_BID_VOLUME);
+        }
 
-                            double open = order.getOpenPrice();
-                            double breakEven;
+        public long getBarTime(Instrument instrument, OfferSide side) {
+            int i = index(instrument);
+            if (i < 0)
+                return 0;
+            return side == OfferSide.ASK ? askBarTimes[i] : bidBarTimes[i];
+        }
 
-                            if (order.isLong()) {
-                                breakEven = open + lockPoints / 10 * order.getInstrument().getPipValue();
-                            } else {
-                                breakEven = open - lockPoints / 10 * order.getInstrument().getPipValue();
-                            }
+        private double bar(Instrument instrument, OfferSide side, int column) {
+            int i = index(instrument);
+            if (i < 0)
+                return 0;
+            return (side == OfferSide.ASK ? askBars : bidBars)[i * BAR_COLUMNS + column];
+        }
 
-                            breakEven = round(breakEven, order.getInstrument());
+        public double getOpen(Instrument instrument, OfferSide side) {
+            return bar(instrument, side, BAR_OPEN);
+        }
 
-                            if (order.getStopLossPrice() != breakEven)
-                                order.setStopLossPrice(breakEven);
-                        }
-                    }
-                }
+        public double getHigh(Instrument instrument, OfferSide side) {
+            return bar(instrument, side, BAR_HIGH);
         }
 
-        public void placeBidOfferOrders(Instrument instrument, double priceMin, double priceMax) throws JFException {
-            Tick lastTick = LastTickMap.get(instrument.getName());
+        public double getLow(Instrument instrument, OfferSide side) {
+            return bar(instrument, side, BAR_LOW);
+        }
 
-            double gapInPrice = round(GAP / 10 * instrument.getPipValue(), instrument);
-            double stepInPrice = round(STEP / 10 * instrument.getPipValue(), instrument);
-            double initialPriceLevelForSell = priceMin - gapInPrice;
-            double initialPriceLevelForBuy = priceMax + gapInPrice;
+        public double getClose(Instrument instrument, OfferSide side) {
+            return bar(instrument, side, BAR_CLOSE);
+        }
 
-            if (debug)
-                console.getOut().println("priceMin=" + priceMin + " priceMax=" + priceMax + " initialPriceSell=" + initialPriceLevelForSell
-                        + " initialPriceBuy=" + initialPriceLevelForBuy);
+        public double getVolume(Instrument instrument, OfferSide side) {
+            return bar(instrument, side, BAR_VOLUME);
+        }
+    }
 
-            double lot, stopLossPrice, takeProfitPrice;
+    /**
+     * Position sizing by RISK % of equity. The exchange rate route from the
+     * instrument to the account currency is resolved once per instrument and the
+     * latest bid/ask of every instrument is taken from the market state, so
+     * sizing does not go to history except for the very first price of an
+     * instrument.
+     */
+    class PositionSizer {
+
+        private String accountCurrency;
+        // traded instruments, their conversions are resolved up front
+        private final List<Instrument> traded = new ArrayList<>();
+        // by instrument ordinal
+        private Instrument[] conversions = new Instrument[0];
+        private boolean[] invertedConversions = new boolean[0];
+
+        public void setAccountCurrency(String accountCurrency) throws JFException {
+            if (!accountCurrency.equals(this.accountCurrency)) {
+                this.accountCurrency = accountCurrency;
+                conversions = new Instrument[conversions.length];
+                for (int i = 0; i < traded.size(); i++) {
+                    resolve(traded.get(i));
+                }
+            }
+        }
 
-            IEngine.OrderCommand command;
+        /**
+         * Resolves the conversion instrument of a traded instrument and
+         * subscribes to it, so sizing an order never has to subscribe.
+         */
+        public void addInstrument(Instrument instrument) throws JFException {
+            if (!traded.contains(instrument))
+                traded.add(instrument);
+            resolve(instrument);
+        }
 
-            long cancelTime = lastTick.getTime() + 1000 * cancellAfterSeconds;
+        private int ensureCapacity(Instrument instrument) {
+            int i = instrument.ordinal();
+            if (i >= conversions.length) {
+                int capacity = Math.max(i + 1, Instrument.size());
+                conversions = java.util.Arrays.copyOf(conversions, capacity);
+                invertedConversions = java.util.Arrays.copyOf(invertedConversions, capacity);
+            }
+            return i;
+        }
 
-            for (int i = 0; i < numberOfOrders; i++) {
-                double priceSell = initialPriceLevelForSell - (i * stepInPrice);
-                stopLossPrice = priceSell + (SL / 10 * lastTick.getInstrument().getPipValue());
-                takeProfitPrice = priceSell - (TP / 10 * lastTick.getInstrument().getPipValue());
-                command = IEngine.OrderCommand.PLACE_OFFER;
-                lot = getPositionSize(instrument, priceSell, stopLossPrice, command);
+        private double price(Instrument instrument, boolean isLong) throws JFException {
+            if (!marketState.hasTick(instrument))
+                marketState.put(instrument, history.getLastTick(instrument));
+            return isLong ? marketState.getAsk(instrument) : marketState.getBid(instrument);
+        }
 
-                if (debug)
-                    console.getOut().println("Sell lot=" + lot + " priceSell=" + round(priceSell, instrument));
+        // instrument giving exchange rate of the primary currency in relation
+        // to account currency
+        private Instrument conversion(Instrument instrument) throws JFException {
+            int i = instrument.ordinal();
+            if (i >= conversions.length || conversions[i] == null)
+                throw new JFException("No conversion resolved for " + instrument + ", it is not a traded instrument");
+            return conversions[i];
+        }
 
-                OpenOrder(command, instrument, lot, priceSell, 0, 0, cancelTime, "OFFER_" + (i + 1));
+        private void resolve(Instrument instrument) throws JFException {
+            int i = ensureCapacity(instrument);
 
-                double priceBuy = initialPriceLevelForBuy + (i * stepInPrice);
-                stopLossPrice = priceBuy - (SL / 10 * lastTick.getInstrument().getPipValue());
-                takeProfitPrice = priceBuy + (TP / 10 * lastTick.getInstrument().getPipValue());
-                command = IEngine.OrderCommand.PLACE_BID;
-                lot = getPositionSize(instrument, priceBuy, stopLossPrice, command);
+            if (conversions[i] == null) {
+                String primaryCurrency = instrument.getPrimaryCurrency().getCurrencyCode();
+                String apCurrency = accountCurrency + "/" + primaryCurrency;
+                Instrument conversion;
+                boolean inverted = false;
 
-                if (debug)
-                    console.getOut().println("Buy lot=" + lot + " priceBuy=" + round(priceBuy, instrument));
+                if (primaryCurrency.equals(accountCurrency)) {
+                    conversion = instrument;
+                } else {
+                    conversion = Instrument.fromString(apCurrency);
+                }
+
+                if (conversion == null) { // currency not found, try inverted pair
+                    conversion = Instrument.fromInvertedString(apCurrency);
+                    inverted = true;
+                }
 
-                OpenOrder(command, instrument, lot, priceBuy, 0, 0, cancelTime, "BID_" + (i + 1));
+                if (conversion == null)
+                    throw new JFException("No instrument to convert " + primaryCurrency + " to " + accountCurrency);
+
+                // conversion prices come from onTick
+                subscriptionInstrumentCheck(conversion);
+
+                invertedConversions[i] = inverted;
+                conversions[i] = conversion;
             }
+        }
 
+        public double getPositionSize(Instrument instrument, double entryPrice, double stopLossPrice, boolean isLong) throws JFException {
+            double[] lots = new double[1];
+            lotsForLadder(instrument, isLong, new double[] { entryPrice }, new double[] { stopLossPrice }, lots, 1);
+            return lots[0];
         }
 
-        public boolean checkBreakoutAndOpenOrders(Instrument instrument, double priceMin, double priceMax) throws JFException {
-            // open Sell/Buy STOP orders
-            Tick lastTick = LastTickMap.get(instrument.getName());
+        /**
+         * Calculates lots of <code>count</code> orders of one side of a ladder.
+         */
+        public void lotsForLadder(Instrument instrument, boolean isLong, double[] entryPrices, double[] stopLossPrices, double[] lots,
+                int count) throws JFException {
 
-            double gapInPrice = round(GAP / 10 * instrument.getPipValue(), instrument);
-            double stepInPrice = round(STEP / 10 * instrument.getPipValue(), instrument);
-            double initialPriceLevelForSell = priceMin - gapInPrice;
-            double initialPriceLevelForBuy = priceMax + gapInPrice;
+            String primaryCurrency = instrument.getPrimaryCurrency().getCurrencyCode();
+            double maxLossInAccountCurrency = RISK / 100 * Equity * Leverage / 1000;
 
-            double lot, stopLossPrice, takeProfitPrice;
+            // get exchange rate of traded pair in relation to account currency
+            Instrument conversion = conversion(instrument);
+            double accountCurrencyExchangeRate = price(conversion, isLong);
+            if (invertedConversions[instrument.ordinal()])
+                accountCurrencyExchangeRate = 1 / accountCurrencyExchangeRate;
 
-            IEngine.OrderCommand command;
+            // calc currency/pip value
+            double pairExchangeRate = price(instrument, isLong);
+            double accountCurrencyPerPip = instrument.getPipValue() / pairExchangeRate * 100000;
 
-            boolean breakout = false;
-            long cancelTime = lastTick.getTime() + 1000 * cancellAfterSeconds;
+            if (!primaryCurrency.equals(accountCurrency))
+                // convert to account pip value
+                accountCurrencyPerPip /= accountCurrencyExchangeRate;
 
-            if (lastTick.getAsk() >= initialPriceLevelForBuy) {
-                // Up breakout - open buy
-                breakout = true;
-                stopLossPrice = initialPriceLevelForSell;
-                command = IEngine.OrderCommand.BUY;
-                lot = getPositionSize(instrument, lastTick.getAsk(), stopLossPrice, command);
+            double maxLots = Equity * Leverage / 1000000;
 
-                // if(debug)
-                console.getOut().println(instrument.getName() + " Up breakout - open Buy lot=" + lot + " open price=" + lastTick.getAsk());
+            for (int i = 0; i < count; i++) {
+                // calc stop loss pips
+                double stopLossPips = priceMath.toPips(Math.abs(stopLossPrices[i] - entryPrices[i]), instrument);
 
-                OpenOrder(command, instrument, lot, lastTick.getAsk(), 0, 0, 0, "UpBreakoutBUY");
+                // position size
+                double units = maxLossInAccountCurrency / stopLossPips * 100000 / accountCurrencyPerPip;
 
-            } else if (lastTick.getBid() <= initialPriceLevelForSell) {
-                // Down breakout - open sell
-                breakout = true;
-                stopLossPrice = initialPriceLevelForBuy;
-                command = IEngine.OrderCommand.SELL;
-                lot = getPositionSize(instrument, lastTick.getBid(), stopLossPrice, command);
+                // converting to standard lots
+                double lot = units / 1000000;
 
-                // if(debug)
-                console.getOut()
-                        .println(instrument.getName() + " Down breakout - open Sell lot=" + lot + " open price=" + lastTick.getBid());
+                if (lot < 0.001) {
+                    // 1000 USD is minimum lot in Ducascopy
+                    lot = 0.001;
+                } else if (lot > maxLots) {
+                    lot = maxLots;
+                }
 
-                OpenOrder(command, instrument, lot, lastTick.getBid(), 0, 0, 0, "DownBreakoutSell");
+                lots[i] = lot;
             }
+        }
+    }
 
-            return breakout;
+    /**
+     * Levels of one side of an order ladder.
+     */
+    class LadderLevels {
+        double[] prices = new double[0];
+        double[] stopLosses = new double[0];
+        double[] takeProfits = new double[0];
+        double[] lots = new double[0];
+
+        void ensureCapacity(int levels) {
+            if (prices.length < levels) {
+                prices = new double[levels];
+                stopLosses = new double[levels];
+                takeProfits = new double[levels];
+                lots = new double[levels];
+            }
         }
+    }
 
-        public void openPendingOrders(Instrument instrument, double priceMin, double priceMax) throws JFException {
-            // open Sell & Buy STOP orders
-            Tick lastTick = LastTickMap.get(instrument.getName());
+    protected String getLabel() {
+        String label;
+        label = "IVF" + getCurrentTime(marketState.getLastTickTime()) + generateRandom(10000) + generateRandom(10000);
+        return label;
+    }
 
-            double gapInPrice = round(GAP / 10 * instrument.getPipValue(), instrument);
-            double stepInPrice = round(STEP / 10 * instrument.getPipValue(), instrument);
-            double initialPriceLevelForSell = priceMin - gapInPrice;
-            double initialPriceLevelForBuy = priceMax + gapInPrice;
+    private String getCurrentTime(long time) {
+        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT_NOW);
+        return sdf.format(time);
+    }
 
-            double lot, stopLossPrice, takeProfitPrice;
+    private static String generateRandom(int n) {
+        int randomNumber = (int) (Math.random() * n);
+        String answer = "" + randomNumber;
+        if (answer.length() > 3) {
+            answer = answer.substring(0, 4);
+        }
+        return answer;
+    }
 
-            IEngine.OrderCommand command;
+    class TradeEventAction {
+        private IMessage.Type messageType;
+        private String nextBlockId = "";
+        private String positionLabel = "";
+        private int flowId = 0;
+        private TradeEventHandler handler;
 
-            long cancelTime = lastTick.getTime() + 1000 * cancellAfterSeconds;
+        public IMessage.Type getMessageType() {
+            return messageType;
+        }
 
-            // open buy stop orders
-            command = IEngine.OrderCommand.BUYSTOP;
+        public void setMessageType(IMessage.Type messageType) {
+            this.messageType = messageType;
+        }
 
-            for (int i = 0; i < numberOfOrders; i++) {
-                double priceBuy = initialPriceLevelForBuy + (i * stepInPrice);
-                stopLossPrice = priceBuy - (SL / 10 * lastTick.getInstrument().getPipValue());
-                takeProfitPrice = priceBuy + (TP / 10 * lastTick.getInstrument().getPipValue());
+        public String getNextBlockId() {
+            return nextBlockId;
+        }
 
-                lot = getPositionSize(instrument, priceBuy, stopLossPrice, command);
+        public void setNextBlockId(String nextBlockId) {
+            this.nextBlockId = nextBlockId;
+        }
 
-                if (debug)
-                    console.getOut().println("Buy lot=" + lot + " priceBuy=" + priceBuy);
+        public String getPositionLabel() {
+            return positionLabel;
+        }
 
-                OpenOrder(command, instrument, lot, priceBuy, stopLossPrice, takeProfitPrice, cancelTime,
-                        "BUYSTOP_" + (i + 1) + " requested price:" + priceBuy);
-            }
+        public void setPositionLabel(String positionLabel) {
+            this.positionLabel = positionLabel;
+        }
 
-            // open sell stop orders
-            command = IEngine.OrderCommand.SELLSTOP;
+        public int getFlowId() {
+            return flowId;
+        }
 
-            for (int i = 0; i < numberOfOrders; i++) {
-                double priceSell = initialPriceLevelForSell - (i * stepInPrice);
-                stopLossPrice = priceSell + (SL / 10 * lastTick.getInstrument().getPipValue());
-                takeProfitPrice = priceSell - (TP / 10 * lastTick.getInstrument().getPipValue());
+        public void setFlowId(int flowId) {
+            this.flowId = flowId;
+        }
 
-                lot = getPositionSize(instrument, priceSell, stopLossPrice, command);
+        public TradeEventHandler getHandler() {
+            return handler;
+        }
 
-                if (debug)
-                    console.getOut().println("Sell lot=" + lot + " priceSell=" + priceSell);
+        public void setHandler(TradeEventHandler handler) {
+            this.handler = handler;
+        }
+    }
 
-                OpenOrder(command, instrument, lot, priceSell, stopLossPrice, takeProfitPrice, cancelTime,
-                        "SELLSTOP_" + (i + 1) + " requested price:" + priceSell);
+    /**
+     * One-shot trade event actions keyed by order label and message type. The
+     * strategy method named by nextBlockId is resolved to a method handle once
+     * at registration, so dispatching an order message is a hash lookup and an
+     * array slot read with no reflection, string comparisons or copying of the
+     * registered actions. Actions registered for the same label and type all
+     * fire, in registration order.
+     */
+    class TradeEventRegistry {
+
+        private final int types = IMessage.Type.values().length;
+        // actions of a label by message type ordinal
+        private final ConcurrentHashMap<String, AtomicReferenceArray<TradeEventAction[]>> byLabel = new ConcurrentHashMap<>();
+
+        public void register(TradeEventAction action) throws JFException {
+            if (action.getHandler() == null)
+                action.setHandler(resolve(action.getNextBlockId(), action.getFlowId()));
+            AtomicReferenceArray<TradeEventAction[]> actions = byLabel.get(action.getPositionLabel());
+            if (actions == null) {
+                AtomicReferenceArray<TradeEventAction[]> created = new AtomicReferenceArray<>(types);
+                actions = byLabel.putIfAbsent(action.getPositionLabel(), created);
+                if (actions == null)
+                    actions = created;
             }
+            int type = action.getMessageType().ordinal();
+            while (true) {
+                TradeEventAction[] current = actions.get(type);
+                TradeEventAction[] next;
+                if (current == null) {
+                    next = new TradeEventAction[] { action };
+                } else {
+                    next = java.util.Arrays.copyOf(current, current.length + 1);
+                    next[current.length] = action;
+                }
+                if (actions.compareAndSet(type, current, next))
+                    return;
+            }
+        }
 
+        public void register(String positionLabel, IMessage.Type messageType, TradeEventHandler handler) throws JFException {
+            TradeEventAction action = new TradeEventAction();
+            action.setPositionLabel(positionLabel);
+            action.setMessageType(messageType);
+            action.setHandler(handler);
+            register(action);
         }
 
-        private boolean isLongOrder(IEngine.OrderCommand orderCommand) {
-            return orderCommand == IEngine.OrderCommand.BUYSTOP || orderCommand == IEngine.OrderCommand.BUYSTOP_BYBID
-                    || orderCommand == IEngine.OrderCommand.BUYLIMIT || orderCommand == IEngine.OrderCommand.BUYLIMIT_BYBID
-                    || orderCommand == IEngine.OrderCommand.BUY || orderCommand == IEngine.OrderCommand.PLACE_BID;
+        // block methods take the flow id as their only argument
+        private TradeEventHandler resolve(String nextBlockId, int flowId) throws JFException {
+            try {
+                Method method = NewsTraderInvestigation.this.getClass().getDeclaredMethod(nextBlockId, Integer.class);
+                method.setAccessible(true);
+                final MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(NewsTraderInvestigation.this)
+                        .bindTo(Integer.valueOf(flowId));
+                return () -> {
+                    try {
+                        handle.invoke();
+                    } catch (JFException | RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new JFException(e.getMessage(), e);
+                    }
+                };
+            } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+                throw new JFException(e.getMessage(), e);
+            }
         }
 
-        private double getPositionSize(Instrument instrument, double entryPrice, double stopLossPrice, IEngine.OrderCommand orderCmd)
-                throws JFException {
+        public void dispatch(IMessage message) throws JFException {
+            IOrder order = message.getOrder();
+            if (order == null || byLabel.isEmpty())
+                return;
+
+            AtomicReferenceArray<TradeEventAction[]> actions = byLabel.get(order.getLabel());
+            if (actions == null)
+                return;
+
+            TradeEventAction[] fired = actions.getAndSet(message.getType().ordinal(), null);
+            // a closed order gets no more messages
+            if (message.getType() == IMessage.Type.ORDER_CLOSE_OK)
+                byLabel.remove(order.getLabel(), actions);
+            if (fired == null)
+                return;
+
+            for (TradeEventAction action : fired) {
+                // a failing block must not break the message handling of the strategy
+                try {
+                    action.getHandler().handle();
+                } catch (JFException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 
-            String accountCurrency = context.getAccount().getCurrency().getCurrencyCode();
-            String primaryCurrency = instrument.getPrimaryCurrency().getCurrencyCode();
-            String secondaryCurrency = instrument.getSecondaryCurrency().getCurrencyCode();
-            double maxLossInAccountCurrency = RISK / 100 * Equity * Leverage / 1000;
+    class AllInOne {
+        private String[] symbols = { "USD", "EUR", "GBP", "CAD", "CHF", "NZD", "JPY", "AUD" };
+        private String[] pairs = { "USD/CAD", "EUR/USD", "GBP/USD", "USD/CAD", "USD/CHF", "NZD/USD", "USD/JPY", "AUD/USD" };
+        private HashMap<String, String> pairsMap = new HashMap<>();
 
-            // get exchange rate of traded pair in relation to account currency
-            double accountCurrencyExchangeRate;
-            String apCurrency = accountCurrency + "/" + primaryCurrency;
-            Instrument i;
+        private List<NewsEvent> newsEvents;
+        private Map<String, List<NewsEvent>> byTitleMap = new LinkedHashMap<>();
+        private Map<String, List<NewsEvent>> byPairMap = new LinkedHashMap<>();
+        private Map<Long, List<NewsEvent>> byTimeMap = new LinkedHashMap<>();
 
-            if (primaryCurrency.equals(accountCurrency)) {
-                i = instrument;
-            } else {
-                i = Instrument.fromString(apCurrency);
+        private List<NewsEvent> newsSortedByTime = null;
+        private NewsCalendar newsCalendar = null;
+        private final long ONE_MINUTE_IN_MILLIS = 60000;
+        private List<NewsEvent> workingEvents = new LinkedList<>();
+        private InvestigationCsvSink investigationSink = null;
+
+        private void initPairsMap() {
+            for (int i = 0; i < symbols.length; i++) {
+                pairsMap.put(symbols[i], pairs[i]);
             }
+        }
 
-            if (i == null) { // currency not found, try inverted pair
-                i = Instrument.fromInvertedString(apCurrency);
-                if (isLongOrder(orderCmd))
-                    accountCurrencyExchangeRate = 1 / history.getLastTick(i).getAsk();
-                else
-                    accountCurrencyExchangeRate = 1 / history.getLastTick(i).getBid();
-            } else {
-                if (isLongOrder(orderCmd))
-                    accountCurrencyExchangeRate = history.getLastTick(i).getAsk();
-                else
-                    accountCurrencyExchangeRate = history.getLastTick(i).getBid();
+        // calendar times are shifted by the EET/EEST offset of the release
+        private void correctDaylightSaving(NewsEvent event) {
+            Date dateTime = event.getDateTime();
+            long newsTime = dateTime.getTime();
+            dateTime.setTime(newsTime + eetZone.getOffset(newsTime));
+        }
+
+        public LiveCalendar createLiveCalendar() throws JFException {
+            LiveCalendar feed = new LiveCalendar(byTimeMap, this::onCalendarRelease);
+
+            if (calendarRecordFile != null && calendarRecordFile.length() > 0)
+                feed.recordTo(calendarRecordFile);
+            return feed;
+        }
+
+        /**
+         * Live calendar over copies of the preloaded news events whose releases
+         * are not applied to anything, so a replay leaves the investigated
+         * events and the releases of the real live calendar untouched.
+         */
+        public LiveCalendar createReplayCalendar() {
+            Map<Long, List<NewsEvent>> copies = new HashMap<>();
+            for (Map.Entry<Long, List<NewsEvent>> entry : byTimeMap.entrySet()) {
+                List<NewsEvent> events = new ArrayList<>(entry.getValue().size());
+                for (NewsEvent event : entry.getValue()) {
+                    events.add(new NewsEvent(event));
+                }
+                copies.put(entry.getKey(), events);
             }
+            return new LiveCalendar(copies, (event, actual, expected, previous) -> {
+            });
+        }
 
-            // calc currency/pip value
-            double pairExchangeRate;
+        // actual value of the preloaded news event released
+        private void onCalendarRelease(NewsEvent event, double actual, double expected, double previous) {
+            event.setActual(actual);
+            if (event.getPrevious() == null && !Double.isNaN(previous))
+                event.setPrevious(previous);
+
+            if (event.getPrevious() != null && event.getPrevious() != 0) {
+                double change = (event.actual - event.previous) / event.previous * ((event.previous < 0) ? -1 : 1);
+                event.setChange(change);
+                // calculating change in %
+                event.setChangePercentage(change * 100);
+            }
 
-            if (isLongOrder(orderCmd))
-                pairExchangeRate = history.getLastTick(instrument).getAsk();
-            else
-                pairExchangeRate = history.getLastTick(instrument).getBid();
-            double accountCurrencyPerPip = instrument.getPipValue() / pairExchangeRate * 100000;
+            if (debug) {
+                double forecast = !Double.isNaN(expected) ? expected : event.getForecast() != null ? event.getForecast() : Double.NaN;
+                console.getOut().println("Calendar release: " + event.getCurrency() + " " + event.getTitle() + " actual=" + actual
+                        + " forecast=" + forecast + " surprise=" + (actual - forecast));
+            }
+        }
 
-            if (!primaryCurrency.equals(accountCurrency))
-                // convert to account pip value
-                accountCurrencyPerPip /= accountCurrencyExchangeRate;
+        public void readnPlotNews() throws java.text.ParseException, JFException {
+
+            initPairsMap();
+
+            if (debug)
+                console.getOut().println("Initialization of Pairs Map - OK");
+
+            final ArrayList<NewsEvent> allNewsEvents = new ArrayList<>();
+            long parseStarted = System.currentTimeMillis();
+            int total;
 
-            // calc stop loss pips
-            double stopLossPips;
-            if (isLongOrder(orderCmd)) {
-                stopLossPips = Math.abs(stopLossPrice - entryPrice) * Math.pow(10, instrument.getPipScale());
+            if (compiledNewsCache) {
+                CompiledNewsCalendar calendar = loadCompiledNewsCalendar();
+                total = calendar.size();
+
+                for (int i = 0; i < total; i++) {
+                    NewsEvent event = acceptCompiledNewsEvent(calendar, i);
+                    if (event != null)
+                        allNewsEvents.add(event);
+                }
             } else {
-                stopLossPips = Math.abs(stopLossPrice - entryPrice) * Math.pow(10, instrument.getPipScale());
+                // events are filtered as soon as the parser emits them
+                total = createNewsParser().parse(filename, event -> {
+                    if (acceptNewsEvent(event))
+                        allNewsEvents.add(event);
+                });
             }
 
-            // position size
-            double units = maxLossInAccountCurrency / stopLossPips * 100000 / accountCurrencyPerPip;
+            console.getOut().println(" Total NewsEvents: " + total);
+            if (debug)
+                console.getOut().println("News calendar loaded in " + (System.currentTimeMillis() - parseStarted) + " ms");
 
-            // converting to standard lots
-            double lots = units / 1000000;
+            if (!TradeOrInvestigate)
+                console.getOut().println(
+                        "News events was successfully processed and separated by currency+title for investigations: " + total);
 
-            if (lots < 0.001) {
-                // 1000 USD is minimum lot in Ducascopy
-                lots = 0.001;
-            } else if (lots > Equity * Leverage / 1000000) {
-                lots = Equity * Leverage / 1000000;
+            String instrumentsNamesStr = "";
+            for (String instrumentName : instruments) {
+                instrumentsNamesStr += instrumentName + " ";
             }
 
-            return lots;
+            console.getOut().println("Added " + allNewsEvents.size() + " (events for " + instrumentsNamesStr + " after "
+                    + new Date(marketState.getLastTickTime()) + ")");
+            this.newsEvents = allNewsEvents;
+            System.out.println();
+
         }
 
-        // this method should be called on every tick
-        public void investigate() throws JFException {
-            // FIXME idea - investigate speed fix
-            // start investigate at the end of the investigation period
-            // walk by news events one by one
-            // take the time of news release directly from news
-            // +1 min from that time and get two ONE_MIN candles back in time
+        private ParseInvestingHTML createNewsParser() {
+            ParseInvestingHTML newsParser = streamingNewsParser ? new StreamingInvestingParser() : new ParseInvestingHTML();
+            if (debug)
+                console.getOut().println("News calendar parser: " + newsParser.getClass().getSimpleName());
+            return newsParser;
+        }
 
-            // 1. Sort by news release time (several news could be on the same
-            // time, but for different instruments or even the same instrument)
-            // FIXME speed up idea // 2. Wait onTick data 2 min after news
-            // release for upcoming news
-            // event/events
-            // 3. On news release +1 min take 2 bars back for investigation
-            // 4. Save news change, start price , min/max price after news
-            // release to NewsEvent object
-            // 5. onStop - save all news infos by it's currency/title to the CSV
-            // file
+        private CompiledNewsCalendar loadCompiledNewsCalendar() throws JFException {
+            NewsCalendarCache cache = new NewsCalendarCache(filename);
+            CompiledNewsCalendar calendar = cache.read();
 
-            sortNewsByTime();
+            if (calendar != null) {
+                if (debug)
+                    console.getOut().println("Compiled news calendar loaded from " + cache.getCacheFile());
+                return calendar;
+            }
 
-            // old approach
-            /*
-             * if (workingEvents.size() == 0) { // looking for working news
-             * events ( or several events on the // same time) for (NewsEvent
-             * event : newsSortedByTime) { Tick lastTick =
-             * LastTickMap.get(event.getPair());
-             * 
-             * // 5 second tolerance long tolerance = 5000; long
-             * minutesAfterNewsRelease = 5; long prevBarTime =
-             * history.getPreviousBarStart(Period.ONE_MIN, lastTick.getTime());
-             * // collecting working news events minutesAfterNewsRelease if
-             * (prevBarTime > event.getDateTime().getTime() && (prevBarTime -
-             * event.getDateTime().getTime()) <= (minutesAfterNewsRelease *
-             * ONE_MINUTE_IN_MILLIS) && (prevBarTime -
-             * event.getDateTime().getTime()) >= (minutesAfterNewsRelease *
-             * ONE_MINUTE_IN_MILLIS) - tolerance) { workingEvents.add(event); }
-             * else if (event.getDateTime().getTime() > lastTick.getTime()) { //
-             * stop iterating when next news event more that 1 min // ahead //
-             * to speed up processing break; } } }
-             * 
-             * if (workingEvents.size() > 0) { if (debug)
-             * console.getOut().println("Working events found: " +
-             * workingEvents.size() + "  - news release time: " +
-             * workingEvents.get(0).getDateTime());
-             * 
-             * for (NewsEvent event : workingEvents) { if (event.actual != null
-             * && event.previous != null) { double change = (event.actual -
-             * event.previous) / event.previous ((event.previous < 0) ? -1 : 1);
-             * event.setChange(change); // calculating change in %
-             * event.setChangePercentage(change * 100); }
-             * 
-             * Tick lastTick = LastTickMap.get(event.getPair());
-             * 
-             * long prevBarTime = history.getPreviousBarStart(Period.ONE_MIN,
-             * lastTick.getTime());
-             * 
-             * Instrument instrument = Instrument.fromString(event.getPair());
-             * int INVESTIGATE_BARS = 2; // getting 2 ONE_MIN bars from history
-             * List<IBar> bars = history.getBars(instrument, Period.ONE_MIN,
-             * OfferSide.BID, history.getTimeForNBarsBack(Period.ONE_MIN,
-             * prevBarTime, INVESTIGATE_BARS), prevBarTime);
-             * 
-             * double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
-             * double previousCandleChangePips = 0; if (bars.size() > 0) { //
-             * looking start price and price change 1 min after news Pips //
-             * release time closed bar
-             * event.setStartPrice(bars.get(0).getClose());
-             * previousCandleChangePips = (bars.get(0).getClose() -
-             * bars.get(0).getOpen()) * Math.pow(10, instrument.getPipScale());
-             * bars.remove(0); double changePips = 0;
-             * 
-             * for (IBar bar : bars) { if (bar.getLow() < priceMin) priceMin =
-             * bar.getLow(); if (bar.getHigh() > priceMax) priceMax =
-             * bar.getHigh(); changePips = (bar.getClose() -
-             * event.getStartPrice()) * Math.pow(10, instrument.getPipScale());
-             * } event.setChangePips(changePips);
-             * event.setPreviousCandleChangePips(previousCandleChangePips); }
-             * 
-             * if (debug) console.getOut().println("Working news event found: "
-             * + event); } // removing processed news events from workingEvents
-             * list & // newsSortedByTime to speed up processing
-             * newsSortedByTime.removeAll(workingEvents); workingEvents.clear();
-             * }
-             */
+            // compiling: parsed and DST corrected rows of all currencies
+            final CompiledNewsCalendar compiled = new CompiledNewsCalendar();
+            createNewsParser().parse(filename, event -> {
+                correctDaylightSaving(event);
+                compiled.add(event);
+            });
+
+            try {
+                cache.write(compiled);
+                if (debug)
+                    console.getOut().println("Compiled news calendar saved to " + cache.getCacheFile());
+            } catch (IOException e) {
+                console.getErr().println("Can't save compiled news calendar: " + e.getMessage());
+            }
 
+            return compiled;
         }
 
-        public void investigateNewApproach() throws JFException {
-            main.sortNewsByTime();
-            // new approach
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-            Date startDate;
-            try {
-                // start date for instruments could be from 01/01/2005
-                startDate = sdf.parse("01/01/2004 00:00:00");
-            } catch (ParseException e) {
-                throw new JFException(e);
+        // returns pair of the strategy instruments the currency news affects
+        // or null
+        private String getTradedPair(String currency) {
+            String pair = pairsMap.get(currency);
+
+            if (pair == null)
+                return null;// it might be more currencies than expected
+
+            // use only news for the pair from strategy instruments
+            // Filtering by instrument
+            for (String sInstrument : instruments) {
+
+                if (pair.equals(sInstrument)) {
+                    // if (debug)
+                    // console.getOut().println("Event added for " + pair +
+                    // " Event:" + event.toString());
+
+                    return pair;
+                }
             }
 
-            for (NewsEvent event : newsSortedByTime) {
-                // avoid very old news
-                if (event.getDateTime().getTime() < startDate.getTime())
-                    continue;
+            return null;
+        }
 
-                if (event.getPrevious() != null && event.getPrevious() != 0 && event.getActual() != null && event.getActual() != 0) {
+        private boolean acceptNewsEvent(NewsEvent event) {
 
-                    // Analyze only meaningful news
+            String pair = getTradedPair(event.getCurrency());
 
-                    double change = (event.actual - event.previous) / event.previous * ((event.previous < 0) ? -1 : 1);
-                    event.setChange(change);
-                    // calculating change in %
-                    event.setChangePercentage(change * 100);
+            if (pair == null)
+                return false;
+
+            event.setPair(pair);
+
+            // filtering by time - avoid old news
+            correctDaylightSaving(event);
+
+            if (TradeOrInvestigate) {// while trading avoid old news
+                if (!(marketState.getLastTickTime() < event.getDateTime().getTime()))
+                    return false;
+            }
+
+            indexNewsEvent(event);
+            return true;
+        }
+
+        // compiled calendar rows are DST corrected already, news events are
+        // created only for the rows which pass filtering
+        private NewsEvent acceptCompiledNewsEvent(CompiledNewsCalendar calendar, int i) {
+
+            String pair = getTradedPair(calendar.getCurrency(i));
+
+            if (pair == null)
+                return null;
+
+            if (TradeOrInvestigate) {// while trading avoid old news
+                if (!(marketState.getLastTickTime() < calendar.getTime(i)))
+                    return null;
+            }
+
+            NewsEvent event = calendar.toNewsEvent(i);
+            event.setPair(pair);
+
+            indexNewsEvent(event);
+            return event;
+        }
+
+        private void indexNewsEvent(NewsEvent event) {
+            String pair = event.getPair();
+            String key = event.getCurrency() + " " + event.getTitle();
+            List<NewsEvent> byTitleList = byTitleMap.get(key);
+
+            if (byTitleList == null) {
+                byTitleList = new ArrayList<>();
+            }
+
+            byTitleList.add(event);
+            byTitleMap.put(key, byTitleList);
+
+            long timeKey = event.getDateTime().getTime();
+
+            List<NewsEvent> byTimeList = byTimeMap.get(timeKey);
+            if (byTimeList == null) {
+                byTimeList = new ArrayList<>();
+            }
+            byTimeList.add(event);
+            byTimeMap.put(timeKey, byTimeList);
+
+            List<NewsEvent> byPairList = byPairMap.get(pair);
+            if (byPairList == null) {
+                byPairList = new ArrayList<>();
+            }
+
+            byPairList.add(event);
+
+            // put news event to the charts
+            if (showNewsOnChart) {
+                IChart chart = IChartMap.get(pair);
+
+                if (chart != null) {
+                    Date dateTime = event.getDateTime();
+                    IChartObjectFactory factory = chart.getChartObjectFactory();
+                    IVerticalLineChartObject newsLine = factory.createVerticalLine(event.toString(), dateTime.getTime());
+                    newsLine.setColor(java.awt.Color.RED);
+                    newsLine.setMenuEnabled(false);
+                    newsLine.setShowLabel(true);
+                    newsLine.setText(event.toString());
+                    chart.add(newsLine);
+                }
+            }
+        }
+
+        private void sortNewsByTime() {
+            if (newsSortedByTime == null) {
+                newsSortedByTime = new ArrayList<>(newsEvents.size());
+                newsSortedByTime.addAll(newsEvents);
+                Collections.sort(newsSortedByTime);
+                if (debug)
+                    console.getOut().println("sortNewsByTime() - OK ");
+            }
+        }
+
+        private void buildNewsCalendar() {
+            if (newsCalendar == null) {
+                newsCalendar = new NewsCalendar(newsEvents);
+                if (debug)
+                    console.getOut().println("buildNewsCalendar() - OK, pairs: " + newsCalendar.getPairs().length);
+            }
+        }
+
+        LinkedHashMap<String, List<NewsEvent>> workingNewsMap = new LinkedHashMap<>();
+        // release and breakout expiry timers by pair index of the news calendar
+        private TimingWheel.Timer[] releaseTimers = null;
+        private TimingWheel.Timer[] expiryTimers = null;
+        private final List<NewsEvent> dueEvents = new ArrayList<>();
+
+        private void scheduleReleases() {
+            int pairs = newsCalendar.getPairs().length;
+            releaseTimers = new TimingWheel.Timer[pairs];
+            expiryTimers = new TimingWheel.Timer[pairs];
+            for (int p = 0; p < pairs; p++) {
+                scheduleRelease(p);
+            }
+        }
+
+        // the pair is woken up secondsBeforeNews seconds before its next release
+        private void scheduleRelease(final int p) {
+            timingWheel.cancel(releaseTimers[p]);
+            releaseTimers[p] = null;
+            long releaseTime = newsCalendar.nextReleaseTime(p);
+            if (releaseTime != Long.MAX_VALUE)
+                releaseTimers[p] = timingWheel.schedule(releaseTime - secondsBeforeNews * 1000, time -> onReleaseTimer(p, time));
+        }
+
+        private void onReleaseTimer(int p, long time) throws JFException {
+            releaseTimers[p] = null;
+            Instrument instrument = newsCalendar.getInstrument(p);
+
+            // looking for working news events (or several events on the same
+            // time) secondsBeforeNews seconds before news release
+            dueEvents.clear();
+            newsCalendar.collectUpcoming(p, time, secondsBeforeNews * 1000, dueEvents);
+            if (instrument == null || !marketState.hasTick(instrument) || dueEvents.isEmpty()) {
+                newsCalendar.retire(dueEvents);
+                scheduleRelease(p);
+                return;
+            }
+
+            if (debug)
+                for (NewsEvent event : dueEvents)
+                    console.getOut().println("Trading news release: " + event.toString());
+
+            workingEvents.addAll(dueEvents);
+            if (workingEvents.size() > 1)
+                Collections.sort(workingEvents);
+
+            workingNewsMap = new LinkedHashMap<>();
+
+            for (NewsEvent event : workingEvents) {
+                List<NewsEvent> newsByPair = workingNewsMap.get(event.getPair());
+                if (newsByPair == null) {
+                    newsByPair = new ArrayList<>();
+                }
+                newsByPair.add(event);
+                workingNewsMap.put(event.getPair(), newsByPair);
+            }
+
+            if (closeOnNewEvent) {
+                closeOpenOrders();
+            }
+
+            if (marketOrders) {
+                // in case of market orders break-out might be absent - so
+                // remove working news on secondsAfterNews time
+                timingWheel.cancel(expiryTimers[p]);
+                final String pair = newsCalendar.getPairs()[p];
+                expiryTimers[p] = timingWheel.schedule(dueEvents.get(0).getDateTime().getTime() + 1000 * cancellAfterSeconds,
+                        expiry -> retireWorkingEvents(pair));
+            }
+
+            openWorkingOrders(time);
+        }
+
+        private void retireWorkingEvents(String pair) {
+            List<NewsEvent> events = workingNewsMap.remove(pair);
+            int p = newsCalendar.indexOf(pair);
+            if (events != null) {
+                newsCalendar.retire(events);
+                workingEvents.removeAll(events);
+            }
+            timingWheel.cancel(expiryTimers[p]);
+            expiryTimers[p] = null;
+            scheduleRelease(p);
+        }
+
+        public void trading() throws JFException {
+            // 1. News calendar pairs are woken up by the timing wheel
+            // secondsBeforeNews seconds before their releases
+            // 2. On news release time minus beforeSeconds open stop orders
+            // 3. Market orders wait here for a breakout until
+            // cancellAfterSeconds after the release
+            // 4. On session end or another news event close open orders
+
+            buildNewsCalendar();
+            if (releaseTimers == null)
+                scheduleReleases();
+
+            if (marketOrders && !workingNewsMap.isEmpty())
+                openWorkingOrders(timingWheel.getTime());
+        }
+
+        private void openWorkingOrders(long time) throws JFException {
+            if (debug)
+                console.getOut().println("Working events found: " + workingEvents.size() + "  - news release time: "
+                        + workingEvents.get(0).getDateTime());
+
+            List<String> retired = null;
+
+            for (Map.Entry<String, List<NewsEvent>> entry : workingNewsMap.entrySet()) {
+                String pair = entry.getKey();
+                Instrument instrument = Instrument.fromString(pair);
+
+                long prevBarTime = history.getPreviousBarStart(Period.ONE_MIN, time);
+                int INVESTIGATE_BARS = numberOfCandles;
+                // getting 1 min bars from history
+                List<IBar> barsBid = history.getBars(instrument, Period.ONE_MIN, OfferSide.BID,
+                        history.getTimeForNBarsBack(Period.ONE_MIN, prevBarTime, INVESTIGATE_BARS), prevBarTime);
+                List<IBar> barsAsk = history.getBars(instrument, Period.ONE_MIN, OfferSide.BID,
+                        history.getTimeForNBarsBack(Period.ONE_MIN, prevBarTime, INVESTIGATE_BARS), prevBarTime);
+
+                double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
+
+                if (barsAsk.size() > 0) {
+                    // looking min/max price 5 min after news release time
+
+                    for (IBar bar : barsAsk) {
+                        if (bar.getHigh() > priceMax)
+                            priceMax = bar.getHigh();
+                    }
+                }
+
+                if (barsBid.size() > 0) {
+                    // looking min/max price 5 min after news release time
+                    for (IBar bar : barsBid) {
+                        if (bar.getLow() < priceMin)
+                            priceMin = bar.getLow();
+                    }
+                }
+
+                if (debug)
+                    console.getOut().println("Preparing orders for news event on: " + pair);
+
+                if (marketOrders) {
+                    // open market orders on break-out, the expiry timer
+                    // retires the events when there is none
+                    if (isSpreadOK(instrument) && checkBreakoutAndOpenOrders(instrument, priceMin, priceMax)) {
+                        if (retired == null)
+                            retired = new ArrayList<>();
+                        retired.add(pair);
+                    }
+                } else {
+
+                    if (useBidOfferOrders) {
+                        placeBidOfferOrders(instrument, priceMin, priceMax);
+                    } else if (usePendingOrders) {
+                        openPendingOrders(instrument, priceMin, priceMax);
+                    }
+
+                    if (retired == null)
+                        retired = new ArrayList<>();
+                    retired.add(pair);
+                }
+            }
+
+            // removing processed news events from workingEvents list and
+            // waiting for the next releases of their pairs
+            if (retired != null)
+                for (String pair : retired)
+                    retireWorkingEvents(pair);
+        }
+
+        public boolean isSpreadOK(Instrument instrument) {
+            double spreadPip = (marketState.getAsk(instrument) - marketState.getBid(instrument)) / instrument.getPipValue();
+            boolean result = spreadPip <= SPREAD;
+
+            if (!result && debug)
+                console.getOut().println("Spread is too high");
+
+            return result;
+        }
+
+        public void breakEven() throws JFException {
+            if (moveToBreakeven)
+                if (ActiveOrders.size() > 0) {
+
+                    for (IOrder order : ActiveOrders) {
+                        double lockLevelPips = lockLevel / 10;
+
+                        if (order.getProfitLossInPips() >= lockLevelPips) {
+
+                            double open = order.getOpenPrice();
+                            double breakEven;
+
+                            if (order.isLong()) {
+                                breakEven = open + priceMath.wholePipsToPrice(lockPoints, order.getInstrument());
+                            } else {
+                                breakEven = open - priceMath.wholePipsToPrice(lockPoints, order.getInstrument());
+                            }
+
+                            breakEven = round(breakEven, order.getInstrument());
+
+                            if (order.getStopLossPrice() != breakEven)
+                                order.setStopLossPrice(breakEven);
+                        }
+                    }
+                }
+        }
+
+        public void placeBidOfferOrders(Instrument instrument, double priceMin, double priceMax) throws JFException {
+            long lastTickTime = marketState.getTime(instrument);
+
+            double gapInPrice = round(priceMath.wholePipsToPrice(GAP, instrument), instrument);
+            double stepInPrice = round(priceMath.wholePipsToPrice(STEP, instrument), instrument);
+            double initialPriceLevelForSell = priceMin - gapInPrice;
+            double initialPriceLevelForBuy = priceMax + gapInPrice;
+
+            if (debug)
+                console.getOut().println("priceMin=" + priceMin + " priceMax=" + priceMax + " initialPriceSell=" + initialPriceLevelForSell
+                        + " initialPriceBuy=" + initialPriceLevelForBuy);
+
+            long cancelTime = lastTickTime + 1000 * cancellAfterSeconds;
+            LadderSubmitter.Ladder ladder = pipelinedOrders ? ladderSubmitter.newLadder(instrument) : null;
+
+            buildLadder(sellLadder, instrument, initialPriceLevelForSell, stepInPrice, false);
+            buildLadder(buyLadder, instrument, initialPriceLevelForBuy, stepInPrice, true);
+
+            for (int i = 0; i < numberOfOrders; i++) {
+                if (debug)
+                    console.getOut().println("Sell lot=" + sellLadder.lots[i] + " priceSell=" + round(sellLadder.prices[i], instrument));
+
+                placeOrder(ladder, IEngine.OrderCommand.PLACE_OFFER, instrument, sellLadder.lots[i], sellLadder.prices[i], 0, 0, cancelTime,
+                        "OFFER_" + (i + 1));
+
+                if (debug)
+                    console.getOut().println("Buy lot=" + buyLadder.lots[i] + " priceBuy=" + round(buyLadder.prices[i], instrument));
+
+                placeOrder(ladder, IEngine.OrderCommand.PLACE_BID, instrument, buyLadder.lots[i], buyLadder.prices[i], 0, 0, cancelTime,
+                        "BID_" + (i + 1));
+            }
+
+        }
+
+        private final LadderLevels buyLadder = new LadderLevels();
+        private final LadderLevels sellLadder = new LadderLevels();
+
+        // prices, stop losses, take profits and lots of numberOfOrders levels
+        // of one side
+        private void buildLadder(LadderLevels levels, Instrument instrument, double initialPrice, double stepInPrice, boolean isLong)
+                throws JFException {
+            levels.ensureCapacity(numberOfOrders);
+
+            double stopLossDistance = priceMath.wholePipsToPrice(SL, instrument);
+            double takeProfitDistance = priceMath.wholePipsToPrice(TP, instrument);
+
+            for (int i = 0; i < numberOfOrders; i++) {
+                double price = priceMath.ladderLevel(initialPrice, stepInPrice, i, isLong);
+                levels.prices[i] = price;
+                levels.stopLosses[i] = isLong ? price - stopLossDistance : price + stopLossDistance;
+                levels.takeProfits[i] = isLong ? price + takeProfitDistance : price - takeProfitDistance;
+            }
+
+            positionSizer.lotsForLadder(instrument, isLong, levels.prices, levels.stopLosses, levels.lots, numberOfOrders);
+        }
+
+        public boolean checkBreakoutAndOpenOrders(Instrument instrument, double priceMin, double priceMax) throws JFException {
+            // open Sell/Buy STOP orders
+            long lastTickTime = marketState.getTime(instrument);
+
+            double gapInPrice = round(priceMath.wholePipsToPrice(GAP, instrument), instrument);
+            double stepInPrice = round(priceMath.wholePipsToPrice(STEP, instrument), instrument);
+            double initialPriceLevelForSell = priceMin - gapInPrice;
+            double initialPriceLevelForBuy = priceMax + gapInPrice;
+
+            double lot, stopLossPrice, takeProfitPrice;
+
+            IEngine.OrderCommand command;
+
+            double ask = marketState.getAsk(instrument);
+            double bid = marketState.getBid(instrument);
+
+            boolean breakout = false;
+            long cancelTime = lastTickTime + 1000 * cancellAfterSeconds;
+
+            if (ask >= initialPriceLevelForBuy) {
+                // Up breakout - open buy
+                breakout = true;
+                stopLossPrice = initialPriceLevelForSell;
+                command = IEngine.OrderCommand.BUY;
+                lot = getPositionSize(instrument, ask, stopLossPrice, command);
+
+                // if(debug)
+                console.getOut().println(instrument.getName() + " Up breakout - open Buy lot=" + lot + " open price=" + ask);
+
+                OpenOrder(command, instrument, lot, ask, 0, 0, 0, "UpBreakoutBUY");
+
+            } else if (bid <= initialPriceLevelForSell) {
+                // Down breakout - open sell
+                breakout = true;
+                stopLossPrice = initialPriceLevelForBuy;
+                command = IEngine.OrderCommand.SELL;
+                lot = getPositionSize(instrument, bid, stopLossPrice, command);
+
+                // if(debug)
+                console.getOut()
+                        .println(instrument.getName() + " Down breakout - open Sell lot=" + lot + " open price=" + bid);
+
+                OpenOrder(command, instrument, lot, bid, 0, 0, 0, "DownBreakoutSell");
+            }
+
+            return breakout;
+        }
+
+        public void openPendingOrders(Instrument instrument, double priceMin, double priceMax) throws JFException {
+            // open Sell & Buy STOP orders
+            long lastTickTime = marketState.getTime(instrument);
+
+            double gapInPrice = round(priceMath.wholePipsToPrice(GAP, instrument), instrument);
+            double stepInPrice = round(priceMath.wholePipsToPrice(STEP, instrument), instrument);
+            double initialPriceLevelForSell = priceMin - gapInPrice;
+            double initialPriceLevelForBuy = priceMax + gapInPrice;
+
+            double lot, stopLossPrice, takeProfitPrice;
+
+            IEngine.OrderCommand command;
+
+            long cancelTime = lastTickTime + 1000 * cancellAfterSeconds;
+            LadderSubmitter.Ladder ladder = pipelinedOrders ? ladderSubmitter.newLadder(instrument) : null;
+
+            buildLadder(buyLadder, instrument, initialPriceLevelForBuy, stepInPrice, true);
+            buildLadder(sellLadder, instrument, initialPriceLevelForSell, stepInPrice, false);
+
+            // open buy stop orders
+            command = IEngine.OrderCommand.BUYSTOP;
+
+            for (int i = 0; i < numberOfOrders; i++) {
+                double priceBuy = buyLadder.prices[i];
+
+                if (debug)
+                    console.getOut().println("Buy lot=" + buyLadder.lots[i] + " priceBuy=" + priceBuy);
+
+                placeOrder(ladder, command, instrument, buyLadder.lots[i], priceBuy, buyLadder.stopLosses[i], buyLadder.takeProfits[i],
+                        cancelTime, "BUYSTOP_" + (i + 1) + " requested price:" + priceBuy);
+            }
+
+            // open sell stop orders
+            command = IEngine.OrderCommand.SELLSTOP;
+
+            for (int i = 0; i < numberOfOrders; i++) {
+                double priceSell = sellLadder.prices[i];
+
+                if (debug)
+                    console.getOut().println("Sell lot=" + sellLadder.lots[i] + " priceSell=" + priceSell);
+
+                placeOrder(ladder, command, instrument, sellLadder.lots[i], priceSell, sellLadder.stopLosses[i],
+                        sellLadder.takeProfits[i], cancelTime, "SELLSTOP_" + (i + 1) + " requested price:" + priceSell);
+            }
+
+        }
+
+        // ladder levels are fired without waiting when the ladder is pipelined
+        private void placeOrder(LadderSubmitter.Ladder ladder, IEngine.OrderCommand command, Instrument instrument, double lot,
+                double price, double stopLoss, double takeProfit, long goodTillTime, String comment) {
+            if (ladder != null) {
+                ladderSubmitter.submit(ladder, command, instrument, lot, price, stopLoss, takeProfit, goodTillTime, comment);
+            } else {
+                OpenOrder(command, instrument, lot, price, stopLoss, takeProfit, goodTillTime, comment);
+            }
+        }
+
+        private boolean isLongOrder(IEngine.OrderCommand orderCommand) {
+            return orderCommand == IEngine.OrderCommand.BUYSTOP || orderCommand == IEngine.OrderCommand.BUYSTOP_BYBID
+                    || orderCommand == IEngine.OrderCommand.BUYLIMIT || orderCommand == IEngine.OrderCommand.BUYLIMIT_BYBID
+                    || orderCommand == IEngine.OrderCommand.BUY || orderCommand == IEngine.OrderCommand.PLACE_BID;
+        }
+
+        private double getPositionSize(Instrument instrument, double entryPrice, double stopLossPrice, IEngine.OrderCommand orderCmd)
+                throws JFException {
+            return positionSizer.getPositionSize(instrument, entryPrice, stopLossPrice, isLongOrder(orderCmd));
+        }
+
+        // this method should be called on every tick
+        public void investigate() throws JFException {
+            // FIXME idea - investigate speed fix
+            // start investigate at the end of the investigation period
+            // walk by news events one by one
+            // take the time of news release directly from news
+            // +1 min from that time and get two ONE_MIN candles back in time
+
+            // 1. Sort by news release time (several news could be on the same
+            // time, but for different instruments or even the same instrument)
+            // FIXME speed up idea // 2. Wait onTick data 2 min after news
+            // release for upcoming news
+            // event/events
+            // 3. On news release +1 min take 2 bars back for investigation
+            // 4. Save news change, start price , min/max price after news
+            // release to NewsEvent object
+            // 5. onStop - save all news infos by it's currency/title to the CSV
+            // file
+
+            sortNewsByTime();
+
+            // old approach
+            /*
+             * if (workingEvents.size() == 0) { // looking for working news
+             * events ( or several events on the // same time) for (NewsEvent
+             * event : newsSortedByTime) { Tick lastTick =
+             * LastTickMap.get(event.getPair());
+             * 
+             * // 5 second tolerance long tolerance = 5000; long
+             * minutesAfterNewsRelease = 5; long prevBarTime =
+             * history.getPreviousBarStart(Period.ONE_MIN, lastTick.getTime());
+             * // collecting working news events minutesAfterNewsRelease if
+             * (prevBarTime > event.getDateTime().getTime() && (prevBarTime -
+             * event.getDateTime().getTime()) <= (minutesAfterNewsRelease *
+             * ONE_MINUTE_IN_MILLIS) && (prevBarTime -
+             * event.getDateTime().getTime()) >= (minutesAfterNewsRelease *
+             * ONE_MINUTE_IN_MILLIS) - tolerance) { workingEvents.add(event); }
+             * else if (event.getDateTime().getTime() > lastTick.getTime()) { //
+             * stop iterating when next news event more that 1 min // ahead //
+             * to speed up processing break; } } }
+             * 
+             * if (workingEvents.size() > 0) { if (debug)
+             * console.getOut().println("Working events found: " +
+             * workingEvents.size() + "  - news release time: " +
+             * workingEvents.get(0).getDateTime());
+             * 
+             * for (NewsEvent event : workingEvents) { if (event.actual != null
+             * && event.previous != null) { double change = (event.actual -
+             * event.previous) / event.previous ((event.previous < 0) ? -1 : 1);
+             * event.setChange(change); // calculating change in %
+             * event.setChangePercentage(change * 100); }
+             * 
+             * Tick lastTick = LastTickMap.get(event.getPair());
+             * 
+             * long prevBarTime = history.getPreviousBarStart(Period.ONE_MIN,
+             * lastTick.getTime());
+             * 
+             * Instrument instrument = Instrument.fromString(event.getPair());
+             * int INVESTIGATE_BARS = 2; // getting 2 ONE_MIN bars from history
+             * List<IBar> bars = history.getBars(instrument, Period.ONE_MIN,
+             * OfferSide.BID, history.getTimeForNBarsBack(Period.ONE_MIN,
+             * prevBarTime, INVESTIGATE_BARS), prevBarTime);
+             * 
+             * double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
+             * double previousCandleChangePips = 0; if (bars.size() > 0) { //
+             * looking start price and price change 1 min after news Pips //
+             * release time closed bar
+             * event.setStartPrice(bars.get(0).getClose());
+             * previousCandleChangePips = (bars.get(0).getClose() -
+             * bars.get(0).getOpen()) * Math.pow(10, instrument.getPipScale());
+             * bars.remove(0); double changePips = 0;
+             * 
+             * for (IBar bar : bars) { if (bar.getLow() < priceMin) priceMin =
+             * bar.getLow(); if (bar.getHigh() > priceMax) priceMax =
+             * bar.getHigh(); changePips = (bar.getClose() -
+             * event.getStartPrice()) * Math.pow(10, instrument.getPipScale());
+             * } event.setChangePips(changePips);
+             * event.setPreviousCandleChangePips(previousCandleChangePips); }
+             * 
+             * if (debug) console.getOut().println("Working news event found: "
+             * + event); } // removing processed news events from workingEvents
+             * list & // newsSortedByTime to speed up processing
+             * newsSortedByTime.removeAll(workingEvents); workingEvents.clear();
+             * }
+             */
+
+        }
+
+        public void investigateNewApproach() throws JFException {
+            main.sortNewsByTime();
+            // new approach
+            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+            Date startDate;
+            try {
+                // start date for instruments could be from 01/01/2005
+                startDate = sdf.parse("01/01/2004 00:00:00");
+            } catch (ParseException e) {
+                throw new JFException(e);
+            }
+
+            if (streamingInvestigationCsv && investigationSink == null)
+                investigationSink = new InvestigationCsvSink(byTimeMap);
+
+            if (batchedInvestigation) {
+                new InvestigationEngine(ONE_MINUTE_IN_MILLIS, investigationSink).investigate(newsSortedByTime, startDate.getTime());
+            } else {
+                investigateEventByEvent(startDate);
+            }
+
+            if (investigationSink != null)
+                investigationSink.flush();
+
+            if (releaseStatistics)
+                new ReleaseStatistics(statisticsPeriod).compute(byTitleMap, startDate.getTime(), destFileName + "release-statistics.csv");
+
+            if (tickLadderReplay)
+                new LadderReplay(replayHoldMinutes).replay(newsSortedByTime, startDate.getTime(), destFileName + "ladder-replay.csv");
+
+            if (ladderOptimiser)
+                new LadderOptimiser(replayHoldMinutes).optimise(newsSortedByTime, startDate.getTime(),
+                        destFileName + "ladder-optimisation.csv");
+        }
+
+        private void investigateEventByEvent(Date startDate) throws JFException {
+
+            for (NewsEvent event : newsSortedByTime) {
+                // avoid very old news
+                if (event.getDateTime().getTime() < startDate.getTime())
+                    continue;
+
+                if (event.hasPreviousAndActual()) {
+
+                    // Analyze only meaningful news
+
+                    double change = (event.actual - event.previous) / event.previous * ((event.previous < 0) ? -1 : 1);
+                    event.setChange(change);
+                    // calculating change in %
+                    event.setChangePercentage(change * 100);
+
+                    // bar on news time
+                    int minutesAfterEvent = 2;
+                    long endBarTime = history.getPreviousBarStart(Period.ONE_MIN,
+                            event.getDateTime().getTime() + minutesAfterEvent * this.ONE_MINUTE_IN_MILLIS);
+
+                    Instrument instrument = Instrument.fromString(event.getPair());
+                    int INVESTIGATE_BARS = minutesAfterEvent + 1; // +1 bar
+                                                                    // before
+                                                                    // news to
+                                                                    // analyze
+                                                                    // start
+                                                                    // price
+
+                    long startBarTime = history.getTimeForNBarsBack(Period.ONE_MIN, endBarTime, INVESTIGATE_BARS);
+                    List<IBar> bars = history.getBars(instrument, Period.ONE_MIN, OfferSide.BID, startBarTime, endBarTime);
+
+                    // if (debug)
+                    // console.getOut().println("event time:" +
+                    // sdf.format(event.getDateTime())+ " start bar time: " +
+                    // sdf.format(new Date(startBarTime))+" end bar time:
+                    // "+sdf.format(new Date(endBarTime)));
+
+                    double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
+                    double previousCandleChangePips = 0;
+
+                    if (bars.size() > 0) {
+                        // looking start price and price change
+                        // minutesAfterEvent min after news, Pips
+                        // release time closed bar
+                        event.setStartPrice(bars.get(0).getClose());
+                        previousCandleChangePips = (bars.get(0).getClose() - bars.get(0).getOpen())
+                                * Math.pow(10, instrument.getPipScale());
+                        bars.remove(0);
+                        Double changePips = null;
+
+                        for (IBar bar : bars) {
+                            if (bar.getLow() < priceMin)
+                                priceMin = bar.getLow();
+                            if (bar.getHigh() > priceMax)
+                                priceMax = bar.getHigh();
+                        }
+
+                        if (Math.abs(priceMax - event.getStartPrice()) > Math.abs(event.getStartPrice() - priceMin)) {
+                            // gone up
+                            changePips = (priceMax - event.getStartPrice()) * Math.pow(10, instrument.getPipScale());
+
+                        } else {
+                            // gone down
+                            changePips = (priceMin - event.getStartPrice()) * Math.pow(10, instrument.getPipScale());
+                        }
+
+                        event.setChangePips(changePips);
+                        event.setPreviousCandleChangePips(previousCandleChangePips);
+
+                    } else {
+                        console.getOut().println("ERROR: Can't get corrects bars, date: " + event.getDateTime());
+                    }
+
+                    if (investigationSink != null)
+                        investigationSink.investigated(event);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public void writeInvestigationsToCSV() throws JFException {
+
+            if (investigationSink != null) {
+                investigationSink.finish(destFileName);
+                investigationSink = null;
+                return;
+            }
+
+            for (String key : byTitleMap.keySet()) {
+
+                List<NewsEvent> events = byTitleMap.get(key);
+                /// NewsEvent eve = events.get(0);
+                // investigating only USD/CAD for now
+                // if (!eve.getCurrency().equals("USD") &&
+                // !eve.getCurrency().equals("CAD"))
+                // continue;
+
+                // sorting by change in %
+                Collections.sort(events, new Comparator<NewsEvent>() {
+                    @Override
+                    public int compare(NewsEvent event1, NewsEvent event2) {
+                        if (event1 != null && event2 != null) {
+
+                            if (event1.getChangePips() != null && event2.getChangePips() != null) {
+                                Double eve1Pips = Math.abs(event1.getChangePips());
+                                Double eve2Pips = Math.abs(event2.getChangePips());
+                                return eve2Pips.compareTo(eve1Pips);
+                            }
+                            else
+                                return 1;
+                        } else
+                            return 1;
+                    }
+                });
+
+                String fullName = destFileName + key + ".csv";
+                Path path = Paths.get(fullName);
+
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
+                    for (NewsEvent event : events) {
+                        List<NewsEvent> sameTimeList = byTimeMap.get(event.getDateTime().getTime());
+
+                        if (sameTimeList.size() == 1) {
+                            if (NewsTraderInvestigation.isMeaningful(event)) {
+                                writer.write(event.toString() + "\n");
+                            }
+                        } else {
+                            // several news events at the same time
+                            //if (NewsTraderInvestigation.isMeaningful(sameTimeList)) {
+                            //    writer.write(NewsTraderInvestigation.toString(event, sameTimeList) + "\n");
+                            //}
+                            if (NewsTraderInvestigation.isMeaningful(sameTimeList)) {
+                                // main news event goes first
+                                writer.write(event.toString() + "\n");
+
+                                for (NewsEvent sameTimeEvent : sameTimeList) {
+                                    if (sameTimeEvent == event)
+                                        continue;
+                                    else
+                                        writer.write(sameTimeEvent.toString() + "\n");
+                                }
+                            }
+                        }
+                    }
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+                try {
+                    FileChannel file = FileChannel.open(path);
+
+                    if (file.size() == 0) {
+                        path.toFile().delete();
+                    }
+
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes investigation results while the investigation runs. Once all news
+     * events released at the same time have been investigated their rows are
+     * formatted and appended to a spill file, only the sort key, position and
+     * length of every row block is kept in memory. On finish the blocks of every
+     * title are sorted by absolute change in pips and copied to the title's CSV
+     * file; titles without meaningful events get no file.
+     */
+    class InvestigationCsvSink {
+
+        private final Map<Long, List<NewsEvent>> byTimeMap;
+        private final Map<String, TitleRows> byTitle = new LinkedHashMap<>();
+        private final CsvRowFormatter formatter = new CsvRowFormatter();
+        private final StringBuilder block = new StringBuilder(512);
+
+        private File spillFile;
+        private java.io.OutputStream spill;
+        private long spillPosition;
+
+        private long pendingTime = Long.MIN_VALUE;
+
+        public InvestigationCsvSink(Map<Long, List<NewsEvent>> byTimeMap) {
+            this.byTimeMap = byTimeMap;
+        }
+
+        /**
+         * Called in release time order for every investigated event.
+         */
+        public void investigated(NewsEvent event) throws JFException {
+            long time = event.getDateTime().getTime();
+            if (time != pendingTime) {
+                flush();
+                pendingTime = time;
+            }
+        }
+
+        /**
+         * Writes rows of the events released at the last investigated time.
+         */
+        public void flush() throws JFException {
+            if (pendingTime == Long.MIN_VALUE)
+                return;
+
+            List<NewsEvent> sameTimeList = byTimeMap.get(pendingTime);
+            pendingTime = Long.MIN_VALUE;
+
+            if (sameTimeList == null)
+                return;
+
+            if (sameTimeList.size() == 1) {
+                NewsEvent event = sameTimeList.get(0);
+                if (NewsTraderInvestigation.isMeaningful(event))
+                    writeBlock(event, sameTimeList);
+            } else if (NewsTraderInvestigation.isMeaningful(sameTimeList)) {
+                // several news events at the same time, every event goes
+                // to its title's file first followed by the others
+                for (NewsEvent event : sameTimeList)
+                    writeBlock(event, sameTimeList);
+            }
+        }
+
+        private void writeBlock(NewsEvent mainEvent, List<NewsEvent> sameTimeList) throws JFException {
+            block.setLength(0);
+            formatter.append(block, mainEvent).append('\n');
+            for (NewsEvent event : sameTimeList) {
+                if (event != mainEvent)
+                    formatter.append(block, event).append('\n');
+            }
+            byte[] bytes = block.toString().getBytes(StandardCharsets.UTF_8);
+
+            try {
+                if (spill == null) {
+                    spillFile = File.createTempFile("investigations", ".spill");
+                    spillFile.deleteOnExit();
+                    spill = new java.io.BufferedOutputStream(new java.io.FileOutputStream(spillFile), 1 << 16);
+                }
+                spill.write(bytes);
+            } catch (IOException e) {
+                throw new JFException(e.getMessage(), e);
+            }
+
+            String key = mainEvent.getCurrency() + " " + mainEvent.getTitle();
+            TitleRows rows = byTitle.get(key);
+            if (rows == null) {
+                rows = new TitleRows();
+                byTitle.put(key, rows);
+            }
+            Double changePips = mainEvent.getChangePips();
+            rows.add(changePips != null ? Math.abs(changePips) : -1, spillPosition, bytes.length);
+            spillPosition += bytes.length;
+        }
+
+        /**
+         * Writes one CSV file per title into <code>directory</code>.
+         */
+        public void finish(String directory) throws JFException {
+            flush();
+            if (spill == null)
+                return;
+
+            try {
+                spill.close();
+
+                try (FileChannel channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ)) {
+                    java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(1 << 12);
+
+                    for (Map.Entry<String, TitleRows> entry : byTitle.entrySet()) {
+                        TitleRows rows = entry.getValue();
+                        int[] order = rows.sortByKeyDescending();
+                        Path path = Paths.get(directory + entry.getKey() + ".csv");
+
+                        try (java.io.OutputStream out = new java.io.BufferedOutputStream(Files.newOutputStream(path,
+                                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16)) {
+                            for (int i : order) {
+                                if (buffer.capacity() < rows.lengths[i])
+                                    buffer = java.nio.ByteBuffer.allocate(rows.lengths[i]);
+                                buffer.clear();
+                                buffer.limit(rows.lengths[i]);
+
+                                long position = rows.positions[i];
+                                while (buffer.hasRemaining()) {
+                                    if (channel.read(buffer, position + buffer.position()) < 0)
+                                        throw new IOException("Unexpected end of " + spillFile);
+                                }
+                                out.write(buffer.array(), 0, rows.lengths[i]);
+                            }
+                        } catch (IOException ioe) {
+                            ioe.printStackTrace();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new JFException(e.getMessage(), e);
+            } finally {
+                spill = null;
+                byTitle.clear();
+                spillFile.delete();
+            }
+        }
+
+        /**
+         * Sort keys and spill file locations of the row blocks of one title.
+         */
+        class TitleRows {
+            double[] keys = new double[16];
+            long[] positions = new long[16];
+            int[] lengths = new int[16];
+            int count;
+
+            void add(double key, long position, int length) {
+                if (count == keys.length) {
+                    keys = java.util.Arrays.copyOf(keys, count * 2);
+                    positions = java.util.Arrays.copyOf(positions, count * 2);
+                    lengths = java.util.Arrays.copyOf(lengths, count * 2);
+                }
+                keys[count] = key;
+                positions[count] = position;
+                lengths[count] = length;
+                count++;
+            }
+
+            /**
+             * Stable merge sort of the block indexes by key, largest first.
+             */
+            int[] sortByKeyDescending() {
+                int[] order = new int[count];
+                for (int i = 0; i < count; i++)
+                    order[i] = i;
+
+                int[] buffer = new int[count];
+                for (int width = 1; width < count; width *= 2) {
+                    for (int from = 0; from < count - width; from += 2 * width) {
+                        int middle = from + width;
+                        int to = Math.min(from + 2 * width, count);
+                        int left = from, right = middle, k = from;
+
+                        while (left < middle && right < to)
+                            buffer[k++] = keys[order[right]] > keys[order[left]] ? order[right++] : order[left++];
+                        while (left < middle)
+                            buffer[k++] = order[left++];
+                        while (right < to)
+                            buffer[k++] = order[right++];
+
+                        System.arraycopy(buffer, from, order, from, to - from);
+                    }
+                }
+                return order;
+            }
+        }
+    }
+
+    /**
+     * Formats investigation CSV rows like {@link NewsEvent#toString()} with
+     * formatters created once. Not thread safe.
+     */
+    class CsvRowFormatter {
+
+        private static final String SR = ", ";
+
+        private final SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+        private final java.text.DecimalFormat df = new java.text.DecimalFormat("#0.#");
+        private final StringBuffer buffer = new StringBuffer(32);
+        private final java.text.FieldPosition position = new java.text.FieldPosition(0);
+
+        public CsvRowFormatter() {
+            java.text.DecimalFormatSymbols dfs = df.getDecimalFormatSymbols();
+            dfs.setDecimalSeparator('.');
+            df.setDecimalFormatSymbols(dfs);
+        }
+
+        // date time, currency, importance, title, instrument,
+        // changePercentage, previousCandleChangePips, changePips
+        public StringBuilder append(StringBuilder line, NewsEvent event) {
+            buffer.setLength(0);
+            line.append(sdf.format(event.getDateTime(), buffer, position)).append(SR);
+            line.append(event.getCurrency()).append(SR);
+            line.append(event.getImportance(), 0, 1).append(SR);
+            line.append(event.getTitle()).append(SR);
+            line.append(event.getPair()).append(SR);
+
+            if (event.getChangePercentage() != null)
+                appendNumber(line, event.getChangePercentage()).append('%');
+            else
+                line.append('-');
+            line.append(SR);
+
+            Double previousCandleChangePips = event.previousCandleChangePips;
+            if (previousCandleChangePips != null)
+                appendNumber(line, previousCandleChangePips);
+            else
+                line.append('-');
+            line.append(SR);
+
+            if (event.getChangePips() != null)
+                appendNumber(line, event.getChangePips());
+            else
+                line.append('-');
+            return line.append(SR);
+        }
+
+        private StringBuilder appendNumber(StringBuilder line, double value) {
+            buffer.setLength(0);
+            return line.append(df.format(value, buffer, position));
+        }
+    }
+
+    /**
+     * Batched version of the news reaction investigation. News events are cut into
+     * time windows, ONE_MIN bars of every instrument of a window are requested from
+     * history once for the whole window and the price move of every event is then
+     * computed from the loaded bars on a fork-join pool. Results are the same as
+     * of the event by event investigation.
+     */
+    class InvestigationEngine {
+
+        // max time span of the bars requested at once
+        private static final long MAX_WINDOW_SPAN = 7L * 24 * 60 * 60 * 1000;
+        private static final int MINUTES_AFTER_EVENT = 2;
+        private static final int EVENTS_PER_TASK = 64;
+
+        private final long oneMinute;
+        private final InvestigationCsvSink sink;
+        private final ForkJoinPool pool = new ForkJoinPool();
+        private int barRequests;
+
+        public InvestigationEngine(long oneMinute, InvestigationCsvSink sink) {
+            this.oneMinute = oneMinute;
+            this.sink = sink;
+        }
+
+        public void investigate(List<NewsEvent> newsSortedByTime, long startTime) throws JFException {
+            long started = System.currentTimeMillis();
+            int investigated = 0;
+            List<InvestigatedEvent> window = new ArrayList<>();
+
+            try {
+                for (NewsEvent event : newsSortedByTime) {
+                    // avoid very old news
+                    if (event.getDateTime().getTime() < startTime)
+                        continue;
+
+                    if (!event.hasPreviousAndActual())
+                        continue;
+
+                    // Analyze only meaningful news
+                    double change = (event.actual - event.previous) / event.previous * ((event.previous < 0) ? -1 : 1);
+                    event.setChange(change);
+                    // calculating change in %
+                    event.setChangePercentage(change * 100);
+
+                    InvestigatedEvent item = new InvestigatedEvent(event);
+
+                    if (!window.isEmpty() && item.endBarTime - window.get(0).startBarTime > MAX_WINDOW_SPAN) {
+                        investigated += investigateWindow(window);
+                        window.clear();
+                    }
+                    window.add(item);
+                }
+                investigated += investigateWindow(window);
+
+            } finally {
+                pool.shutdown();
+            }
+
+            long elapsed = Math.max(1, System.currentTimeMillis() - started);
+            console.getOut().println("Investigated " + investigated + " news events in " + elapsed + " ms ("
+                    + (investigated * 1000L / elapsed) + " events/s), bar requests: " + barRequests);
+        }
+
+        private int investigateWindow(List<InvestigatedEvent> window) throws JFException {
+            if (window.isEmpty())
+                return 0;
+
+            Map<Instrument, List<InvestigatedEvent>> byInstrument = new LinkedHashMap<>();
+            for (InvestigatedEvent item : window) {
+                List<InvestigatedEvent> list = byInstrument.get(item.instrument);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    byInstrument.put(item.instrument, list);
+                }
+                list.add(item);
+            }
+
+            // loading bars of the whole window for every instrument at once
+            for (Map.Entry<Instrument, List<InvestigatedEvent>> entry : byInstrument.entrySet()) {
+                long from = Long.MAX_VALUE, to = Long.MIN_VALUE;
+                for (InvestigatedEvent item : entry.getValue()) {
+                    from = Math.min(from, item.startBarTime);
+                    to = Math.max(to, item.endBarTime);
+                }
+
+                BarColumns bars = new BarColumns(history.getBars(entry.getKey(), Period.ONE_MIN, OfferSide.BID, from, to));
+                barRequests++;
+
+                for (InvestigatedEvent item : entry.getValue()) {
+                    item.bars = bars;
+                }
+            }
+
+            final InvestigatedEvent[] items = window.toArray(new InvestigatedEvent[window.size()]);
+            pool.invoke(new InvestigateTask(items, 0, items.length));
+
+            for (InvestigatedEvent item : items) {
+                if (item.noBars)
+                    console.getOut().println("ERROR: Can't get corrects bars, date: " + item.event.getDateTime());
+                if (sink != null)
+                    sink.investigated(item.event);
+            }
+
+            return items.length;
+        }
+
+        class InvestigatedEvent {
+            final NewsEvent event;
+            final Instrument instrument;
+            final long startBarTime;
+            final long endBarTime;
+            BarColumns bars;
+            boolean noBars;
+
+            InvestigatedEvent(NewsEvent event) throws JFException {
+                this.event = event;
+                this.instrument = Instrument.fromString(event.getPair());
+                // bar on news time
+                this.endBarTime = history.getPreviousBarStart(Period.ONE_MIN,
+                        event.getDateTime().getTime() + MINUTES_AFTER_EVENT * oneMinute);
+                // +1 bar before news to analyze start price
+                this.startBarTime = history.getTimeForNBarsBack(Period.ONE_MIN, endBarTime, MINUTES_AFTER_EVENT + 1);
+            }
+
+            void investigate() {
+                int from = bars.indexOf(startBarTime);
+                int to = bars.indexOf(endBarTime + 1);
+
+                if (from >= to) {
+                    noBars = true;
+                    return;
+                }
+
+                double pipsMultiplier = priceMath.getPipsMultiplier(instrument);
+                double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
+
+                // looking start price and price change
+                // MINUTES_AFTER_EVENT min after news, Pips
+                // release time closed bar
+                event.setStartPrice(bars.close[from]);
+                double previousCandleChangePips = (bars.close[from] - bars.open[from]) * pipsMultiplier;
+
+                for (int i = from + 1; i < to; i++) {
+                    if (bars.low[i] < priceMin)
+                        priceMin = bars.low[i];
+                    if (bars.high[i] > priceMax)
+                        priceMax = bars.high[i];
+                }
+
+                Double changePips;
+                if (Math.abs(priceMax - event.getStartPrice()) > Math.abs(event.getStartPrice() - priceMin)) {
+                    // gone up
+                    changePips = (priceMax - event.getStartPrice()) * pipsMultiplier;
+                } else {
+                    // gone down
+                    changePips = (priceMin - event.getStartPrice()) * pipsMultiplier;
+                }
+
+                event.setChangePips(changePips);
+                event.setPreviousCandleChangePips(previousCandleChangePips);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        class InvestigateTask extends RecursiveAction {
+            private final InvestigatedEvent[] items;
+            private final int from;
+            private final int to;
+
+            InvestigateTask(InvestigatedEvent[] items, int from, int to) {
+                this.items = items;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= EVENTS_PER_TASK) {
+                    for (int i = from; i < to; i++) {
+                        items[i].investigate();
+                    }
+                } else {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new InvestigateTask(items, from, middle), new InvestigateTask(items, middle, to));
+                }
+            }
+        }
+    }
+
+    /**
+     * Price reaction statistics of every title bucket. Bars after every release
+     * are copied into primitive columns of the title, bars of an instrument are
+     * requested from history once per time window for all titles. Every bucket
+     * is then reduced in a single pass over its columns, buckets in parallel,
+     * into one row of a summary table: percentiles of the absolute move, mean
+     * max excursion up/down and share of meaningful moves for 1/2/5/15 minutes
+     * after the release, median time to the peak and mean reversal from the
+     * peak within 15 minutes.
+     */
+    class ReleaseStatistics {
+
+        private final int[] HORIZON_MINUTES = { 1, 2, 5, 15 };
+        private final double[] PERCENTILES = { 0.5, 0.75, 0.9 };
+        // rows are ordered by the median move of this horizon
+        private static final int SORT_HORIZON = 1;
+        private static final long MAX_WINDOW_SPAN = 7L * 24 * 60 * 60 * 1000;
+
+        private final Period period;
+        private final long interval;
+        // bars after release per horizon, the last horizon is the window
+        private final int[] horizonBars = new int[HORIZON_MINUTES.length];
+        private final int windowBars;
+        private int barRequests;
+        private int missingBars;
+
+        public ReleaseStatistics(Period period) {
+            this.period = period;
+            this.interval = period.getInterval();
+            for (int h = 0; h < HORIZON_MINUTES.length; h++)
+                horizonBars[h] = (int) Math.max(1, HORIZON_MINUTES[h] * 60000L / interval);
+            this.windowBars = horizonBars[horizonBars.length - 1];
+        }
+
+        public void compute(Map<String, List<NewsEvent>> byTitleMap, long startTime, String fileName) throws JFException {
+            long started = System.currentTimeMillis();
+            List<TitleWindows> titles = new ArrayList<>();
+            Map<Instrument, List<long[]>> slotsByInstrument = new LinkedHashMap<>();
+
+            for (Map.Entry<String, List<NewsEvent>> entry : byTitleMap.entrySet()) {
+                TitleWindows title = new TitleWindows(entry.getKey(), entry.getValue().size());
+                int t = titles.size();
+                titles.add(title);
+
+                for (NewsEvent event : entry.getValue()) {
+                    Instrument instrument = event.getPair() != null ? Instrument.fromString(event.getPair()) : null;
+                    long time = event.getDateTime().getTime();
+                    if (instrument == null || time < startTime)
+                        continue;
+
+                    int slot = title.add(instrument);
+                    List<long[]> slots = slotsByInstrument.get(instrument);
+                    if (slots == null) {
+                        slots = new ArrayList<>();
+                        slotsByInstrument.put(instrument, slots);
+                    }
+                    // bar before release, title, slot
+                    slots.add(new long[] { history.getPreviousBarStart(period, time), t, slot });
+                }
+            }
+
+            for (Map.Entry<Instrument, List<long[]>> entry : slotsByInstrument.entrySet())
+                load(entry.getKey(), entry.getValue(), titles);
+
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                pool.invoke(new StatisticsTask(titles.toArray(new TitleWindows[titles.size()]), 0, titles.size()));
+            } finally {
+                pool.shutdown();
+            }
+
+            write(titles, fileName);
+            console.getOut().println("Release statistics of " + titles.size() + " titles in " + (System.currentTimeMillis() - started)
+                    + " ms, bar requests: " + barRequests + ", skipped without the bar before release: " + missingBars + ", saved to "
+                    + fileName);
+        }
+
+        private void load(Instrument instrument, List<long[]> slots, List<TitleWindows> titles) throws JFException {
+            Collections.sort(slots, (a, b) -> Long.compare(a[0], b[0]));
+            double pipsMultiplier = priceMath.getPipsMultiplier(instrument);
+
+            for (int from = 0; from < slots.size();) {
+                long firstBar = slots.get(from)[0];
+                int to = from;
+                while (to < slots.size() && slots.get(to)[0] - firstBar <= MAX_WINDOW_SPAN)
+                    to++;
+
+                long lastBar = slots.get(to - 1)[0] + windowBars * interval;
+                BarColumns bars = new BarColumns(history.getBars(instrument, period, OfferSide.BID, firstBar, lastBar));
+                barRequests++;
+
+                for (int i = from; i < to; i++) {
+                    long[] slot = slots.get(i);
+                    int index = bars.indexOf(slot[0]);
+                    // a later bar would give a start price after the release
+                    if (index == bars.size() || bars.time[index] != slot[0]) {
+                        missingBars++;
+                        if (debug)
+                            console.getOut().println("Release statistics: no " + period + " bar of " + instrument + " at "
+                                    + new Date(slot[0]) + ", release skipped");
+                        continue;
+                    }
+                    titles.get((int) slot[1]).fill((int) slot[2], bars, index, pipsMultiplier);
+                }
+                from = to;
+            }
+        }
+
+        private void write(List<TitleWindows> titles, String fileName) {
+            List<TitleWindows> rows = new ArrayList<>();
+            for (TitleWindows title : titles) {
+                if (title.events > 0)
+                    rows.add(title);
+            }
+            Collections.sort(rows, (a, b) -> Double.compare(b.percentiles[SORT_HORIZON][0], a.percentiles[SORT_HORIZON][0]));
+
+            java.text.DecimalFormat df = new java.text.DecimalFormat("#0.#",
+                    java.text.DecimalFormatSymbols.getInstance(java.util.Locale.US));
+            String sr = ", ";
+
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                StringBuilder line = new StringBuilder("title, pair, events");
+                for (int minutes : HORIZON_MINUTES) {
+                    for (double percentile : PERCENTILES)
+                        line.append(sr).append("p").append((int) (percentile * 100)).append(" ").append(minutes).append("m");
+                    line.append(sr).append("up ").append(minutes).append("m");
+                    line.append(sr).append("down ").append(minutes).append("m");
+                    line.append(sr).append("meaningful% ").append(minutes).append("m");
+                }
+                line.append(sr).append("time to peak s").append(sr).append("reversal%");
+                writer.write(line.append("\n").toString());
+
+                for (TitleWindows title : rows) {
+                    line.setLength(0);
+                    line.append(title.key).append(sr).append(title.pair).append(sr).append(title.events);
+                    for (int h = 0; h < HORIZON_MINUTES.length; h++) {
+                        for (int p = 0; p < PERCENTILES.length; p++)
+                            line.append(sr).append(df.format(title.percentiles[h][p]));
+                        line.append(sr).append(df.format(title.meanUp[h]));
+                        line.append(sr).append(df.format(title.meanDown[h]));
+                        line.append(sr).append(df.format(title.meaningfulShare[h] * 100));
+                    }
+                    line.append(sr).append(df.format(title.medianTimeToPeak / 1000.0));
+                    line.append(sr).append(df.format(title.meanReversal * 100));
+                    writer.write(line.append("\n").toString());
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+
+        /**
+         * Release windows of one title: start price and the bars after release
+         * of every event, in pips relative to the start price.
+         */
+        class TitleWindows {
+            final String key;
+            String pair;
+            final int stride = windowBars;
+            // per event
+            int size;
+            boolean[] loaded;
+            // per event and bar after release
+            double[] high;
+            double[] low;
+            double[] close;
+
+            // statistics
+            int events;
+            final double[][] percentiles = new double[HORIZON_MINUTES.length][PERCENTILES.length];
+            final double[] meanUp = new double[HORIZON_MINUTES.length];
+            final double[] meanDown = new double[HORIZON_MINUTES.length];
+            final double[] meaningfulShare = new double[HORIZON_MINUTES.length];
+            long medianTimeToPeak;
+            double meanReversal;
+
+            TitleWindows(String key, int capacity) {
+                this.key = key;
+                loaded = new boolean[capacity];
+                high = new double[capacity * stride];
+                low = new double[capacity * stride];
+                close = new double[capacity * stride];
+            }
+
+            int add(Instrument instrument) {
+                if (pair == null)
+                    pair = instrument.toString();
+                return size++;
+            }
+
+            void fill(int slot, BarColumns bars, int from, double pipsMultiplier) {
+                // bar before release and the whole window are needed
+                if (from < 0 || from + stride >= bars.size())
+                    return;
+
+                double startPrice = bars.close[from];
+                int offset = slot * stride;
+                for (int i = 0; i < stride; i++) {
+                    int bar = from + 1 + i;
+                    high[offset + i] = (bars.high[bar] - startPrice) * pipsMultiplier;
+                    low[offset + i] = (bars.low[bar] - startPrice) * pipsMultiplier;
+                    close[offset + i] = (bars.close[bar] - startPrice) * pipsMultiplier;
+                }
+                loaded[slot] = true;
+            }
+
+            void reduce() {
+                int horizons = HORIZON_MINUTES.length;
+                double[][] moves = new double[horizons][size];
+                long[] timesToPeak = new long[size];
+                double reversalTotal = 0;
+                int reversals = 0;
+
+                for (int e = 0; e < size; e++) {
+                    if (!loaded[e])
+                        continue;
+
+                    int offset = e * stride;
+                    double up = 0, down = 0;
+                    int upBar = 0, downBar = 0;
+                    int h = 0;
+
+                    for (int i = 0; i < stride; i++) {
+                        if (high[offset + i] > up) {
+                            up = high[offset + i];
+                            upBar = i;
+                        }
+                        if (-low[offset + i] > down) {
+                            down = -low[offset + i];
+                            downBar = i;
+                        }
+
+                        // horizons may share a bar on long periods
+                        while (h < horizons && i + 1 == horizonBars[h]) {
+                            double move = up > down ? up : down;
+                            moves[h][events] = move;
+                            meanUp[h] += up;
+                            meanDown[h] += down;
+                            if (move >= MEANINGFUL)
+                                meaningfulShare[h]++;
+                            h++;
+                        }
+                    }
+
+                    // peak of the whole window and the give back until its end
+                    double peak = up > down ? up : down;
+                    timesToPeak[events] = ((up > down ? upBar : downBar) + 1) * interval;
+                    if (peak > 0) {
+                        double last = close[offset + stride - 1];
+                        reversalTotal += up > down ? (up - last) / up : (down + last) / down;
+                        reversals++;
+                    }
+                    events++;
+                }
+
+                if (events == 0)
+                    return;
+
+                for (int h = 0; h < horizons; h++) {
+                    java.util.Arrays.sort(moves[h], 0, events);
+                    for (int p = 0; p < PERCENTILES.length; p++)
+                        percentiles[h][p] = moves[h][Math.max(0, (int) Math.ceil(PERCENTILES[p] * events) - 1)];
+                    meanUp[h] /= events;
+                    meanDown[h] /= events;
+                    meaningfulShare[h] /= events;
+                }
+
+                java.util.Arrays.sort(timesToPeak, 0, events);
+                medianTimeToPeak = timesToPeak[events / 2];
+                meanReversal = reversals > 0 ? reversalTotal / reversals : 0;
+
+                // columns are not needed any more
+                high = low = close = null;
+                loaded = null;
+            }
+        }
+
+        @SuppressWarnings("serial")
+        class StatisticsTask extends RecursiveAction {
+            private final TitleWindows[] titles;
+            private final int from;
+            private final int to;
+
+            StatisticsTask(TitleWindows[] titles, int from, int to) {
+                this.titles = titles;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++)
+                        titles[i].reduce();
+                } else {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new StatisticsTask(titles, from, middle), new StatisticsTask(titles, middle, to));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the bid/offer ladder of every release on ticks. For each release
+     * the ticks from numberOfCandles minutes before entry (secondsBeforeNews
+     * before release) to the end of the holding time are streamed from history
+     * with readTicks into a {@link LadderSimulation}. Ticks are never collected,
+     * releases of a pair are replayed one by one and pairs in parallel, so
+     * memory does not depend on the length of the history. Results of a release
+     * count for every title released at that time on the pair.
+     */
+    class LadderReplay {
+
+        private final long holdMillis;
+        private final Map<String, ReplayResult> byTitle = new LinkedHashMap<>();
+
+        public LadderReplay(int holdMinutes) {
+            this.holdMillis = holdMinutes * 60000L;
+        }
+
+        public void replay(List<NewsEvent> newsSortedByTime, long startTime, String fileName) throws JFException {
+            long started = System.currentTimeMillis();
+            Map<String, PairReplay> byPair = new LinkedHashMap<>();
+
+            for (NewsEvent event : newsSortedByTime) {
+                Instrument instrument = event.getPair() != null ? Instrument.fromString(event.getPair()) : null;
+                if (instrument == null || event.getDateTime().getTime() < startTime)
+                    continue;
+
+                PairReplay pair = byPair.get(event.getPair());
+                if (pair == null) {
+                    pair = new PairReplay(instrument);
+                    byPair.put(event.getPair(), pair);
+                }
+
+                String key = event.getCurrency() + " " + event.getTitle();
+                ReplayResult result = byTitle.get(key);
+                if (result == null) {
+                    result = new ReplayResult(key, event.getPair());
+                    byTitle.put(key, result);
+                }
+                pair.add(event.getDateTime().getTime(), result);
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, byPair.size()));
+            long ticks = 0;
+            try {
+                for (Future<Long> future : pool.invokeAll(new ArrayList<Callable<Long>>(byPair.values())))
+                    ticks += future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new JFException(e.getMessage(), e);
+            } finally {
+                pool.shutdown();
+            }
+
+            write(fileName);
+            console.getOut().println("Ladder replay of " + byPair.size() + " pairs in " + (System.currentTimeMillis() - started) + " ms, "
+                    + ticks + " ticks, saved to " + fileName);
+        }
+
+        private void write(String fileName) {
+            java.text.DecimalFormat df = new java.text.DecimalFormat("#0.#",
+                    java.text.DecimalFormatSymbols.getInstance(java.util.Locale.US));
+            String sr = ", ";
+
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writer.write("title, pair, releases, filled releases, filled levels, wins, losses, net pips, pips per release\n");
+
+                for (ReplayResult result : byTitle.values()) {
+                    if (result.releases == 0)
+                        continue;
+                    writer.write(result.key + sr + result.pair + sr + result.releases + sr + result.filledReleases + sr
+                            + result.filledLevels + sr + result.wins + sr + result.losses + sr + df.format(result.pips) + sr
+                            + df.format(result.pips / result.releases) + "\n");
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+
+        class ReplayResult {
+            final String key;
+            final String pair;
+            int releases;
+            int filledReleases;
+            int filledLevels;
+            int wins;
+            int losses;
+            double pips;
+
+            ReplayResult(String key, String pair) {
+                this.key = key;
+                this.pair = pair;
+            }
+        }
+
+        /**
+         * Releases of one pair replayed one after another.
+         */
+        class PairReplay implements Callable<Long>, LoadingDataListener, LoadingProgressListener {
+
+            private final Instrument instrument;
+            private long[] times = new long[64];
+            private final List<List<ReplayResult>> results = new ArrayList<>();
+            private int size;
+            private final LadderSimulation ladder = new LadderSimulation(numberOfOrders);
+            private long ticks;
+
+            PairReplay(Instrument instrument) {
+                this.instrument = instrument;
+                ladder.configure(instrument, GAP, STEP, TP, SL, numberOfOrders, lockLevel, lockPoints, secondsBeforeNews, moveToBreakeven,
+                        CloseOpposite, holdMillis);
+            }
+
+            void add(long time, ReplayResult result) {
+                if (size > 0 && times[size - 1] == time) {
+                    List<ReplayResult> same = results.get(size - 1);
+                    if (!same.contains(result))
+                        same.add(result);
+                    return;
+                }
+                if (size == times.length)
+                    times = java.util.Arrays.copyOf(times, size * 2);
+                times[size++] = time;
+                List<ReplayResult> list = new ArrayList<>(1);
+                list.add(result);
+                results.add(list);
+            }
+
+            @Override
+            public Long call() throws JFException {
+                for (int r = 0; r < size; r++) {
+                    ladder.start(times[r]);
+                    history.readTicks(instrument, ladder.getFrom(), ladder.getTo(), this, this);
+                    ladder.finish();
+
+                    if (!ladder.placed)
+                        continue;
+
+                    for (ReplayResult result : results.get(r)) {
+                        result.releases++;
+                        if (ladder.filled > 0)
+                            result.filledReleases++;
+                        result.filledLevels += ladder.filled;
+                        result.wins += ladder.wins;
+                        result.losses += ladder.losses;
+                        result.pips += ladder.pips;
+                    }
+                }
+                return ticks;
+            }
+
+            @Override
+            public void newTick(Instrument instrument, long time, double ask, double bid, double askVol, double bidVol) {
+                ticks++;
+                ladder.onTick(time, ask, bid);
+            }
+
+            @Override
+            public void newBar(Instrument instrument, Period period, OfferSide side, long time, double open, double close, double low,
+                    double high, double vol) {
+            }
+
+            @Override
+            public void dataLoaded(long start, long end, long currentPosition, String information) {
+            }
+
+            @Override
+            public void loadingFinished(boolean allDataLoaded, long start, long end, long currentPosition) {
+            }
+
+            @Override
+            public boolean stopJob() {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Grid search of the ladder parameters over the tick windows of all
+     * releases. Releases are taken in time order and their tick windows are
+     * loaded once into a shared buffer of primitive columns, as many releases as
+     * fit into optimiserMemoryMb; the buffer starts at the size of one window
+     * and grows when needed. Every loaded batch is evaluated for all
+     * parameter combinations on a fork-join pool split by combinations, each
+     * combination walks the releases in time order so its equity curve and
+     * drawdown carry over between batches. Combinations are written ranked by
+     * net pips with their max drawdown and hit rate.
+     */
+    class LadderOptimiser {
+
+        // bytes per buffered tick: time, ask, bid
+        private static final int TICK_BYTES = 4 + 8 + 8;
+        // initial buffer size per second of a tick window, the buffer grows up to optimiserMemoryMb
+        private static final int TICKS_PER_SECOND = 10;
+        private static final int COMBINATIONS_PER_TASK = 4;
+        private static final int TOP = 10;
+
+        private final long holdMillis;
+        // parameter values, in the order of the combination digits
+        private final String[] names = { "GAP", "STEP", "TP", "SL", "numberOfOrders", "lockLevel", "lockPoints", "secondsBeforeNews" };
+        private final int[][] values;
+        private final int combinations;
+        private final int maxOrders;
+        private final long maxBeforeMillis;
+
+        // per combination
+        private final double[] netPips;
+        private final double[] peakPips;
+        private final double[] maxDrawdown;
+        private final int[] releases;
+        private final int[] filledReleases;
+        private final int[] wins;
+        private final int[] losses;
+
+        // batch of releases, ticks of release r are [tickOffsets[r], tickOffsets[r + 1])
+        private final int capacity;
+        private int[] tickTimes;
+        private double[] asks;
+        private double[] bids;
+        private int ticks;
+        private Instrument[] batchInstruments = new Instrument[256];
+        private long[] batchTimes = new long[256];
+        private int[] tickOffsets = new int[257];
+        private int batchSize;
+        private long loadedTicks;
+
+        public LadderOptimiser(int holdMinutes) throws JFException {
+            this.holdMillis = holdMinutes * 60000L;
+            values = new int[][] { grid(optimiseGAP), grid(optimiseSTEP), grid(optimiseTP), grid(optimiseSL), grid(optimiseNumberOfOrders),
+                    grid(optimiseLockLevel), grid(optimiseLockPoints), grid(optimiseSecondsBeforeNews) };
+
+            long count = 1;
+            for (int[] parameter : values)
+                count *= parameter.length;
+            if (count > Integer.MAX_VALUE / 8)
+                throw new JFException("Too many parameter combinations: " + count);
+            combinations = (int) count;
+
+            maxOrders = max(values[4]);
+            maxBeforeMillis = max(values[7]) * 1000L;
+
+            netPips = new double[combinations];
+            peakPips = new double[combinations];
+            maxDrawdown = new double[combinations];
+            releases = new int[combinations];
+            filledReleases = new int[combinations];
+            wins = new int[combinations];
+            losses = new int[combinations];
+
+            capacity = (int) Math.min(Integer.MAX_VALUE - 8, optimiserMemoryMb * 1024L * 1024L / TICK_BYTES);
+            long windowSeconds = (maxBeforeMillis + numberOfCandles * 60000L + holdMillis) / 1000;
+            int initial = (int) Math.max(1, Math.min(capacity, windowSeconds * TICKS_PER_SECOND));
+            tickTimes = new int[initial];
+            asks = new double[initial];
+            bids = new double[initial];
+        }
+
+        /**
+         * @return false when the buffer is at optimiserMemoryMb already
+         */
+        private boolean grow() {
+            if (tickTimes.length == capacity)
+                return false;
+            int length = (int) Math.min(capacity, tickTimes.length * 2L);
+            tickTimes = java.util.Arrays.copyOf(tickTimes, length);
+            asks = java.util.Arrays.copyOf(asks, length);
+            bids = java.util.Arrays.copyOf(bids, length);
+            return true;
+        }
+
+        private int[] grid(String list) throws JFException {
+            String[] items = list.split(",");
+            int[] result = new int[items.length];
+            try {
+                for (int i = 0; i < items.length; i++)
+                    result[i] = Integer.parseInt(items[i].trim());
+            } catch (NumberFormatException e) {
+                throw new JFException("Wrong optimiser values: " + list, e);
+            }
+            return result;
+        }
+
+        private int max(int[] values) {
+            int result = Integer.MIN_VALUE;
+            for (int value : values)
+                result = Math.max(result, value);
+            return result;
+        }
+
+        /**
+         * @return value of the parameter in the combination
+         */
+        private int value(int combination, int parameter) {
+            for (int p = values.length - 1; p > parameter; p--)
+                combination /= values[p].length;
+            return values[parameter][combination % values[parameter].length];
+        }
+
+        public void optimise(List<NewsEvent> newsSortedByTime, long startTime, String fileName) throws JFException {
+            long started = System.currentTimeMillis();
+            ForkJoinPool pool = new ForkJoinPool();
+            String lastPair = null;
+            long lastTime = Long.MIN_VALUE;
+            int batches = 0;
+
+            try {
+                for (NewsEvent event : newsSortedByTime) {
+                    long time = event.getDateTime().getTime();
+                    Instrument instrument = event.getPair() != null ? Instrument.fromString(event.getPair()) : null;
+                    if (instrument == null || time < startTime)
+                        continue;
+                    // one ladder per pair and release time
+                    if (time == lastTime && event.getPair().equals(lastPair))
+                        continue;
+                    lastTime = time;
+                    lastPair = event.getPair();
+
+                    if (!load(instrument, time)) {
+                        pool.invoke(new EvaluateTask(0, combinations));
+                        batches++;
+                        clearBatch();
+                        if (!load(instrument, time))
+                            console.getOut().println("Optimiser: tick window of " + instrument + " " + new Date(time)
+                                    + " is larger than the buffer, skipped");
+                    }
+                }
+
+                if (batchSize > 0) {
+                    pool.invoke(new EvaluateTask(0, combinations));
+                    batches++;
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            write(fileName);
+            console.getOut().println("Optimiser: " + combinations + " combinations, " + batches + " batches, " + loadedTicks + " ticks in "
+                    + (System.currentTimeMillis() - started) + " ms, saved to " + fileName);
+        }
+
+        private void clearBatch() {
+            batchSize = 0;
+            ticks = 0;
+        }
+
+        /**
+         * Appends the tick window of the release to the batch.
+         *
+         * @return false when the batch is full
+         */
+        private boolean load(final Instrument instrument, final long releaseTime) throws JFException {
+            final int start = ticks;
+            final boolean[] overflow = new boolean[1];
+
+            history.readTicks(instrument, releaseTime - maxBeforeMillis - numberOfCandles * 60000L, releaseTime + holdMillis,
+                    new LoadingDataListener() {
+                        @Override
+                        public void newTick(Instrument instrument, long time, double ask, double bid, double askVol, double bidVol) {
+                            if (ticks == tickTimes.length && !grow()) {
+                                overflow[0] = true;
+                                return;
+                            }
+                            tickTimes[ticks] = (int) (time - releaseTime);
+                            asks[ticks] = ask;
+                            bids[ticks] = bid;
+                            ticks++;
+                        }
+
+                        @Override
+                        public void newBar(Instrument instrument, Period period, OfferSide side, long time, double open, double close,
+                                double low, double high, double vol) {
+                        }
+                    }, new LoadingProgressListener() {
+                        @Override
+                        public void dataLoaded(long start, long end, long currentPosition, String information) {
+                        }
+
+                        @Override
+                        public void loadingFinished(boolean allDataLoaded, long start, long end, long currentPosition) {
+                        }
+
+                        @Override
+                        public boolean stopJob() {
+                            return overflow[0];
+                        }
+                    });
+
+            if (overflow[0]) {
+                ticks = start;
+                return false;
+            }
+
+            if (batchSize == batchTimes.length) {
+                batchInstruments = java.util.Arrays.copyOf(batchInstruments, batchSize * 2);
+                batchTimes = java.util.Arrays.copyOf(batchTimes, batchSize * 2);
+                tickOffsets = java.util.Arrays.copyOf(tickOffsets, batchSize * 2 + 1);
+            }
+            batchInstruments[batchSize] = instrument;
+            batchTimes[batchSize] = releaseTime;
+            tickOffsets[batchSize] = start;
+            tickOffsets[++batchSize] = ticks;
+            loadedTicks += ticks - start;
+            return true;
+        }
+
+        private void evaluate(int combination, LadderSimulation ladder) {
+            Instrument configured = null;
+
+            for (int r = 0; r < batchSize; r++) {
+                if (batchInstruments[r] != configured) {
+                    configured = batchInstruments[r];
+                    ladder.configure(configured, value(combination, 0), value(combination, 1), value(combination, 2),
+                            value(combination, 3), value(combination, 4), value(combination, 5), value(combination, 6),
+                            value(combination, 7), moveToBreakeven, CloseOpposite, holdMillis);
+                }
+
+                long releaseTime = batchTimes[r];
+                ladder.start(releaseTime);
+                for (int t = tickOffsets[r]; t < tickOffsets[r + 1]; t++)
+                    ladder.onTick(releaseTime + tickTimes[t], asks[t], bids[t]);
+                ladder.finish();
+
+                if (!ladder.placed)
+                    continue;
+
+                releases[combination]++;
+                if (ladder.filled > 0)
+                    filledReleases[combination]++;
+                wins[combination] += ladder.wins;
+                losses[combination] += ladder.losses;
+                netPips[combination] += ladder.pips;
+                peakPips[combination] = Math.max(peakPips[combination], netPips[combination]);
+                maxDrawdown[combination] = Math.max(maxDrawdown[combination], peakPips[combination] - netPips[combination]);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        class EvaluateTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            EvaluateTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= COMBINATIONS_PER_TASK) {
+                    LadderSimulation ladder = new LadderSimulation(maxOrders);
+                    for (int c = from; c < to; c++)
+                        evaluate(c, ladder);
+                } else {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new EvaluateTask(from, middle), new EvaluateTask(middle, to));
+                }
+            }
+        }
+
+        private void write(String fileName) {
+            // ranking by net pips
+            Integer[] ranked = new Integer[combinations];
+            for (int c = 0; c < combinations; c++)
+                ranked[c] = c;
+            java.util.Arrays.sort(ranked, (a, b) -> Double.compare(netPips[b], netPips[a]));
+
+            java.text.DecimalFormat df = new java.text.DecimalFormat("#0.#",
+                    java.text.DecimalFormatSymbols.getInstance(java.util.Locale.US));
+            String sr = ", ";
+
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                StringBuilder line = new StringBuilder("rank");
+                for (String name : names)
+                    line.append(sr).append(name);
+                line.append(sr).append("net pips, max drawdown pips, hit rate %, releases, filled releases, wins, losses\n");
+                writer.write(line.toString());
+
+                for (int rank = 0; rank < combinations; rank++) {
+                    int c = ranked[rank];
+                    line.setLength(0);
+                    line.append(rank + 1);
+                    for (int p = 0; p < names.length; p++)
+                        line.append(sr).append(value(c, p));
+                    int trades = wins[c] + losses[c];
+                    line.append(sr).append(df.format(netPips[c])).append(sr).append(df.format(maxDrawdown[c])).append(sr)
+                            .append(df.format(trades > 0 ? wins[c] * 100.0 / trades : 0)).append(sr).append(releases[c]).append(sr)
+                            .append(filledReleases[c]).append(sr).append(wins[c]).append(sr).append(losses[c]).append("\n");
+                    writer.write(line.toString());
+
+                    if (rank < TOP)
+                        console.getOut().println("Optimiser #" + (rank + 1) + ": " + line.toString().trim());
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Bid/offer ladder of one release simulated tick by tick. The entry range is
+     * the bid range of numberOfCandles minutes before entry, buy levels fill on
+     * ask and sell levels on bid, pending levels are cancelled after
+     * cancellAfterSeconds, and with CloseOpposite the first fill of a side
+     * cancels the pending levels of the other side like {@link OrderCanceller}
+     * does. Filled levels move the stop loss to break even like
+     * {@link AllInOne#breakEven()} and exit at the price of the tick crossing
+     * SL/TP or at the end of the holding time. Not thread safe, one simulation
+     * is reused for many releases.
+     */
+    class LadderSimulation {
+
+        private static final byte PENDING = 0;
+        private static final byte OPENED = 1;
+        private static final byte CLOSED = 2;
+        private static final byte CANCELLED = 3;
+
+        // parameters
+        private Instrument instrument;
+        private int orders;
+        private double gapInPrice;
+        private double stepInPrice;
+        private double stopLossInPrice;
+        private double takeProfitInPrice;
+        private boolean moveToBreakeven;
+        private boolean closeOpposite;
+        private double lockLevelPips;
+        private double lockInPrice;
+        private long beforeMillis;
+        private long holdMillis;
+
+        // ladder, buy levels first
+        private double[] levelPrices;
+        private double[] entries;
+        private double[] stopLosses;
+        private byte[] states;
+
+        // current release
+        private long entryTime;
+        private long cancelTime;
+        private double rangeMin, rangeMax;
+        private double lastAsk, lastBid;
+        boolean placed;
+        int filled, wins, losses;
+        double pips;
+
+        public LadderSimulation(int maxOrders) {
+            levelPrices = new double[maxOrders * 2];
+            entries = new double[maxOrders * 2];
+            stopLosses = new double[maxOrders * 2];
+            states = new byte[maxOrders * 2];
+        }
+
+        public void configure(Instrument instrument, int gap, int step, int tp, int sl, int orders, int lockLevel, int lockPoints,
+                long secondsBeforeNews, boolean moveToBreakeven, boolean closeOpposite, long holdMillis) {
+            this.instrument = instrument;
+            this.orders = orders;
+            if (levelPrices.length < orders * 2) {
+                levelPrices = new double[orders * 2];
+                entries = new double[orders * 2];
+                stopLosses = new double[orders * 2];
+                states = new byte[orders * 2];
+            }
+            gapInPrice = round(priceMath.wholePipsToPrice(gap, instrument), instrument);
+            stepInPrice = round(priceMath.wholePipsToPrice(step, instrument), instrument);
+            stopLossInPrice = priceMath.pointsToPrice(sl, instrument);
+            takeProfitInPrice = priceMath.pointsToPrice(tp, instrument);
+            this.moveToBreakeven = moveToBreakeven;
+            this.closeOpposite = closeOpposite;
+            lockLevelPips = lockLevel / 10;
+            lockInPrice = priceMath.wholePipsToPrice(lockPoints, instrument);
+            beforeMillis = secondsBeforeNews * 1000;
+            this.holdMillis = holdMillis;
+        }
+
+        public void start(long releaseTime) {
+            entryTime = releaseTime - beforeMillis;
+            cancelTime = entryTime + cancellAfterSeconds * 1000;
+            rangeMin = Double.MAX_VALUE;
+            rangeMax = -Double.MAX_VALUE;
+            placed = false;
+            filled = wins = losses = 0;
+            pips = 0;
+        }
+
+        /**
+         * @return start of the ticks needed by the release
+         */
+        public long getFrom() {
+            return entryTime - numberOfCandles * 60000L;
+        }
+
+        public long getTo() {
+            return entryTime + holdMillis;
+        }
+
+        public void onTick(long time, double ask, double bid) {
+            // windows loaded for several parameters may start earlier and end later
+            if (time < getFrom() || time > getTo())
+                return;
+
+            lastAsk = ask;
+            lastBid = bid;
+
+            if (time < entryTime) {
+                if (bid < rangeMin)
+                    rangeMin = bid;
+                if (bid > rangeMax)
+                    rangeMax = bid;
+                return;
+            }
+
+            if (!placed) {
+                if (rangeMin > rangeMax)
+                    return; // no ticks before entry
+                place();
+            }
+
+            for (int i = 0; i < orders * 2; i++) {
+                boolean buy = i < orders;
+
+                if (states[i] == OPENED) {
+                    // exits of positions opened on previous ticks
+                    if (buy) {
+                        if (bid <= stopLosses[i])
+                            close(i, bid - entries[i]);
+                        else if (bid >= entries[i] + takeProfitInPrice)
+                            close(i, bid - entries[i]);
+                        else if (moveToBreakeven && priceMath.toPips(bid - entries[i], instrument) >= lockLevelPips)
+                            stopLosses[i] = round(entries[i] + lockInPrice, instrument);
+                    } else {
+                        if (ask >= stopLosses[i])
+                            close(i, entries[i] - ask);
+                        else if (ask <= entries[i] - takeProfitInPrice)
+                            close(i, entries[i] - ask);
+                        else if (moveToBreakeven && priceMath.toPips(entries[i] - ask, instrument) >= lockLevelPips)
+                            stopLosses[i] = round(entries[i] - lockInPrice, instrument);
+                    }
+                } else if (states[i] == PENDING && time < cancelTime) {
+                    if (buy ? ask >= levelPrices[i] : bid <= levelPrices[i]) {
+                        states[i] = OPENED;
+                        entries[i] = buy ? ask : bid;
+                        stopLosses[i] = buy ? entries[i] - stopLossInPrice : entries[i] + stopLossInPrice;
+                        filled++;
+                        if (closeOpposite)
+                            cancel(!buy);
+                    }
+                }
+            }
+        }
+
+        private void place() {
+            double initialPriceLevelForBuy = rangeMax + gapInPrice;
+            double initialPriceLevelForSell = rangeMin - gapInPrice;
+            for (int i = 0; i < orders; i++) {
+                levelPrices[i] = priceMath.ladderLevel(initialPriceLevelForBuy, stepInPrice, i, true);
+                levelPrices[orders + i] = priceMath.ladderLevel(initialPriceLevelForSell, stepInPrice, i, false);
+            }
+            java.util.Arrays.fill(states, 0, orders * 2, PENDING);
+            placed = true;
+        }
+
+        private void cancel(boolean buy) {
+            for (int i = buy ? 0 : orders, end = i + orders; i < end; i++) {
+                if (states[i] == PENDING)
+                    states[i] = CANCELLED;
+            }
+        }
+
+        /**
+         * Closes positions still opened at the last price.
+         */
+        public void finish() {
+            if (!placed)
+                return;
+            for (int i = 0; i < orders * 2; i++) {
+                if (states[i] == OPENED)
+                    close(i, i < orders ? lastBid - entries[i] : entries[i] - lastAsk);
+            }
+        }
+
+        private void close(int level, double priceMove) {
+            states[level] = CLOSED;
+            double levelPips = priceMath.toPips(priceMove, instrument);
+            pips += levelPips;
+            if (levelPips > 0)
+                wins++;
+            else
+                losses++;
+        }
+    }
+
+    /**
+     * Bars loaded from history in columns of primitive arrays, sorted by time.
+     */
+    class BarColumns {
+        final long[] time;
+        final double[] open;
+        final double[] close;
+        final double[] high;
+        final double[] low;
+
+        BarColumns(List<IBar> bars) {
+            int size = bars.size();
+            time = new long[size];
+            open = new double[size];
+            close = new double[size];
+            high = new double[size];
+            low = new double[size];
+
+            for (int i = 0; i < size; i++) {
+                IBar bar = bars.get(i);
+                time[i] = bar.getTime();
+                open[i] = bar.getOpen();
+                close[i] = bar.getClose();
+                high[i] = bar.getHigh();
+                low[i] = bar.getLow();
+            }
+        }
+
+        public int size() {
+            return time.length;
+        }
+
+        /**
+         * @return index of the first bar starting at or after the time
+         */
+        public int indexOf(long barTime) {
+            int low = 0, high = time.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (time[middle] < barTime)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Time index of the news calendar. Release times are kept per pair in sorted
+     * primitive arrays with a cursor pointing to the first event which is not
+     * released (or consumed) yet, so looking for upcoming events costs amortised
+     * O(1) per tick regardless of the calendar size. Consumed events are retired by
+     * moving the cursor, nothing is ever removed from the arrays.
+     */
+    class NewsCalendar {
+
+        private final String[] pairs;
+        private final Instrument[] instruments;
+        private final HashMap<String, Integer> pairIndex = new HashMap<>();
+        private final long[][] times;
+        private final NewsEvent[][] events;
+        private final int[] cursors;
+
+        public NewsCalendar(List<NewsEvent> newsEvents) {
+            Map<String, List<NewsEvent>> byPair = new LinkedHashMap<>();
+
+            for (NewsEvent event : newsEvents) {
+                List<NewsEvent> list = byPair.get(event.getPair());
+                if (list == null) {
+                    list = new ArrayList<>();
+                    byPair.put(event.getPair(), list);
+                }
+                list.add(event);
+            }
+
+            int size = byPair.size();
+            pairs = new String[size];
+            instruments = new Instrument[size];
+            times = new long[size][];
+            events = new NewsEvent[size][];
+            cursors = new int[size];
+
+            int p = 0;
+            for (Map.Entry<String, List<NewsEvent>> entry : byPair.entrySet()) {
+                List<NewsEvent> list = entry.getValue();
+                Collections.sort(list);
+
+                pairs[p] = entry.getKey();
+                instruments[p] = Instrument.fromString(entry.getKey());
+                pairIndex.put(entry.getKey(), p);
+                events[p] = list.toArray(new NewsEvent[list.size()]);
+                times[p] = new long[list.size()];
+
+                for (int i = 0; i < events[p].length; i++) {
+                    times[p][i] = events[p][i].getDateTime().getTime();
+                }
+                p++;
+            }
+        }
+
+        public String[] getPairs() {
+            return pairs;
+        }
+
+        /**
+         * @return instrument of the pair with index <code>p</code> in
+         *         {@link #getPairs()}, null for unknown instruments
+         */
+        public Instrument getInstrument(int p) {
+            return instruments[p];
+        }
+
+        /**
+         * Adds to <code>result</code> events of the pair releasing in
+         * <code>(time, time + windowMillis]</code>. Events released at or before
+         * <code>time</code> are skipped for good.
+         *
+         * @return number of collected events
+         */
+        public int collectUpcoming(String pair, long time, long windowMillis, List<NewsEvent> result) {
+            Integer p = pairIndex.get(pair);
+            if (p == null)
+                return 0;
+
+            return collectUpcoming(p.intValue(), time, windowMillis, result);
+        }
+
+        public int collectUpcoming(int p, long time, long windowMillis, List<NewsEvent> result) {
+            long[] pairTimes = times[p];
+            int cursor = cursors[p];
+
+            while (cursor < pairTimes.length && pairTimes[cursor] <= time) {
+                cursor++;
+            }
+            cursors[p] = cursor;
+
+            int count = 0;
+            for (int i = cursor; i < pairTimes.length && pairTimes[i] - time <= windowMillis; i++) {
+                result.add(events[p][i]);
+                count++;
+            }
+
+            return count;
+        }
+
+        /**
+         * Retires given events and every earlier event of the same pairs.
+         */
+        public void retire(List<NewsEvent> consumed) {
+            for (NewsEvent event : consumed) {
+                Integer p = pairIndex.get(event.getPair());
+                if (p == null)
+                    continue;
+
+                long[] pairTimes = times[p];
+                long time = event.getDateTime().getTime();
+                int cursor = cursors[p];
+
+                while (cursor < pairTimes.length && pairTimes[cursor] <= time) {
+                    cursor++;
+                }
+                cursors[p] = cursor;
+            }
+        }
+
+        /**
+         * @return index of the pair for {@link #nextReleaseTime(int)} or -1 if the
+         *         pair has no events
+         */
+        public int indexOf(String pair) {
+            Integer p = pairIndex.get(pair);
+            return p == null ? -1 : p.intValue();
+        }
+
+        /**
+         * Same as {@link #nextReleaseTime(String)} without the pair lookup.
+         */
+        public long nextReleaseTime(int p) {
+            return cursors[p] < times[p].length ? times[p][cursors[p]] : Long.MAX_VALUE;
+        }
+
+        /**
+         * @return release time of the next not retired event of the pair or
+         *         <code>Long.MAX_VALUE</code> if there is none
+         */
+        public long nextReleaseTime(String pair) {
+            Integer p = pairIndex.get(pair);
+            if (p == null || cursors[p] >= times[p].length)
+                return Long.MAX_VALUE;
+
+            return times[p][cursors[p]];
+        }
+
+        public int remaining(String pair) {
+            Integer p = pairIndex.get(pair);
+            return p == null ? 0 : times[p].length - cursors[p];
+        }
+    }
+
+    /**
+     * Parsed and DST corrected news calendar kept in columns of primitive arrays,
+     * currencies, titles and importances are interned into integer ids. Missing
+     * values are stored as <code>NaN</code> with unit code 0.
+     */
+    class CompiledNewsCalendar {
+
+        private int size;
+        private long[] times;
+        private int[] currencies;
+        private int[] titles;
+        private byte[] importances;
+        private double[] previous;
+        private double[] forecast;
+        private double[] actual;
+        private byte[] previousUnits;
+        private byte[] forecastUnits;
+        private byte[] actualUnits;
+
+        // ids of this calendar, importances separately to fit in a byte
+        private final NewsSymbols symbols = new NewsSymbols();
+        private final NewsSymbols importanceSymbols = new NewsSymbols();
+
+        public CompiledNewsCalendar() {
+            allocate(1024);
+        }
+
+        private void allocate(int capacity) {
+            times = new long[capacity];
+            currencies = new int[capacity];
+            titles = new int[capacity];
+            importances = new byte[capacity];
+            previous = new double[capacity];
+            forecast = new double[capacity];
+            actual = new double[capacity];
+            previousUnits = new byte[capacity];
+            forecastUnits = new byte[capacity];
+            actualUnits = new byte[capacity];
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= times.length)
+                return;
+
+            int newCapacity = Math.max(capacity, times.length * 2);
+            times = java.util.Arrays.copyOf(times, newCapacity);
+            currencies = java.util.Arrays.copyOf(currencies, newCapacity);
+            titles = java.util.Arrays.copyOf(titles, newCapacity);
+            importances = java.util.Arrays.copyOf(importances, newCapacity);
+            previous = java.util.Arrays.copyOf(previous, newCapacity);
+            forecast = java.util.Arrays.copyOf(forecast, newCapacity);
+            actual = java.util.Arrays.copyOf(actual, newCapacity);
+            previousUnits = java.util.Arrays.copyOf(previousUnits, newCapacity);
+            forecastUnits = java.util.Arrays.copyOf(forecastUnits, newCapacity);
+            actualUnits = java.util.Arrays.copyOf(actualUnits, newCapacity);
+        }
+
+        public void add(NewsEvent event) {
+            ensureCapacity(size + 1);
+
+            times[size] = event.getDateTime().getTime();
+            currencies[size] = symbols.intern(event.getCurrency());
+            titles[size] = symbols.intern(event.getTitle());
+            importances[size] = (byte) importanceSymbols.intern(event.getImportance());
+            previous[size] = event.previous;
+            forecast[size] = event.forecast;
+            actual[size] = event.actual;
+            previousUnits[size] = event.previousUnits;
+            forecastUnits[size] = event.forecastUnits;
+            actualUnits[size] = event.actualUnits;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTime(int i) {
+            return times[i];
+        }
+
+        public String getCurrency(int i) {
+            return symbols.get(currencies[i]);
+        }
+
+        public String getTitle(int i) {
+            return symbols.get(titles[i]);
+        }
+
+        public String getImportance(int i) {
+            return importanceSymbols.get(importances[i]);
+        }
+
+        public NewsEvent toNewsEvent(int i) {
+            return new NewsEvent(getTitle(i), times[i], getCurrency(i), getImportance(i), previous[i], previousUnits[i], forecast[i],
+                    forecastUnits[i], actual[i], actualUnits[i]);
+        }
+    }
+
+    /**
+     * Binary cache of the compiled news calendar stored next to the source file.
+     * The cache is valid while the source has the same size and modification time
+     * or, when these differ, the same SHA-256 content hash; the new size and time
+     * are then written to the header so the source is hashed once. Columns are read from
+     * the memory mapped cache file with bulk gets.
+     */
+    class NewsCalendarCache {
+
+        private static final int MAGIC = 0x4E574331; // NWC1
+        private static final int VERSION = 3;
+
+        private final File source;
+        private final File cacheFile;
+
+        public NewsCalendarCache(String filename) {
+            this.source = new File(filename);
+            this.cacheFile = new File(filename + ".nwcache");
+        }
+
+        public File getCacheFile() {
+            return cacheFile;
+        }
+
+        /**
+         * @return compiled calendar or null if there is no valid cache
+         */
+        public CompiledNewsCalendar read() throws JFException {
+            if (!cacheFile.isFile())
+                return null;
+
+            boolean touched = false;
+            CompiledNewsCalendar calendar;
+
+            try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+                java.nio.MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                    return null;
+
+                long sourceLength = buffer.getLong();
+                long sourceModified = buffer.getLong();
+                byte[] hash = new byte[32];
+                buffer.get(hash);
+
+                // news times depend on the time zone the calendar was parsed in
+                if (!TimeZone.getDefault().getID().equals(readString(buffer)))
+                    return null;
+
+                if (sourceLength != source.length() || sourceModified != source.lastModified()) {
+                    if (!java.util.Arrays.equals(hash, hash(source)))
+                        return null;
+                    touched = true;
+                }
+
+                calendar = new CompiledNewsCalendar();
+                int size = buffer.getInt();
+
+                int symbolCount = buffer.getInt();
+                for (int i = 0; i < symbolCount; i++) {
+                    calendar.symbols.intern(readString(buffer));
+                }
+                int importanceCount = buffer.getInt();
+                for (int i = 0; i < importanceCount; i++) {
+                    calendar.importanceSymbols.intern(readString(buffer));
+                }
+
+                calendar.allocate(size);
+                calendar.size = size;
+                buffer.asLongBuffer().get(calendar.times);
+                buffer.position(buffer.position() + size * 8);
+                buffer.asIntBuffer().get(calendar.currencies);
+                buffer.position(buffer.position() + size * 4);
+                buffer.asIntBuffer().get(calendar.titles);
+                buffer.position(buffer.position() + size * 4);
+                buffer.get(calendar.importances);
+                buffer.asDoubleBuffer().get(calendar.previous);
+                buffer.position(buffer.position() + size * 8);
+                buffer.asDoubleBuffer().get(calendar.forecast);
+                buffer.position(buffer.position() + size * 8);
+                buffer.asDoubleBuffer().get(calendar.actual);
+                buffer.position(buffer.position() + size * 8);
+                buffer.get(calendar.previousUnits);
+                buffer.get(calendar.forecastUnits);
+                buffer.get(calendar.actualUnits);
+
+            } catch (IOException | RuntimeException e) {
+                console.getErr().println("Compiled news calendar " + cacheFile + " is ignored: " + e);
+                return null;
+            }
+
+            // same content with a new size or time, the next start can skip hashing
+            if (touched)
+                updateHeader();
+            return calendar;
+        }
+
+        private void updateHeader() {
+            java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(16);
+            header.putLong(source.length()).putLong(source.lastModified()).flip();
+
+            try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE)) {
+                // after magic and version
+                channel.write(header, 8);
+            } catch (IOException e) {
+                console.getErr().println("Compiled news calendar " + cacheFile + " header not updated: " + e);
+            }
+        }
+
+        public void write(CompiledNewsCalendar calendar) throws IOException, JFException {
+            File tmp = new File(cacheFile.getPath() + ".tmp");
+            try {
+                write(calendar, tmp);
+                Files.move(tmp.toPath(), cacheFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | JFException | RuntimeException e) {
+                tmp.delete();
+                throw e;
+            }
+        }
+
+        private void write(CompiledNewsCalendar calendar, File tmp) throws IOException, JFException {
+            int size = calendar.size;
+
+            try (java.io.DataOutputStream out = new java.io.DataOutputStream(
+                    new java.io.BufferedOutputStream(new java.io.FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.write(hash(source));
+                writeString(out, TimeZone.getDefault().getID());
+                out.writeInt(size);
+
+                out.writeInt(calendar.symbols.size());
+                for (int i = 0; i < calendar.symbols.size(); i++) {
+                    writeString(out, calendar.symbols.get(i));
+                }
+                out.writeInt(calendar.importanceSymbols.size());
+                for (int i = 0; i < calendar.importanceSymbols.size(); i++) {
+                    writeString(out, calendar.importanceSymbols.get(i));
+                }
+
+                for (int i = 0; i < size; i++)
+                    out.writeLong(calendar.times[i]);
+                for (int i = 0; i < size; i++)
+                    out.writeInt(calendar.currencies[i]);
+                for (int i = 0; i < size; i++)
+                    out.writeInt(calendar.titles[i]);
+                out.write(calendar.importances, 0, size);
+                for (int i = 0; i < size; i++)
+                    out.writeDouble(calendar.previous[i]);
+                for (int i = 0; i < size; i++)
+                    out.writeDouble(calendar.forecast[i]);
+                for (int i = 0; i < size; i++)
+                    out.writeDouble(calendar.actual[i]);
+                out.write(calendar.previousUnits, 0, size);
+                out.write(calendar.forecastUnits, 0, size);
+                out.write(calendar.actualUnits, 0, size);
+            }
+        }
+
+        private byte[] hash(File file) throws JFException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+                java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(1 << 20);
+
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+                return digest.digest();
+
+            } catch (IOException | java.security.NoSuchAlgorithmException e) {
+                throw new JFException("Can't hash news calendar " + file, e);
+            }
+        }
+
+        private void writeString(java.io.DataOutputStream out, String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private String readString(java.nio.ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Library("jsoup-1.11.2.jar")
+    class ParseInvestingHTML {
+
+        // mutable, confined to the thread running parse
+        protected final NewsValueParser valueParser = new NewsValueParser();
+        protected final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm");
+
+        public List<NewsEvent> parse(String filename) throws JFException {
+            final List<NewsEvent> list = new ArrayList<>();
+            parse(filename, event -> list.add(event));
+            return list;
+        }
+
+        /**
+         * Parses the calendar and passes every news event to the
+         * <code>sink</code>.
+         *
+         * @return number of parsed news events
+         */
+        public int parse(String filename, NewsEventSink sink) throws JFException {
+            int count = 0;
+            File input = new File(filename);
+
+            try {
+
+                Document doc = Jsoup.parse(input, "UTF-8", "");
+
+                Element tbody = doc.body().tagName("tbody");
+                Element timeZone = tbody.selectFirst("#timeZoneGmtOffsetFormatted");
+                console.getOut().println("timeZone = " + timeZone.text());
+                int timeZoneOffsetHours = 0;
+
+                if (timeZone != null) {
+                    timeZoneOffsetHours = parseTimeZoneOffset(timeZone.text());
+                }
+
+                Elements events = tbody.select("tr.js-event-item");
+                if (debug)
+                    console.getOut().println("Starting News events creation...");
+
+                for (Element event : events) {
+                    String newsDateTime = event.attr("data-event-datetime");
+                    String currency = event.selectFirst("td.flagCur").text().trim();
+                    String importance = event.selectFirst("td.sentiment").attr("title");
+                    String title = event.selectFirst("td.event").text();
+                    String previous = event.selectFirst("td[id^=eventPrevious]").text();
+                    String forecast = event.selectFirst("td[id^=eventForecast]").text();
+                    String actual = event.selectFirst("td[id^=eventActual]").text();
+
+                    NewsEvent newsEvent = createNewsEvent(newsDateTime, timeZoneOffsetHours, currency, importance, title, previous, forecast,
+                            actual);
+
+                    // if (debug)
+                    // console.getOut().println("newsEvent: " + newsEvent);
+
+                    // if (newsEvent.getActual() != null) {
+                    sink.onNewsEvent(newsEvent);
+                    count++;
+                    // }
+                }
+
+                if (debug)
+                    console.getOut().println("End of News events creation");
+
+            } catch (Throwable th) {
+                console.getErr().println(th.getMessage());
+                throw new JFException(th.getMessage(), th);
+            }
+
+            if (debug)
+                console.getOut().print("File " + filename + " been successfully parsed!\n Number of news releases: " + count);
+
+            return count;
+        }
+
+        protected int parseTimeZoneOffset(String text) {
+            int timeZoneOffsetHours = 0;
+            String sTimeZoneOffsetHours = text.replace("GMT", "").replace("(", "").replace(")", "").replace(" ", "").replace(":00", "");
+
+            if (sTimeZoneOffsetHours.length() > 0)
+                timeZoneOffsetHours = Integer.parseInt(sTimeZoneOffsetHours);
+            if (debug)
+                console.getOut().println("Parser: news source timeZoneOffset=" + timeZoneOffsetHours);
+
+            return timeZoneOffsetHours;
+        }
+
+        protected NewsEvent createNewsEvent(String newsDateTime, int timeZoneOffsetHours, String currency, String importance, String title,
+                String previous, String forecast, String actual) throws ParseException {
+            int dateSpace = newsDateTime.indexOf(Constants.SPACE);
+            String date = newsDateTime.substring(0, dateSpace);
+            String time = newsDateTime.substring(dateSpace + 1, newsDateTime.lastIndexOf(":"));
+
+            return new NewsEvent(title, timeZoneOffsetHours, date + Constants.SPACE + time, currency, importance, previous, forecast, actual,
+                    valueParser, dateFormat);
+        }
+    }
+
+    /**
+     * Streaming version of the Investing.com calendar parser. The export is read
+     * through a memory mapped <code>FileChannel</code> chunk by chunk, every
+     * <code>&lt;tr&gt;</code> row is cut out of the byte stream as soon as it is
+     * complete and only the cells the strategy needs are extracted from it, so no
+     * DOM is built and news events are emitted while the file is being read.
+     */
+    class StreamingInvestingParser extends ParseInvestingHTML {
+
+        private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+        private final BytePattern rowStart = new BytePattern("<tr");
+        private final BytePattern rowEnd = new BytePattern("</tr>");
+        // id attribute of the time zone element, the first one is used like jsoup's selectFirst does
+        private final BytePattern timeZoneId = new BytePattern("id=\"timeZoneGmtOffsetFormatted\"");
+        private final BytePattern timeZoneIdQuoted = new BytePattern("id='timeZoneGmtOffsetFormatted'");
+
+        private byte[] row = new byte[8192];
+        private int rowLength;
+        private int timeZoneOffsetHours;
+
+        @Override
+        public int parse(String filename, NewsEventSink sink) throws JFException {
+            int count = 0;
+            timeZoneOffsetHours = 0;
+
+            try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+                final int OUTSIDE = 0, ROW = 1, TIME_ZONE_TAG = 2, TIME_ZONE_TEXT = 3;
+                int state = OUTSIDE;
+                boolean timeZoneFound = false;
+                StringBuilder timeZoneText = new StringBuilder();
+                long size = channel.size();
+
+                if (debug)
+                    console.getOut().println("Starting News events creation...");
+
+                for (long position = 0; position < size; position += CHUNK_SIZE) {
+                    java.nio.MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(CHUNK_SIZE, size - position));
+
+                    while (chunk.hasRemaining()) {
+                        byte b = chunk.get();
+
+                        switch (state) {
+                        case OUTSIDE:
+                            if (rowStart.next(b)) {
+                                startRow();
+                                state = ROW;
+                            } else if (!timeZoneFound && (timeZoneId.next(b) | timeZoneIdQuoted.next(b))) {
+                                timeZoneFound = true;
+                                timeZoneText.setLength(0);
+                                state = TIME_ZONE_TAG;
+                            }
+                            break;
+                        case ROW:
+                            appendToRow(b);
+                            if (rowEnd.next(b)) {
+                                count += emitRow(sink);
+                                state = OUTSIDE;
+                            } else if (rowStart.next(b)) {
+                                // previous row was not closed explicitly
+                                rowLength -= 3;
+                                count += emitRow(sink);
+                                startRow();
+                            }
+                            break;
+                        case TIME_ZONE_TAG:
+                            if (b == '>')
+                                state = TIME_ZONE_TEXT;
+                            break;
+                        case TIME_ZONE_TEXT:
+                            if (b == '<') {
+                                String text = normalizeText(timeZoneText.toString());
+                                console.getOut().println("timeZone = " + text);
+                                timeZoneOffsetHours = parseTimeZoneOffset(text);
+                                state = OUTSIDE;
+                            } else {
+                                timeZoneText.append((char) (b & 0xFF));
+                            }
+                            break;
+                        }
+                    }
+                }
+
+                if (state == ROW)
+                    count += emitRow(sink);
+
+                if (debug)
+                    console.getOut().println("End of News events creation");
+
+            } catch (Throwable th) {
+                console.getErr().println(th.getMessage());
+                throw new JFException(th.getMessage(), th);
+            }
+
+            if (debug)
+                console.getOut().print("File " + filename + " been successfully parsed!\n Number of news releases: " + count);
+
+            return count;
+        }
+
+        private void startRow() {
+            rowLength = 0;
+            appendToRow((byte) '<');
+            appendToRow((byte) 't');
+            appendToRow((byte) 'r');
+            rowEnd.reset();
+            rowStart.reset();
+        }
+
+        private void appendToRow(byte b) {
+            if (rowLength == row.length)
+                row = java.util.Arrays.copyOf(row, row.length * 2);
+            row[rowLength++] = b;
+        }
+
+        private int emitRow(NewsEventSink sink) throws JFException, ParseException {
+            rowStart.reset();
+            String html = new String(row, 0, rowLength, StandardCharsets.UTF_8);
+            int rowTagEnd = tagEnd(html, 0);
+
+            if (rowTagEnd < 0 || !hasClass(attribute(html, 0, rowTagEnd, "class"), "js-event-item"))
+                return 0;
+
+            String newsDateTime = attribute(html, 0, rowTagEnd, "data-event-datetime");
+            String currency = null, importance = null, title = null, previous = null, forecast = null, actual = null;
+
+            int cellStart = html.indexOf("<td", rowTagEnd);
+            while (cellStart >= 0) {
+                int cellTagEnd = tagEnd(html, cellStart);
+                if (cellTagEnd < 0)
+                    break;
+
+                int nextCell = html.indexOf("<td", cellTagEnd);
+                int cellEnd = html.indexOf("</td>", cellTagEnd);
+                if (cellEnd < 0 || (nextCell >= 0 && nextCell < cellEnd))
+                    cellEnd = nextCell >= 0 ? nextCell : html.length();
+
+                String cellClass = attribute(html, cellStart, cellTagEnd, "class");
+                String cellId = attribute(html, cellStart, cellTagEnd, "id");
+
+                if (currency == null && hasClass(cellClass, "flagCur")) {
+                    currency = text(html, cellTagEnd + 1, cellEnd).trim();
+                } else if (importance == null && hasClass(cellClass, "sentiment")) {
+                    importance = attribute(html, cellStart, cellTagEnd, "title");
+                } else if (title == null && hasClass(cellClass, "event")) {
+                    title = text(html, cellTagEnd + 1, cellEnd);
+                } else if (cellId != null) {
+                    if (previous == null && cellId.startsWith("eventPrevious"))
+                        previous = text(html, cellTagEnd + 1, cellEnd);
+                    else if (forecast == null && cellId.startsWith("eventForecast"))
+                        forecast = text(html, cellTagEnd + 1, cellEnd);
+                    else if (actual == null && cellId.startsWith("eventActual"))
+                        actual = text(html, cellTagEnd + 1, cellEnd);
+                }
+
+                cellStart = nextCell;
+            }
+
+            // a bad row is skipped, the rest of the calendar is still loaded
+            if (newsDateTime == null || currency == null || importance == null || title == null || previous == null || forecast == null
+                    || actual == null) {
+                console.getErr().println("Skipped incomplete calendar row: " + html);
+                return 0;
+            }
+
+            NewsEvent event;
+            try {
+                event = createNewsEvent(newsDateTime, timeZoneOffsetHours, currency, importance, title, previous, forecast, actual);
+            } catch (ParseException | RuntimeException e) {
+                console.getErr().println("Skipped calendar row, " + e + ": " + html);
+                return 0;
+            }
+
+            sink.onNewsEvent(event);
+            return 1;
+        }
+
+        // index of '>' closing the tag which starts at from, quoted values are
+        // skipped
+        private int tagEnd(String html, int from) {
+            char quote = 0;
+            for (int i = from; i < html.length(); i++) {
+                char c = html.charAt(i);
+                if (quote != 0) {
+                    if (c == quote)
+                        quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String attribute(String html, int tagStart, int tagEnd, String name) {
+            int i = tagStart;
+            while ((i = html.indexOf(name, i)) >= 0 && i < tagEnd) {
+                int valueStart = i + name.length();
+                boolean nameStarts = Character.isWhitespace(html.charAt(i - 1));
+
+                while (valueStart < tagEnd && html.charAt(valueStart) == ' ')
+                    valueStart++;
+
+                if (nameStarts && valueStart < tagEnd && html.charAt(valueStart) == '=') {
+                    valueStart++;
+                    while (valueStart < tagEnd && html.charAt(valueStart) == ' ')
+                        valueStart++;
+
+                    char quote = html.charAt(valueStart);
+                    int valueEnd;
+                    if (quote == '"' || quote == '\'') {
+                        valueStart++;
+                        valueEnd = html.indexOf(quote, valueStart);
+                    } else {
+                        valueEnd = valueStart;
+                        while (valueEnd < tagEnd && !Character.isWhitespace(html.charAt(valueEnd)))
+                            valueEnd++;
+                    }
+                    return decodeEntities(html.substring(valueStart, valueEnd));
+                }
+                i = valueStart;
+            }
+            return null;
+        }
+
+        private boolean hasClass(String classes, String className) {
+            if (classes == null)
+                return false;
+
+            int i = 0;
+            while ((i = classes.indexOf(className, i)) >= 0) {
+                int end = i + className.length();
+                if ((i == 0 || Character.isWhitespace(classes.charAt(i - 1)))
+                        && (end == classes.length() || Character.isWhitespace(classes.charAt(end))))
+                    return true;
+                i = end;
+            }
+            return false;
+        }
+
+        // text content of the cell the same way jsoup's Element.text() returns it
+        private String text(String html, int from, int to) {
+            StringBuilder text = new StringBuilder(to - from);
+            boolean inTag = false;
+
+            for (int i = from; i < to; i++) {
+                char c = html.charAt(i);
+                if (inTag) {
+                    if (c == '>')
+                        inTag = false;
+                } else if (c == '<') {
+                    inTag = true;
+                } else {
+                    text.append(c);
+                }
+            }
+            return normalizeText(decodeEntities(text.toString()));
+        }
+
+        private String decodeEntities(String s) {
+            if (s.indexOf('&') < 0)
+                return s;
+
+            return s.replace("&nbsp;", "\u00a0").replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                    .replace("&#39;", "'").replace("&#039;", "'").replace("&amp;", "&");
+        }
+
+        private String normalizeText(String s) {
+            StringBuilder result = new StringBuilder(s.length());
+            boolean lastWasWhite = true;
+
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00a0') {
+                    if (!lastWasWhite)
+                        result.append(' ');
+                    lastWasWhite = true;
+                } else {
+                    result.append(c);
+                    lastWasWhite = false;
+                }
+            }
+            return result.toString().trim();
+        }
+    }
+
+    /**
+     * Incremental byte pattern matcher (KMP) which survives chunk boundaries.
+     */
+    class BytePattern {
+
+        private final byte[] pattern;
+        private final int[] failure;
+        private int matched;
+
+        public BytePattern(String pattern) {
+            this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
+            this.failure = new int[this.pattern.length];
+
+            for (int i = 1, k = 0; i < this.pattern.length; i++) {
+                while (k > 0 && this.pattern[i] != this.pattern[k])
+                    k = failure[k - 1];
+                if (this.pattern[i] == this.pattern[k])
+                    k++;
+                failure[i] = k;
+            }
+        }
+
+        /**
+         * @return true when the byte completes the pattern
+         */
+        public boolean next(byte b) {
+            while (matched > 0 && b != pattern[matched])
+                matched = failure[matched - 1];
+            if (b == pattern[matched])
+                matched++;
+            if (matched == pattern.length) {
+                matched = 0;
+                return true;
+            }
+            return false;
+        }
+
+        public void reset() {
+            matched = 0;
+        }
+    }
+
+    interface NewsEventSink {
+        void onNewsEvent(NewsEvent event) throws JFException;
+    }
+
+    interface TradeEventHandler {
+        void handle() throws JFException;
+    }
+
+    interface TimerCallback {
+        void onTimer(long time) throws JFException;
+    }
+
+    interface CalendarReleaseListener {
+        /**
+         * Values are scaled by their units, NaN when not published.
+         */
+        void onRelease(NewsEvent event, double actual, double expected, double previous) throws JFException;
+    }
+
+    /**
+     * Offsets of a time zone between 1970 and 2100 kept as sorted transition
+     * instants, built once from the java.time zone rules. Instant and local time
+     * conversions are binary searches over primitive arrays and give exactly the
+     * java.time results: local times in a gap are moved forward by the gap length
+     * and local times in an overlap take the earlier offset, as
+     * ZonedDateTime.ofLocal does. Times outside the table fall back to the zone
+     * rules.
+     */
+    class ZoneOffsetTable {
+
+        private static final int FIRST_YEAR = 1970;
+        private static final int LAST_YEAR = 2100;
+
+        private final ZoneId zone;
+        private final ZoneRules rules;
+        private final long from;
+        private final long to;
+        // transition instants and offsets after them, offsets[0] is before the first one
+        private final long[] transitions;
+        private final long[] offsets;
+        // local times where the transitions start and end, with the gap or overlap between
+        private final long[] localStarts;
+        private final long[] localEnds;
+
+        public ZoneOffsetTable(ZoneId zone) {
+            this.zone = zone;
+            rules = zone.getRules();
+            from = LocalDateTime.of(FIRST_YEAR, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+            to = LocalDateTime.of(LAST_YEAR, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+            List<ZoneOffsetTransition> list = new ArrayList<>();
+            ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(from - 1));
+            while (transition != null && transition.toEpochSecond() * 1000 < to) {
+                list.add(transition);
+                transition = rules.nextTransition(transition.getInstant());
+            }
+
+            int size = list.size();
+            transitions = new long[size];
+            offsets = new long[size + 1];
+            localStarts = new long[size];
+            localEnds = new long[size];
+            offsets[0] = rules.getOffset(Instant.ofEpochMilli(from)).getTotalSeconds() * 1000L;
+
+            for (int i = 0; i < size; i++) {
+                ZoneOffsetTransition t = list.get(i);
+                long before = t.getOffsetBefore().getTotalSeconds() * 1000L;
+                long after = t.getOffsetAfter().getTotalSeconds() * 1000L;
+                transitions[i] = t.toEpochSecond() * 1000;
+                offsets[i + 1] = after;
+                localStarts[i] = transitions[i] + Math.min(before, after);
+                localEnds[i] = transitions[i] + Math.max(before, after);
+            }
+        }
+
+        public int getTransitionCount() {
+            return transitions.length;
+        }
+
+        /**
+         * @return offset of the zone at the instant, millis
+         */
+        public long getOffset(long instant) {
+            if (instant < from || instant >= to)
+                return rules.getOffset(Instant.ofEpochMilli(instant)).getTotalSeconds() * 1000L;
+
+            // offsets[i + 1] applies from transitions[i] on
+            return offsets[upperBound(transitions, instant)];
+        }
+
+        /**
+         * @param local
+         *            local time of the zone as millis of the same UTC date and
+         *            time
+         * @return instant of the local time
+         */
+        public long toInstant(long local) {
+            if (local < from || local >= to) {
+                LocalDateTime dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000L),
+                        (int) Math.floorMod(local, 1000L) * 1000000, ZoneOffset.UTC);
+                return ZonedDateTime.ofLocal(dateTime, zone, null).toInstant().toEpochMilli();
+            }
+
+            int i = upperBound(localStarts, local) - 1;
+            if (i < 0)
+                return local - offsets[0];
+            // in a gap or an overlap the offset before the transition is used
+            return local < localEnds[i] ? local - offsets[i] : local - offsets[i + 1];
+        }
+
+        /**
+         * @return millis of the date and time as if it was UTC, proleptic
+         *         Gregorian calendar
+         */
+        public long toLocal(int year, int month, int day, int hour, int minute) {
+            // days from 1970-01-01 of the civil date, years starting in March
+            int y = month <= 2 ? year - 1 : year;
+            int era = Math.floorDiv(y, 400);
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            long days = era * 146097L + dayOfEra - 719468;
+            return ((days * 24 + hour) * 60 + minute) * 60000L;
+        }
+
+        // index of the first value greater than key
+        private int upperBound(long[] values, long key) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= key)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
 
-                    // bar on news time
-                    int minutesAfterEvent = 2;
-                    long endBarTime = history.getPreviousBarStart(Period.ONE_MIN,
-                            event.getDateTime().getTime() + minutesAfterEvent * this.ONE_MINUTE_IN_MILLIS);
+    /**
+     * Parses calendar values like "1,234.5K", "-0.3%" or "12.1B" in one pass
+     * over the characters. Values are scaled by their units the same way as
+     * {@link NewsEvent#parseDouble(String)} does. Not thread safe.
+     */
+    class NewsValueParser {
 
-                    Instrument instrument = Instrument.fromString(event.getPair());
-                    int INVESTIGATE_BARS = minutesAfterEvent + 1; // +1 bar
-                                                                    // before
-                                                                    // news to
-                                                                    // analyze
-                                                                    // start
-                                                                    // price
+        private final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+                1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+        // mantissas up to 2^53 and 10^22 are exact doubles, their quotient is
+        // rounded exactly like Double.parseDouble
+        private static final long MAX_EXACT_MANTISSA = 1L << 53;
 
-                    long startBarTime = history.getTimeForNBarsBack(Period.ONE_MIN, endBarTime, INVESTIGATE_BARS);
-                    List<IBar> bars = history.getBars(instrument, Period.ONE_MIN, OfferSide.BID, startBarTime, endBarTime);
+        private int unitCode;
 
-                    // if (debug)
-                    // console.getOut().println("event time:" +
-                    // sdf.format(event.getDateTime())+ " start bar time: " +
-                    // sdf.format(new Date(startBarTime))+" end bar time:
-                    // "+sdf.format(new Date(endBarTime)));
+        /**
+         * @return value scaled by its units, NaN when <code>value</code> is not a
+         *         number
+         */
+        public double parse(CharSequence value) {
+            unitCode = 0;
+            if (value == null)
+                return Double.NaN;
+
+            int i = 0, end = value.length();
+            while (i < end && value.charAt(i) <= ' ')
+                i++;
+            while (end > i && value.charAt(end - 1) <= ' ')
+                end--;
+
+            boolean negative = false;
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                negative = value.charAt(i) == '-';
+                i++;
+            }
 
-                    double priceMin = Double.MAX_VALUE, priceMax = Double.MIN_VALUE;
-                    double previousCandleChangePips = 0;
+            long mantissa = 0;
+            int decimals = 0;
+            boolean digits = false, dot = false, exact = true;
+
+            for (; i < end; i++) {
+                char c = value.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits = true;
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (dot)
+                        decimals++;
+                    if (mantissa >= MAX_EXACT_MANTISSA)
+                        exact = false;
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                } else if (c != ',') {
+                    break;
+                }
+            }
 
-                    if (bars.size() > 0) {
-                        // looking start price and price change
-                        // minutesAfterEvent min after news, Pips
-                        // release time closed bar
-                        event.setStartPrice(bars.get(0).getClose());
-                        previousCandleChangePips = (bars.get(0).getClose() - bars.get(0).getOpen())
-                                * Math.pow(10, instrument.getPipScale());
-                        bars.remove(0);
-                        Double changePips = null;
+            if (!digits)
+                return Double.NaN;
+
+            int units = 0;
+            if (i < end) {
+                switch (value.charAt(i)) {
+                case '%':
+                    units = 1;
+                    break;
+                case 'K':
+                    units = 2;
+                    break;
+                case 'M':
+                    units = 3;
+                    break;
+                case 'B':
+                    units = 4;
+                    break;
+                default:
+                    return Double.NaN;
+                }
+                if (++i != end)
+                    return Double.NaN;
+            }
 
-                        for (IBar bar : bars) {
-                            if (bar.getLow() < priceMin)
-                                priceMin = bar.getLow();
-                            if (bar.getHigh() > priceMax)
-                                priceMax = bar.getHigh();
-                        }
+            double result;
+            if (exact && decimals < POWERS_OF_TEN.length) {
+                result = mantissa / POWERS_OF_TEN[decimals];
+            } else {
+                result = slowParse(value, end - (units > 0 ? 1 : 0));
+            }
+            if (negative)
+                result = -result;
+
+            unitCode = units;
+            switch (units) {
+            case 1:
+                return result * 0.01;
+            case 2:
+                return result * 1000;
+            case 3:
+                return result * 1000000;
+            case 4:
+                return result * 1000000000;
+            default:
+                return result;
+            }
+        }
 
-                        if (Math.abs(priceMax - event.getStartPrice()) > Math.abs(event.getStartPrice() - priceMin)) {
-                            // gone up
-                            changePips = (priceMax - event.getStartPrice()) * Math.pow(10, instrument.getPipScale());
+        private double slowParse(CharSequence value, int end) {
+            StringBuilder digits = new StringBuilder(end);
+            for (int i = 0; i < end; i++) {
+                char c = value.charAt(i);
+                if ((c >= '0' && c <= '9') || c == '.')
+                    digits.append(c);
+            }
+            return Double.parseDouble(digits.toString());
+        }
 
-                        } else {
-                            // gone down
-                            changePips = (priceMin - event.getStartPrice()) * Math.pow(10, instrument.getPipScale());
-                        }
+        /**
+         * @return units of the last parsed value, null when without units
+         */
+        public String getUnits() {
+            return NEWS_UNITS[unitCode];
+        }
 
-                        event.setChangePips(changePips);
-                        event.setPreviousCandleChangePips(previousCandleChangePips);
+        public int getUnitCode() {
+            return unitCode;
+        }
+    }
 
-                    } else {
-                        console.getOut().println("ERROR: Can't get corrects bars, date: " + event.getDateTime());
-                    }
-                }
+    /**
+     * Matches live calendar releases to the preloaded news events. A release is
+     * looked up among the events of its minute by currency; the title matched
+     * for an event code and detail is remembered so following releases of the
+     * detail are matched by title directly. Every event is released once.
+     */
+    class LiveCalendar {
+
+        private final Map<Long, List<NewsEvent>> byTimeMap;
+        private final CalendarReleaseListener listener;
+        private final NewsValueParser parser = new NewsValueParser();
+        // currency + event code + detail description -> title
+        private final HashMap<String, String> titlesByCode = new HashMap<>();
+        private final Set<NewsEvent> released = Collections.newSetFromMap(new IdentityHashMap<NewsEvent, Boolean>());
+        private final long ONE_MINUTE = 60000;
+
+        private BufferedWriter recorder;
+
+        private int releases;
+        private long latencyNanosTotal;
+        private long latencyNanosMax;
+
+        public LiveCalendar(Map<Long, List<NewsEvent>> byTimeMap, CalendarReleaseListener listener) {
+            this.byTimeMap = byTimeMap;
+            this.listener = listener;
+        }
+
+        /**
+         * Appends every received calendar detail to <code>file</code> in the
+         * format read by {@link CalendarReplay}.
+         */
+        public void recordTo(String file) throws JFException {
+            try {
+                recorder = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new JFException(e.getMessage(), e);
             }
         }
 
-        @SuppressWarnings("unchecked")
-        public void writeInvestigationsToCSV() {
+        public void onMessage(ICalendarMessage message) throws JFException {
+            long receivedNanos = System.nanoTime();
+            List<ICalendarMessage.Detail> details = message.getDetails();
+            Set<String> currencies = message.getCurrencies();
 
-            for (String key : byTitleMap.keySet()) {
+            if (details == null || currencies == null)
+                return;
 
-                List<NewsEvent> events = byTitleMap.get(key);
-                /// NewsEvent eve = events.get(0);
-                // investigating only USD/CAD for now
-                // if (!eve.getCurrency().equals("USD") &&
-                // !eve.getCurrency().equals("CAD"))
-                // continue;
+            for (String currency : currencies) {
+                for (int i = 0; i < details.size(); i++) {
+                    ICalendarMessage.Detail detail = details.get(i);
+                    onDetail(receivedNanos, message.getEventDate(), currency, message.getEventCode(), detail.getDescription(),
+                            detail.getActual(), detail.getExpected(), detail.getPrevious());
+                }
+            }
 
-                // sorting by change in %
-                Collections.sort(events, new Comparator<NewsEvent>() {
-                    @Override
-                    public int compare(NewsEvent event1, NewsEvent event2) {
-                        if (event1 != null && event2 != null) {
+            if (recorder != null)
+                record(message);
+        }
 
-                            if (event1.getChangePips() != null && event2.getChangePips() != null) {
-                                Double eve1Pips = Math.abs(event1.getChangePips());
-                                Double eve2Pips = Math.abs(event2.getChangePips());
-                                return eve2Pips.compareTo(eve1Pips);
-                            }
-                            else
-                                return 1;
-                        } else
-                            return 1;
-                    }
-                });
+        /**
+         * @return true when the detail released a preloaded news event
+         */
+        public boolean onDetail(long receivedNanos, long eventDate, String currency, String eventCode, String description,
+                CharSequence actual, CharSequence expected, CharSequence previous) throws JFException {
+            double actualValue = parser.parse(actual);
+            if (Double.isNaN(actualValue))
+                return false; // not released yet
+
+            NewsEvent event = match(eventDate, currency, eventCode, description);
+            if (event == null || !released.add(event))
+                return false;
+
+            double expectedValue = parser.parse(expected);
+            double previousValue = parser.parse(previous);
+
+            long latencyNanos = System.nanoTime() - receivedNanos;
+            releases++;
+            latencyNanosTotal += latencyNanos;
+            latencyNanosMax = Math.max(latencyNanosMax, latencyNanos);
+
+            listener.onRelease(event, actualValue, expectedValue, previousValue);
+            return true;
+        }
 
-                String fullName = destFileName + key + ".csv";
-                Path path = Paths.get(fullName);
+        private NewsEvent match(long eventDate, String currency, String eventCode, String description) {
+            List<NewsEvent> candidates = byTimeMap.get(eventDate - eventDate % ONE_MINUTE);
+            if (candidates == null)
+                return null;
 
-                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
-                    for (NewsEvent event : events) {
-                        List<NewsEvent> sameTimeList = byTimeMap.get(event.getDateTime().getTime());
+            // details of one release (MoM, YoY...) are different events
+            String codeKey = eventCode != null ? currency + '\t' + eventCode + '\t' + description : null;
+            String title = codeKey != null ? titlesByCode.get(codeKey) : null;
 
-                        if (sameTimeList.size() == 1) {
-                            if (NewsTraderInvestigation.isMeaningful(event)) {
-                                writer.write(event.toString() + "\n");
-                            }
-                        } else {
-                            // several news events at the same time
-                            //if (NewsTraderInvestigation.isMeaningful(sameTimeList)) {
-                            //    writer.write(NewsTraderInvestigation.toString(event, sameTimeList) + "\n");
-                            //}
-                            if (NewsTraderInvestigation.isMeaningful(sameTimeList)) {
-                                // main news event goes first
-                                writer.write(event.toString() + "\n");
+            NewsEvent found = null, single = null;
+            int sameCurrency = 0;
 
-                                for (NewsEvent sameTimeEvent : sameTimeList) {
-                                    if (sameTimeEvent == event)
-                                        continue;
-                                    else
-                                        writer.write(sameTimeEvent.toString() + "\n");
-                                }
-                            }
-                        }
-                    }
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
-                }
-                try {
-                    FileChannel file = FileChannel.open(path);
+            for (int i = 0; i < candidates.size(); i++) {
+                NewsEvent event = candidates.get(i);
+                if (!currency.equals(event.getCurrency()))
+                    continue;
 
-                    if (file.size() == 0) {
-                        path.toFile().delete();
-                    }
+                sameCurrency++;
+                single = event;
 
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
+                if (title != null ? title.equals(event.getTitle()) : containsIgnoreCase(event.getTitle(), description)) {
+                    found = event;
+                    break;
                 }
             }
-        }
-    }
 
-    @Library("jsoup-1.11.2.jar")
-    class ParseInvestingHTML {
+            if (found == null && sameCurrency == 1)
+                found = single;
 
-        public List<NewsEvent> parse(String filename) throws JFException {
-            List<NewsEvent> list = new ArrayList<>();
-            File input = new File(filename);
+            if (found != null && codeKey != null && title == null)
+                titlesByCode.put(codeKey, found.getTitle());
 
-            try {
+            return found;
+        }
 
-                Document doc = Jsoup.parse(input, "UTF-8", "");
+        private boolean containsIgnoreCase(String text, String part) {
+            if (text == null || part == null || part.length() == 0)
+                return false;
 
-                Element tbody = doc.body().tagName("tbody");
-                Element timeZone = tbody.selectFirst("#timeZoneGmtOffsetFormatted");
-                console.getOut().println("timeZone = " + timeZone.text());
-                int timeZoneOffsetHours = 0;
+            for (int i = 0; i <= text.length() - part.length(); i++) {
+                if (text.regionMatches(true, i, part, 0, part.length()))
+                    return true;
+            }
+            return false;
+        }
 
-                if (timeZone != null) {
-                    String sTimeZoneOffsetHours = timeZone.text().replace("GMT", "").replace("(", "").replace(")", "").replace(" ", "")
-                            .replace(":00", "");
+        // eventDate, currency, eventCode, description, actual, expected, previous
+        private void record(ICalendarMessage message) {
+            try {
+                for (String currency : message.getCurrencies()) {
+                    for (ICalendarMessage.Detail detail : message.getDetails()) {
+                        recorder.write(message.getEventDate() + "\t" + currency + "\t" + field(message.getEventCode()) + "\t"
+                                + field(detail.getDescription()) + "\t" + field(detail.getActual()) + "\t"
+                                + field(detail.getExpected()) + "\t" + field(detail.getPrevious()) + "\n");
+                    }
+                }
+                recorder.flush();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
 
-                    if (sTimeZoneOffsetHours.length() > 0)
-                        timeZoneOffsetHours = Integer.parseInt(sTimeZoneOffsetHours);
-                    if (debug)
-                        console.getOut().println("Parser: news source timeZoneOffset=" + timeZoneOffsetHours);
+        private String field(String value) {
+            return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+        }
+
+        public void close() {
+            if (recorder != null) {
+                try {
+                    recorder.close();
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
                 }
+                recorder = null;
+            }
 
-                Elements events = tbody.select("tr.js-event-item");
-                if (debug)
-                    console.getOut().println("Starting News events creation...");
+            if (releases > 0)
+                console.getOut().println("Calendar releases: " + releases + ", average latency: " + latencyNanosTotal / releases / 1000
+                        + " us, max: " + latencyNanosMax / 1000 + " us");
+        }
+    }
 
-                for (Element event : events) {
-                    String newsDateTime = event.attr("data-event-datetime");
-                    int dateSpace = newsDateTime.indexOf(Constants.SPACE);
-                    String date = newsDateTime.substring(0, dateSpace);
-                    String time = newsDateTime.substring(dateSpace + 1, newsDateTime.lastIndexOf(":"));
-                    String currency = event.selectFirst("td.flagCur").text().trim();
-                    String importance = event.selectFirst("td.sentiment").attr("title");
-                    String title = event.selectFirst("td.event").text();
-                    String previous = event.selectFirst("td[id^=eventPrevious]").text();
-                    String forecast = event.selectFirst("td[id^=eventForecast]").text();
-                    String actual = event.selectFirst("td[id^=eventActual]").text();
+    /**
+     * Feeds calendar details recorded by {@link LiveCalendar#recordTo(String)}
+     * to the live calendar at full speed and prints the reaction latency from
+     * receiving a detail to the return of the release listener. The replay
+     * runs on a calendar made by {@link AllInOne#createReplayCalendar()}, so
+     * recorded values don't overwrite the news events.
+     */
+    class CalendarReplay {
 
-                    NewsEvent newsEvent = new NewsEvent(title, timeZoneOffsetHours, date + Constants.SPACE + time, currency, importance,
-                            previous, forecast, actual);
+        private final LiveCalendar feed;
 
-                    // if (debug)
-                    // console.getOut().println("newsEvent: " + newsEvent);
+        public CalendarReplay(LiveCalendar feed) {
+            this.feed = feed;
+        }
 
-                    // if (newsEvent.getActual() != null) {
-                    list.add(newsEvent);
-                    // }
+        public void replay(String file) throws JFException {
+            List<String[]> details = new ArrayList<>();
+
+            try (java.io.BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length == 7)
+                        details.add(fields);
                 }
+            } catch (IOException e) {
+                throw new JFException(e.getMessage(), e);
+            }
 
-                if (debug)
-                    console.getOut().println("End of News events creation");
+            long[] latencies = new long[details.size()];
+            int released = 0;
+            long started = System.nanoTime();
 
-            } catch (Throwable th) {
-                console.getErr().println(th.getMessage());
-                throw new JFException(th.getMessage(), th);
+            for (String[] fields : details) {
+                long receivedNanos = System.nanoTime();
+                if (feed.onDetail(receivedNanos, Long.parseLong(fields[0]), fields[1], empty(fields[2]), empty(fields[3]), fields[4],
+                        fields[5], fields[6]))
+                    latencies[released++] = System.nanoTime() - receivedNanos;
             }
 
-            if (debug)
-                console.getOut().print("File " + filename + " been successfully parsed!\n Number of news releases: " + list.size());
+            long elapsed = System.nanoTime() - started;
+            java.util.Arrays.sort(latencies, 0, released);
 
-            return list;
+            console.getOut().println("Calendar replay: " + details.size() + " details, " + released + " releases in " + elapsed / 1000
+                    + " us" + (released > 0 ? ", latency p50: " + latencies[released / 2] / 1000 + " us, p99: "
+                            + latencies[(int) (released * 0.99)] / 1000 + " us, max: " + latencies[released - 1] / 1000 + " us" : ""));
         }
 
+        private String empty(String value) {
+            return value.length() == 0 ? null : value;
+        }
     }
 
     class Constants {
 
         public static final String SPACE = " ";
-        public static final String PERCENT = "%";
-        public static final String K = "K";
-        public static final String M = "M";
-        public static final String B = "B";
+    }
+
+    /**
+     * Titles, currencies and importances of the news events interned into
+     * integer ids.
+     */
+    class NewsSymbols {
+
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[256];
+        private int size;
+
+        public int intern(String name) {
+            if (name == null)
+                return -1;
+
+            Integer id = ids.get(name);
+            if (id == null) {
+                if (size == names.length)
+                    names = java.util.Arrays.copyOf(names, size * 2);
+                id = size;
+                names[size++] = name;
+                ids.put(name, id);
+            }
+            return id;
+        }
+
+        public String get(int id) {
+            return id < 0 ? null : names[id];
+        }
+
+        public int size() {
+            return size;
+        }
     }
 
     class NewsEvent implements Comparable<NewsEvent> {
 
-        private final java.text.SimpleDateFormat FORMATTER;
-        private String title;
+        // ids in newsSymbols
+        private int title;
+        private int currency;
+        private int importance;// 3,2,1 H,M,L respectively
         private Boolean positive; // true/false the better value of the
                                     // estimated measure the better it is for
                                     // the currency
         private Date dateTime;
-        private String currency;
         private String pair;// instrument name
-        private String importance;// 3,2,1 H,M,L respectively
-        private Double previous;
-        private Double forecast;
-        private Double actual;
+        // NaN when missing, scaled by the unit
+        private double previous;
+        private double forecast;
+        private double actual;
         private Double changePercentage;
         private Double change;
-        private String line;
-        private String units;
+        // codes of NEWS_UNITS
+        private byte units;
+        private byte previousUnits;
+        private byte forecastUnits;
+        private byte actualUnits;
         private Double startPrice;// last 1 min close price before news release/
                                     // open price on news release
         private Double previousCandleChangePips;
@@ -1697,21 +5861,63 @@ public class NewsTraderInvestigation implements IStrategy {
          * @param actual
          */
         public NewsEvent(String title, int offsetHours, String dateTime, String currency, String importance, String previous,
-                String forecast, String actual) throws java.text.ParseException {
+                String forecast, String actual, NewsValueParser parser, java.text.DateFormat dateFormat) throws java.text.ParseException {
 
-            this.title = purify(title);
+            this.title = newsSymbols.intern(purify(title));
 
-            FORMATTER = new java.text.SimpleDateFormat("yyyy/MM/dd HH:mm");
-            setDateTime(dateTime, offsetHours);
+            setDateTime(dateTime, offsetHours, dateFormat);
 
-            this.currency = currency;
-            this.importance = importance.substring(0, importance.indexOf(" "));
-            this.previous = parseDouble(previous);
-            this.forecast = parseDouble(forecast);
-            this.actual = parseDouble(actual);
+            this.currency = newsSymbols.intern(currency);
+            this.importance = newsSymbols.intern(importance.substring(0, importance.indexOf(" ")));
+            this.previous = parseValue(previous, parser);
+            this.previousUnits = (byte) parser.getUnitCode();
+            this.forecast = parseValue(forecast, parser);
+            this.forecastUnits = (byte) parser.getUnitCode();
+            this.actual = parseValue(actual, parser);
+            this.actualUnits = (byte) parser.getUnitCode();
+        }
+
+        /**
+         * Copy of the news event, the date time is not shared.
+         */
+        public NewsEvent(NewsEvent source) {
+            this.title = source.title;
+            this.currency = source.currency;
+            this.importance = source.importance;
+            this.positive = source.positive;
+            this.dateTime = new Date(source.dateTime.getTime());
+            this.pair = source.pair;
+            this.previous = source.previous;
+            this.forecast = source.forecast;
+            this.actual = source.actual;
+            this.changePercentage = source.changePercentage;
+            this.change = source.change;
+            this.units = source.units;
+            this.previousUnits = source.previousUnits;
+            this.forecastUnits = source.forecastUnits;
+            this.actualUnits = source.actualUnits;
+            this.startPrice = source.startPrice;
+            this.previousCandleChangePips = source.previousCandleChangePips;
+            this.changePips = source.changePips;
+        }
 
-            this.setLine(
-                    createLine(this.title, FORMATTER.format(this.dateTime), this.currency, this.importance, previous, forecast, actual));
+        /**
+         * Creates news event of the compiled calendar, values are parsed and
+         * date time is corrected already.
+         */
+        public NewsEvent(String title, long dateTime, String currency, String importance, double previous, byte previousUnits,
+                double forecast, byte forecastUnits, double actual, byte actualUnits) {
+            this.title = newsSymbols.intern(title);
+            this.dateTime = new Date(dateTime);
+            this.currency = newsSymbols.intern(currency);
+            this.importance = newsSymbols.intern(importance);
+            this.previous = previous;
+            this.previousUnits = previousUnits;
+            this.forecast = forecast;
+            this.forecastUnits = forecastUnits;
+            this.actual = actual;
+            this.actualUnits = actualUnits;
+            this.units = actualUnits != 0 ? actualUnits : forecastUnits != 0 ? forecastUnits : previousUnits;
         }
 
         public String getPair() {
@@ -1731,54 +5937,48 @@ public class NewsTraderInvestigation implements IStrategy {
         }
 
         public final Double parseDouble(String param) {
-            Double result = null;
-
-            param = param.replace(",", "");
-
-            if (param != null && param.length() > 0)
-
-                if (param.contains(Constants.PERCENT)) {
-                    param = param.replace(Constants.PERCENT, "");
-                    result = Double.parseDouble(param);
-                    result = result * 0.01;
-                    units = Constants.PERCENT;
-
-                } else if (param.contains(Constants.K)) {
-                    param = param.replace(Constants.K, "");
-                    result = Double.parseDouble(param);
-                    result = result * 1000;
-                    units = Constants.K;
-
-                } else if (param.contains(Constants.M)) {
-                    param = param.replace(Constants.M, "");
-                    result = Double.parseDouble(param);
-                    result = result * 1000000;
-                    units = Constants.M;
-
-                } else if (param.contains(Constants.B)) {
-
-                    param = param.replace(Constants.B, "");
-                    result = Double.parseDouble(param);
-                    result = result * 1000000000;
-                    units = Constants.B;
-                }
+            double value = parseValue(param, new NewsValueParser());
+            return Double.isNaN(value) ? null : value;
+        }
 
-            return result;
+        // the unit of the last parsed value is the unit of the event
+        private double parseValue(String param, NewsValueParser parser) {
+            double value = parser.parse(param);
+            if (parser.getUnitCode() != 0)
+                units = (byte) parser.getUnitCode();
+            return value;
         }
 
+        // removes period suffixes like " (Jan)" or " (QoQ)" in one scan
         private String purify(String s) {
-
-            String result = s;
-            if (result.contains("(")) {
-
-                for (String filter : filterList) {
-                    if (result.contains(filter)) {
-                        result = result.replace(filter, "");
-                    }
+            StringBuilder result = null;
+            int copied = 0;
+
+            for (int i = s.indexOf(" ("); i >= 0; i = s.indexOf(" (", i + 1)) {
+                int end = s.indexOf(')', i + 2);
+                if (end < 0)
+                    break;
+
+                if (isPeriodSuffix(s, i + 2, end)) {
+                    if (result == null)
+                        result = new StringBuilder(s.length());
+                    result.append(s, copied, i);
+                    copied = end + 1;
+                    i = end;
                 }
             }
 
-            return result;
+            if (result == null)
+                return s;
+            return result.append(s, copied, s.length()).toString();
+        }
+
+        private boolean isPeriodSuffix(String s, int from, int to) {
+            for (String suffix : PERIOD_SUFFIXES) {
+                if (suffix.length() == to - from && s.regionMatches(from, suffix, 0, suffix.length()))
+                    return true;
+            }
+            return false;
         }
 
         public String createLine(String title, String dateTime, String currency, String importance, String previous, String forecast,
@@ -1792,11 +5992,11 @@ public class NewsTraderInvestigation implements IStrategy {
         }
 
         public String getTitle() {
-            return title;
+            return newsSymbols.get(title);
         }
 
         public void setTitle(String title) {
-            this.title = title;
+            this.title = newsSymbols.intern(title);
         }
 
         public Date getDateTime() {
@@ -1808,53 +6008,91 @@ public class NewsTraderInvestigation implements IStrategy {
         }
 
         public void setDateTime(String sDateTime, int offsetHours) throws java.text.ParseException {
+            setDateTime(sDateTime, offsetHours, new SimpleDateFormat("yyyy/MM/dd HH:mm"));
+        }
 
-            dateTime = FORMATTER.parse(sDateTime);
+        private void setDateTime(String sDateTime, int offsetHours, java.text.DateFormat dateFormat) throws java.text.ParseException {
+
+            long eventTimeMillis = parseNewsTime(sDateTime, dateFormat);
             // adjusting time to GMT
-            long eventTimeMillis = dateTime.getTime();
             long ONE_HOUR = 1000 * 60 * 60;
             long convertedTimeMillis = eventTimeMillis - ONE_HOUR * offsetHours;
-            dateTime.setTime(convertedTimeMillis);
+            dateTime = new Date(convertedTimeMillis);
+        }
+
+        // "yyyy/MM/dd HH:mm" read digit by digit, anything else goes to dateFormat
+        private long parseNewsTime(String s, java.text.DateFormat dateFormat) throws java.text.ParseException {
+            if (s.length() != 16 || s.charAt(4) != '/' || s.charAt(7) != '/' || s.charAt(10) != ' ' || s.charAt(13) != ':')
+                return dateFormat.parse(s).getTime();
+
+            int year = digits(s, 0, 4);
+            int month = digits(s, 5, 7);
+            int day = digits(s, 8, 10);
+            int hour = digits(s, 11, 13);
+            int minute = digits(s, 14, 16);
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59)
+                return dateFormat.parse(s).getTime();
+
+            return newsSourceZone.toInstant(newsSourceZone.toLocal(year, month, day, hour, minute));
+        }
+
+        // -1 when not all characters are digits
+        private int digits(String s, int begin, int end) {
+            int value = 0;
+            for (int i = begin; i < end; i++) {
+                int digit = s.charAt(i) - '0';
+                if (digit < 0 || digit > 9)
+                    return -1;
+                value = value * 10 + digit;
+            }
+            return value;
         }
 
         public String getCurrency() {
-            return currency;
+            return newsSymbols.get(currency);
         }
 
         public void setCurrency(String currency) {
-            this.currency = currency;
+            this.currency = newsSymbols.intern(currency);
         }
 
         public String getImportance() {
-            return importance;
+            return newsSymbols.get(importance);
         }
 
         public void setImportance(String importance) {
-            this.importance = importance;
+            this.importance = newsSymbols.intern(importance);
         }
 
         public Double getPrevious() {
-            return previous;
+            return Double.isNaN(previous) ? null : previous;
         }
 
         public void setPrevious(Double previous) {
-            this.previous = previous;
+            this.previous = previous != null ? previous : Double.NaN;
         }
 
         public Double getForecast() {
-            return forecast;
+            return Double.isNaN(forecast) ? null : forecast;
         }
 
         public void setForecast(Double forecast) {
-            this.forecast = forecast;
+            this.forecast = forecast != null ? forecast : Double.NaN;
         }
 
         public Double getActual() {
-            return actual;
+            return Double.isNaN(actual) ? null : actual;
         }
 
         public void setActual(Double actual) {
-            this.actual = actual;
+            this.actual = actual != null ? actual : Double.NaN;
+        }
+
+        /**
+         * @return true when previous and actual values are known and not zero
+         */
+        public boolean hasPreviousAndActual() {
+            return !Double.isNaN(previous) && previous != 0 && !Double.isNaN(actual) && actual != 0;
         }
 
         @Override
@@ -1870,7 +6108,7 @@ public class NewsTraderInvestigation implements IStrategy {
 
         @Override
         public int hashCode() {
-            return this.title.hashCode() * this.currency.hashCode();
+            return getTitle().hashCode() * getCurrency().hashCode();
         }
 
         @Override
@@ -1879,11 +6117,23 @@ public class NewsTraderInvestigation implements IStrategy {
         }
 
         public String getUnits() {
-            return units;
+            return NEWS_UNITS[units];
         }
 
         public void setUnits(String units) {
-            this.units = units;
+            this.units = (byte) Math.max(0, java.util.Arrays.asList(NEWS_UNITS).indexOf(units));
+        }
+
+        public String getPreviousUnits() {
+            return NEWS_UNITS[previousUnits];
+        }
+
+        public String getForecastUnits() {
+            return NEWS_UNITS[forecastUnits];
+        }
+
+        public String getActualUnits() {
+            return NEWS_UNITS[actualUnits];
         }
 
         @Override
@@ -1899,9 +6149,9 @@ public class NewsTraderInvestigation implements IStrategy {
 
             String sr = ", ";
             String line = sdf.format(dateTime) + sr;
-            line += currency + sr;
-            line += importance.substring(0, 1) + sr;
-            line += title + sr;
+            line += getCurrency() + sr;
+            line += getImportance().substring(0, 1) + sr;
+            line += getTitle() + sr;
             line += pair + sr;
             line += (changePercentage != null ? df.format(changePercentage) + "%" : "-") + sr;
             line += (previousCandleChangePips != null ? df.format(previousCandleChangePips) + "" : "-") + sr;
@@ -1913,11 +6163,17 @@ public class NewsTraderInvestigation implements IStrategy {
         }
 
         public String getLine() {
-            return line;
+            return createLine(getTitle(), newsLineFormat.format(dateTime.toInstant()), getCurrency(), getImportance(),
+                    format(previous, previousUnits), format(forecast, forecastUnits), format(actual, actualUnits));
         }
 
-        public void setLine(String line) {
-            this.line = line;
+        private String format(double value, byte units) {
+            if (Double.isNaN(value))
+                return "";
+
+            double[] scales = { 1, 0.01, 1000, 1000000, 1000000000 };
+            return new java.text.DecimalFormat("#0.###", java.text.DecimalFormatSymbols.getInstance(java.util.Locale.US))
+                    .format(value / scales[units]) + (units != 0 ? NEWS_UNITS[units] : "");
         }
 
         public Double getChange() {
@@ -1959,9 +6215,6 @@ public class NewsTraderInvestigation implements IStrategy {
         public void setChangePips(Double changePips) {
             this.changePips = changePips;
         }
-
-        private String[] filterList = new String[] { " (Jan)", " (Feb)", " (Mar)", " (Apr)", " (May)", " (Jun)", " (Jul)", " (Aug)",
-                " (Sep)", " (Oct)", " (Nov)", " (Dec)", " (Q1)", " (Q2)", " (Q3)", " (Q4)", " (QoQ)", " (YoY)", " (MoM)" };
     }
 
 }
\ No newline at end of file